@@ -2,12 +2,19 @@ package com.pqdag.api.controller;
 
 import com.pqdag.api.dto.AllocationRequest;
 import com.pqdag.api.dto.AllocationResponse;
+import com.pqdag.api.dto.JobInfo;
 import com.pqdag.api.service.AllocationService;
+import com.pqdag.api.service.JobConflictException;
+import com.pqdag.api.service.JobService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.Optional;
+
 @Slf4j
 @RestController
 @RequestMapping("/api/allocation")
@@ -15,6 +22,7 @@ import org.springframework.web.bind.annotation.*;
 public class AllocationController {
 
     private final AllocationService allocationService;
+    private final JobService jobService;
 
     /**
      * Start the allocation process (steps 1-3: statistics, graph, METIS)
@@ -26,8 +34,11 @@ public class AllocationController {
                 request.getDatasetName(), request.getNumMachines());
         
         try {
-            AllocationResponse response = allocationService.runAllocation(request);
+            AllocationResponse response = jobService.runAndWait("allocation", JobService.RESOURCE_PIPELINE,
+                    allocationDescription(request), job -> allocationService.runAllocation(request, job));
             return ResponseEntity.ok(response);
+        } catch (JobConflictException e) {
+            return conflict(e);
         } catch (Exception e) {
             log.error("Allocation failed", e);
             return ResponseEntity.internalServerError()
@@ -38,6 +49,15 @@ public class AllocationController {
         }
     }
 
+    /**
+     * Start the allocation as a background job; follow it under /api/jobs/{jobId}
+     */
+    @PostMapping("/start/async")
+    public ResponseEntity<JobInfo> startAllocationJob(@RequestBody AllocationRequest request) {
+        return submit("allocation", allocationDescription(request),
+                job -> allocationService.runAllocation(request, job));
+    }
+
     /**
      * Distribute fragments to cluster (step 4)
      * Requires allocation to be completed first
@@ -47,8 +67,12 @@ public class AllocationController {
         log.info("Starting distribution for dataset: {}", request.getDatasetName());
         
         try {
-            AllocationResponse response = allocationService.distributeFragments(request);
+            AllocationResponse response = jobService.runAndWait("distribution", JobService.RESOURCE_PIPELINE,
+                    "Distribution of " + request.getDatasetName(),
+                    job -> allocationService.distributeFragments(request, job));
             return ResponseEntity.ok(response);
+        } catch (JobConflictException e) {
+            return conflict(e);
         } catch (Exception e) {
             log.error("Distribution failed", e);
             return ResponseEntity.internalServerError()
@@ -59,6 +83,15 @@ public class AllocationController {
         }
     }
 
+    /**
+     * Distribute fragments as a background job; follow it under /api/jobs/{jobId}
+     */
+    @PostMapping("/distribute/async")
+    public ResponseEntity<JobInfo> distributeFragmentsJob(@RequestBody AllocationRequest request) {
+        return submit("distribution", "Distribution of " + request.getDatasetName(),
+                job -> allocationService.distributeFragments(request, job));
+    }
+
     /**
      * Get allocation results for a dataset
      */
@@ -66,6 +99,18 @@ public class AllocationController {
     public ResponseEntity<AllocationResponse> getAllocationResults(@PathVariable String datasetName) {
         log.info("Getting allocation results for dataset: {}", datasetName);
         
+        // Result files are being rewritten while an allocation job runs
+        Optional<JobInfo> active = jobService.findActive(JobService.RESOURCE_PIPELINE)
+                .filter(job -> "allocation".equals(job.getType()));
+        if (active.isPresent()) {
+            return ResponseEntity.ok(AllocationResponse.builder()
+                    .status("running")
+                    .message(active.get().getDescription() + " in progress"
+                            + (active.get().getStage() != null ? " (" + active.get().getStage() + ")" : ""))
+                    .jobId(active.get().getId())
+                    .build());
+        }
+
         try {
             AllocationResponse response = allocationService.getResults(datasetName);
             return ResponseEntity.ok(response);
@@ -78,4 +123,27 @@ public class AllocationController {
                             .build());
         }
     }
+
+    private static String allocationDescription(AllocationRequest request) {
+        return "Allocation of " + request.getDatasetName() + " on " + request.getNumMachines() + " machines";
+    }
+
+    private static ResponseEntity<AllocationResponse> conflict(JobConflictException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(AllocationResponse.builder()
+                        .status("error")
+                        .message(e.getActiveJob().getDescription() + " is running")
+                        .jobId(e.getActiveJob().getId())
+                        .build());
+    }
+
+    private ResponseEntity<JobInfo> submit(String type, String description,
+                                           JobService.JobTask<AllocationResponse> task) {
+        try {
+            JobInfo job = jobService.submit(type, JobService.RESOURCE_PIPELINE, description, task);
+            return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job);
+        } catch (JobConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getActiveJob());
+        }
+    }
 }
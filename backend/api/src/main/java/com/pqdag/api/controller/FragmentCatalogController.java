@@ -0,0 +1,89 @@
+package com.pqdag.api.controller;
+
+import com.pqdag.api.service.FragmentCatalog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/fragments")
+@RequiredArgsConstructor
+public class FragmentCatalogController {
+
+    private final FragmentCatalog fragmentCatalog;
+
+    /**
+     * Fragment count, triples, sizes and subject/object split of outputdata
+     */
+    @GetMapping
+    public ResponseEntity<?> getSummary() {
+        try {
+            return ResponseEntity.ok(fragmentCatalog.getSummary());
+        } catch (IOException e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Fragments in ID order, optionally only those containing a predicate
+     */
+    @GetMapping("/list")
+    public ResponseEntity<?> listFragments(@RequestParam(defaultValue = "0") int offset,
+                                           @RequestParam(defaultValue = "100") int limit,
+                                           @RequestParam(required = false) Integer predicate) {
+        try {
+            return ResponseEntity.ok(fragmentCatalog.listFragments(offset, limit, predicate));
+        } catch (IOException e) {
+            return error(e);
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getFragment(@PathVariable int id) {
+        try {
+            return fragmentCatalog.getFragment(id)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(Map.of("status", "error", "message", "Fragment not found: " + id)));
+        } catch (IOException e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Predicates with the number of fragments containing each, most used first
+     */
+    @GetMapping("/predicates")
+    public ResponseEntity<?> getPredicates() {
+        try {
+            return ResponseEntity.ok(fragmentCatalog.getPredicates());
+        } catch (IOException e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Re-index outputdata now, e.g. after fragments were modified in place
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh() {
+        try {
+            fragmentCatalog.refresh();
+            return ResponseEntity.ok(fragmentCatalog.getSummary());
+        } catch (IOException e) {
+            return error(e);
+        }
+    }
+
+    private static ResponseEntity<?> error(IOException e) {
+        log.error("Fragment catalog failed", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("status", "error", "message", "Failed to index fragments: " + e.getMessage()));
+    }
+}
@@ -0,0 +1,43 @@
+package com.pqdag.api.controller;
+
+import com.pqdag.api.dto.JobInfo;
+import com.pqdag.api.service.JobService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final JobService jobService;
+
+    /**
+     * List background jobs, newest first
+     */
+    @GetMapping
+    public ResponseEntity<List<JobInfo>> listJobs(@RequestParam(required = false) String type,
+                                                  @RequestParam(required = false) String status) {
+        return ResponseEntity.ok(jobService.listJobs(type, status));
+    }
+
+    /**
+     * Get a job with its log from line fromLine on (poll with fromLine = previous logLines)
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<JobInfo> getJob(@PathVariable String jobId,
+                                          @RequestParam(defaultValue = "0") long fromLine) {
+        return ResponseEntity.of(jobService.getJob(jobId, fromLine));
+    }
+
+    /**
+     * Cancel a queued or running job
+     */
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<JobInfo> cancelJob(@PathVariable String jobId) {
+        return ResponseEntity.of(jobService.cancel(jobId));
+    }
+}
@@ -0,0 +1,63 @@
+package com.pqdag.api.controller;
+
+import com.pqdag.api.dto.ProcessLogView;
+import com.pqdag.api.service.ProcessOutputLog;
+import com.pqdag.api.service.ProcessOutputStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/process-logs")
+@RequiredArgsConstructor
+public class ProcessLogController {
+
+    private final ProcessOutputStore outputStore;
+
+    /**
+     * List captured process outputs, newest first
+     */
+    @GetMapping
+    public ResponseEntity<List<ProcessLogView>> listLogs() {
+        return ResponseEntity.ok(outputStore.list().stream()
+                .map(outputLog -> view(outputLog, null))
+                .toList());
+    }
+
+    /**
+     * Read up to maxLines lines starting at fromLine
+     */
+    @GetMapping("/{logId}")
+    public ResponseEntity<ProcessLogView> readLog(@PathVariable String logId,
+                                                  @RequestParam(defaultValue = "0") long fromLine,
+                                                  @RequestParam(defaultValue = "1000") int maxLines) {
+        return ResponseEntity.of(outputStore.get(logId)
+                .map(outputLog -> view(outputLog, outputLog.read(fromLine, Math.min(maxLines, 10000)))));
+    }
+
+    /**
+     * Read the last lines
+     */
+    @GetMapping("/{logId}/tail")
+    public ResponseEntity<ProcessLogView> tailLog(@PathVariable String logId,
+                                                  @RequestParam(defaultValue = "100") int lines) {
+        return ResponseEntity.of(outputStore.get(logId)
+                .map(outputLog -> view(outputLog, outputLog.tail(Math.min(lines, 10000)))));
+    }
+
+    private ProcessLogView view(ProcessOutputLog outputLog, ProcessOutputLog.Chunk chunk) {
+        ProcessLogView.ProcessLogViewBuilder view = ProcessLogView.builder()
+                .id(outputLog.getId())
+                .createdAt(outputLog.getCreatedAt())
+                .closed(outputLog.isClosed())
+                .lineCount(outputLog.getLineCount())
+                .firstAvailableLine(outputLog.getFirstAvailableLine())
+                .diskBytes(outputLog.getDiskBytes());
+        if (chunk != null) {
+            view.from(chunk.from()).lines(chunk.lines());
+        }
+        return view.build();
+    }
+}
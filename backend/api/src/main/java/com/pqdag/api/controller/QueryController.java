@@ -1,14 +1,30 @@
 package com.pqdag.api.controller;
 
 import com.pqdag.api.dto.*;
+import com.pqdag.api.service.ClusterExecutionPolicy;
+import com.pqdag.api.service.ClusterHealthMonitor;
+import com.pqdag.api.service.JobConflictException;
+import com.pqdag.api.service.JobFailedException;
+import com.pqdag.api.service.JobService;
+import com.pqdag.api.service.PlanAdvisor;
+import com.pqdag.api.service.QueryBatchService;
+import com.pqdag.api.service.QueryCatalog;
+import com.pqdag.api.service.QueryAdmissionScheduler;
+import com.pqdag.api.service.QueryRejectedException;
+import com.pqdag.api.service.QueryResultCache;
 import com.pqdag.api.service.QueryService;
+import com.pqdag.api.service.RunningQueryRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @RestController
@@ -17,15 +33,29 @@ import java.util.Map;
 public class QueryController {
 
     private final QueryService queryService;
+    private final ClusterExecutionPolicy executionPolicy;
+    private final QueryResultCache resultCache;
+    private final QueryAdmissionScheduler admissionScheduler;
+    private final QueryBatchService batchService;
+    private final PlanAdvisor planAdvisor;
+    private final QueryCatalog queryCatalog;
+    private final ClusterHealthMonitor healthMonitor;
+    private final JobService jobService;
+    private final RunningQueryRegistry runningQueries;
 
     /**
      * Get list of available datasets
      */
     @GetMapping("/datasets")
-    public ResponseEntity<List<String>> getDatasets() {
+    public ResponseEntity<List<String>> getDatasets(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
         try {
+            String etag = catalogEtag();
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
             List<String> datasets = queryService.getDatasets();
-            return ResponseEntity.ok(datasets);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(datasets);
         } catch (Exception e) {
             log.error("Error getting datasets", e);
             return ResponseEntity.internalServerError().build();
@@ -36,10 +66,16 @@ public class QueryController {
      * Get list of query files for a dataset
      */
     @GetMapping("/files/{dataset}")
-    public ResponseEntity<List<String>> getQueryFiles(@PathVariable String dataset) {
+    public ResponseEntity<List<String>> getQueryFiles(
+            @PathVariable String dataset,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
         try {
+            String etag = catalogEtag();
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
             List<String> queryFiles = queryService.getQueryFiles(dataset);
-            return ResponseEntity.ok(queryFiles);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(queryFiles);
         } catch (Exception e) {
             log.error("Error getting query files for dataset: {}", dataset, e);
             return ResponseEntity.internalServerError().build();
@@ -47,21 +83,70 @@ public class QueryController {
     }
 
     /**
-     * Get query content from client machine
+     * Get query content from the catalog mirror, ETag = SHA-256 of the file
      */
     @GetMapping("/content/{dataset}/{queryFile}")
     public ResponseEntity<Map<String, String>> getQueryContent(
+            @PathVariable String dataset,
+            @PathVariable String queryFile,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        try {
+            Optional<QueryCatalog.Entry> entry = queryCatalog.getEntry(dataset, queryFile);
+            if (entry.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = "\"" + entry.get().checksum() + "\"";
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(Map.of("content", entry.get().content()));
+        } catch (Exception e) {
+            log.error("Error getting query content for {}/{}", dataset, queryFile, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get query catalog status (mirrored files, version)
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<Map<String, Object>> getCatalogStatus() {
+        return ResponseEntity.ok(queryCatalog.getStatus());
+    }
+
+    /**
+     * Re-sync the query catalog with the client machine now
+     */
+    @PostMapping("/catalog/refresh")
+    public ResponseEntity<Map<String, Object>> refreshCatalog() {
+        try {
+            queryCatalog.refresh();
+            return ResponseEntity.ok(queryCatalog.getStatus());
+        } catch (Exception e) {
+            log.error("Error refreshing query catalog", e);
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("status", "error", "message", "Failed to refresh catalog: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get the parsed model of a query: triple patterns, join graph and shape
+     */
+    @GetMapping("/model/{dataset}/{queryFile}")
+    public ResponseEntity<?> getQueryModel(
             @PathVariable String dataset,
             @PathVariable String queryFile) {
         try {
-            String content = queryService.getQueryContent(dataset, queryFile);
-            if (content != null) {
-                return ResponseEntity.ok(Map.of("content", content));
+            QueryModel model = queryService.getQueryModel(dataset, queryFile);
+            if (model != null) {
+                return ResponseEntity.ok(model);
             } else {
                 return ResponseEntity.notFound().build();
             }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", e.getMessage()));
         } catch (Exception e) {
-            log.error("Error getting query content for {}/{}", dataset, queryFile, e);
+            log.error("Error analyzing query {}/{}", dataset, queryFile, e);
             return ResponseEntity.internalServerError().build();
         }
     }
@@ -71,16 +156,7 @@ public class QueryController {
      */
     @PostMapping("/start-cluster")
     public ResponseEntity<ClusterStatusResponse> startCluster() {
-        try {
-            ClusterStatusResponse response = queryService.startCluster();
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error starting cluster", e);
-            return ResponseEntity.ok(ClusterStatusResponse.builder()
-                    .status("error")
-                    .message("Exception while starting cluster: " + e.getMessage())
-                    .build());
-        }
+        return runClusterOperation("start-cluster", "Exception while starting cluster: ");
     }
 
     /**
@@ -88,16 +164,7 @@ public class QueryController {
      */
     @PostMapping("/stop-cluster")
     public ResponseEntity<ClusterStatusResponse> stopCluster() {
-        try {
-            ClusterStatusResponse response = queryService.stopCluster();
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error stopping cluster", e);
-            return ResponseEntity.ok(ClusterStatusResponse.builder()
-                    .status("error")
-                    .message("Exception while stopping cluster: " + e.getMessage())
-                    .build());
-        }
+        return runClusterOperation("stop-cluster", "Exception while stopping cluster: ");
     }
 
     /**
@@ -105,16 +172,7 @@ public class QueryController {
      */
     @PostMapping("/restart-cluster")
     public ResponseEntity<ClusterStatusResponse> restartCluster() {
-        try {
-            ClusterStatusResponse response = queryService.restartCluster();
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error restarting cluster", e);
-            return ResponseEntity.ok(ClusterStatusResponse.builder()
-                    .status("error")
-                    .message("Exception while restarting cluster: " + e.getMessage())
-                    .build());
-        }
+        return runClusterOperation("restart-cluster", "Exception while restarting cluster: ");
     }
 
     /**
@@ -122,26 +180,138 @@ public class QueryController {
      */
     @PostMapping("/clear-java-processes")
     public ResponseEntity<ClusterStatusResponse> clearJavaProcesses() {
+        return runClusterOperation("clear-java-processes", "Exception while clearing Java processes: ");
+    }
+
+    /**
+     * Run a cluster operation as a job and wait for it, so it never overlaps a background one
+     */
+    private ResponseEntity<ClusterStatusResponse> runClusterOperation(String operation, String errorPrefix) {
         try {
-            ClusterStatusResponse response = queryService.clearJavaProcesses();
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(jobService.runAndWait(operation, JobService.RESOURCE_CLUSTER,
+                    "Cluster " + operation, clusterTask(operation)));
+        } catch (JobConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ClusterStatusResponse.builder()
+                    .status("error")
+                    .message(e.getActiveJob().getDescription() + " is running (job " + e.getActiveJob().getId() + ")")
+                    .build());
         } catch (Exception e) {
-            log.error("Error clearing Java processes", e);
+            log.error("Error running cluster operation {}", operation, e);
             return ResponseEntity.ok(ClusterStatusResponse.builder()
                     .status("error")
-                    .message("Exception while clearing Java processes: " + e.getMessage())
+                    .message(errorPrefix + e.getMessage())
                     .build());
         }
     }
 
+    private JobService.JobTask<ClusterStatusResponse> clusterTask(String operation) {
+        return switch (operation) {
+            case "start-cluster" -> job -> queryService.startCluster();
+            case "stop-cluster" -> job -> queryService.stopCluster();
+            case "restart-cluster" -> job -> queryService.restartCluster();
+            default -> job -> queryService.clearJavaProcesses();
+        };
+    }
+
+    /**
+     * Run a cluster operation as a background job; follow it under /api/jobs/{jobId}
+     */
+    @PostMapping("/{operation:start-cluster|stop-cluster|restart-cluster|clear-java-processes}/async")
+    public ResponseEntity<JobInfo> startClusterJob(@PathVariable String operation) {
+        JobService.JobTask<ClusterStatusResponse> task = clusterTask(operation);
+        try {
+            JobInfo job = jobService.submit(operation, JobService.RESOURCE_CLUSTER, "Cluster " + operation, ctx -> {
+                ClusterStatusResponse response = task.run(ctx);
+                if (!"success".equals(response.getStatus())) {
+                    throw new JobFailedException(response.getMessage(), response);
+                }
+                return response;
+            });
+            return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job);
+        } catch (JobConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getActiveJob());
+        }
+    }
+
+    /**
+     * Get cold/warm execution policy state (pending restart, queries since restart)
+     */
+    @GetMapping("/execution-policy")
+    public ResponseEntity<Map<String, Object>> getExecutionPolicy() {
+        return ResponseEntity.ok(executionPolicy.getStatus());
+    }
+
+    /**
+     * Get running and waiting queries per cluster
+     */
+    @GetMapping("/queue")
+    public ResponseEntity<Map<String, Object>> getQueue() {
+        return ResponseEntity.ok(admissionScheduler.getQueueSnapshot());
+    }
+
+    /**
+     * Get query result cache statistics
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(resultCache.getStats());
+    }
+
+    /**
+     * Drop all cached query results
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<Map<String, Object>> clearCache() {
+        resultCache.invalidateAll("cleared through API");
+        return ResponseEntity.ok(resultCache.getStats());
+    }
+
+    /**
+     * Get learned plan choices and per-plan latency statistics
+     */
+    @GetMapping("/plans")
+    public ResponseEntity<List<PlanChoice>> getPlanChoices() {
+        return ResponseEntity.ok(planAdvisor.getChoices());
+    }
+
+    /**
+     * Forget all plan statistics and start learning again
+     */
+    @DeleteMapping("/plans")
+    public ResponseEntity<Map<String, Object>> resetPlanChoices() {
+        planAdvisor.reset();
+        return ResponseEntity.ok(Map.of("status", "success", "message", "Plan statistics cleared"));
+    }
+
     /**
      * Execute a SPARQL query
      */
     @PostMapping("/execute")
-    public ResponseEntity<QueryExecutionResponse> executeQuery(@RequestBody QueryExecutionRequest request) {
+    public ResponseEntity<QueryExecutionResponse> executeQuery(
+            @RequestBody QueryExecutionRequest request,
+            @RequestHeader(value = "X-User", required = false) String user) {
+        if (request.getUserId() == null) {
+            request.setUserId(user);
+        }
+        if (!ClusterExecutionPolicy.isValidMode(request.getExecutionMode())) {
+            return ResponseEntity.badRequest().body(QueryExecutionResponse.builder()
+                    .status("error")
+                    .message(unknownModeMessage(request.getExecutionMode()))
+                    .queryId(request.getQueryId())
+                    .queryFile(request.getQueryFile())
+                    .build());
+        }
         try {
             QueryExecutionResponse response = queryService.executeQuery(request);
             return ResponseEntity.ok(response);
+        } catch (QueryRejectedException e) {
+            log.warn("Query {} rejected: {}", request.getQueryFile(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(QueryExecutionResponse.builder()
+                    .status("rejected")
+                    .message(e.getMessage())
+                    .queryId(request.getQueryId())
+                    .queryFile(request.getQueryFile())
+                    .build());
         } catch (Exception e) {
             log.error("Error executing query", e);
             return ResponseEntity.ok(QueryExecutionResponse.builder()
@@ -151,6 +321,76 @@ public class QueryController {
         }
     }
 
+    private static String unknownModeMessage(String mode) {
+        return "Unknown executionMode '" + mode + "', expected " + ClusterExecutionPolicy.MODE_COLD + ", "
+                + ClusterExecutionPolicy.MODE_WARM + " or " + ClusterExecutionPolicy.MODE_COLD_EVERY_N;
+    }
+
+    /**
+     * Queries waiting for or holding a cluster slot, with their deadlines
+     */
+    @GetMapping("/running")
+    public ResponseEntity<List<Map<String, Object>>> getRunningQueries() {
+        return ResponseEntity.ok(runningQueries.list());
+    }
+
+    /**
+     * Cancel a query by ID: it leaves the queue, or its client process is killed
+     */
+    @PostMapping("/cancel/{queryId}")
+    public ResponseEntity<Map<String, String>> cancelQuery(@PathVariable String queryId) {
+        if (!runningQueries.cancel(queryId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", "error", "message", "No running query " + queryId));
+        }
+        return ResponseEntity.ok(Map.of("status", "success", "message", "Query " + queryId + " is being cancelled"));
+    }
+
+    /**
+     * Run a query workload (repetitions + warmup) as a job; its result reports latency percentiles per query
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> executeBatch(
+            @RequestBody BatchExecutionRequest request,
+            @RequestHeader(value = "X-User", required = false) String user) {
+        if (request.getUserId() == null) {
+            request.setUserId(user);
+        }
+        if (!ClusterExecutionPolicy.isValidMode(request.getExecutionMode())) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("status", "error", "message", unknownModeMessage(request.getExecutionMode())));
+        }
+        try {
+            JobInfo job = jobService.submit("query-batch", JobService.RESOURCE_QUERY_BATCH,
+                    "Query batch on " + request.getDataset(), ctx -> {
+                        BatchExecutionResponse response = batchService.runBatch(request);
+                        if ("error".equals(response.getStatus())) {
+                            throw new JobFailedException(response.getMessage(), response);
+                        }
+                        return response;
+                    });
+            return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job);
+        } catch (JobConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getActiveJob());
+        }
+    }
+
+    /**
+     * Get the cluster health snapshot kept by the background monitor
+     */
+    @GetMapping("/cluster-health")
+    public ResponseEntity<ClusterHealthSnapshot> getClusterHealth() {
+        return ResponseEntity.ok(healthMonitor.getSnapshot());
+    }
+
+    /**
+     * Collect cluster health now instead of waiting for the next round
+     */
+    @PostMapping("/cluster-health/refresh")
+    public ResponseEntity<ClusterHealthSnapshot> refreshClusterHealth() {
+        return ResponseEntity.ok(healthMonitor.refresh());
+    }
+
     /**
      * Get list of available PQDAG datasets from pqdag_data directory
      */
@@ -195,4 +435,8 @@ public class QueryController {
                     .build());
         }
     }
+
+    private String catalogEtag() {
+        return "\"catalog-" + queryCatalog.getVersion() + "\"";
+    }
 }
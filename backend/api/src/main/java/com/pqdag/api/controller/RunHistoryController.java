@@ -0,0 +1,56 @@
+package com.pqdag.api.controller;
+
+import com.pqdag.api.dto.PipelineRun;
+import com.pqdag.api.dto.RunTrendPoint;
+import com.pqdag.api.service.RunHistoryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/history")
+@RequiredArgsConstructor
+public class RunHistoryController {
+
+    private final RunHistoryService runHistoryService;
+
+    /**
+     * Recorded pipeline runs, newest first
+     */
+    @GetMapping("/runs")
+    public ResponseEntity<List<PipelineRun>> listRuns(@RequestParam(required = false) String type,
+                                                      @RequestParam(required = false) String dataset,
+                                                      @RequestParam(defaultValue = "false") boolean regressions,
+                                                      @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(runHistoryService.list(type, dataset, regressions, limit));
+    }
+
+    @GetMapping("/runs/{runId}")
+    public ResponseEntity<PipelineRun> getRun(@PathVariable String runId) {
+        return ResponseEntity.of(runHistoryService.get(runId));
+    }
+
+    /**
+     * Compare runs with the first of ids: duration, throughput and per-phase changes in percent
+     */
+    @GetMapping("/compare")
+    public ResponseEntity<?> compareRuns(@RequestParam List<String> ids) {
+        try {
+            return ResponseEntity.ok(runHistoryService.compare(ids));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Duration, throughput and baseline of every run of one type and dataset, oldest first
+     */
+    @GetMapping("/trend")
+    public ResponseEntity<List<RunTrendPoint>> getTrend(@RequestParam String type,
+                                                        @RequestParam(required = false) String dataset) {
+        return ResponseEntity.ok(runHistoryService.trend(type, dataset));
+    }
+}
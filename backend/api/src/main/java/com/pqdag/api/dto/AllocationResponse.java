@@ -18,4 +18,5 @@ public class AllocationResponse {
     private AllocationStatistics statistics;
     private List<MachineAllocation> distribution;
     private String affectationFile;     // Path to affectation file
+    private String jobId;               // Background job, when "running"
 }
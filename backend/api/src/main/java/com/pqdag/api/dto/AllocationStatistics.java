@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,4 +17,9 @@ public class AllocationStatistics {
     private Double executionTime;       // in seconds
     private String dbStatFile;
     private String graphFile;
+
+    // From the profiles of the last fragmentation input, when available
+    private Long inputTriples;
+    private Integer inputPredicates;
+    private List<String> inputFiles;
 }
@@ -0,0 +1,19 @@
+package com.pqdag.api.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchExecutionRequest {
+    private String dataset;
+    private List<String> queryFiles;   // null = every .in file of storage/queries/<dataset>
+    private Integer repetitions;       // measured runs per query (default 1)
+    private Integer warmup;            // unmeasured runs per query before measuring (default 0)
+    private Integer pipelineDepth;     // executions submitted ahead of completion (default 2)
+    private Integer planNumber;
+    private String masterIp;
+    private String executionMode;
+    private Integer coldEvery;
+    private String userId;
+}
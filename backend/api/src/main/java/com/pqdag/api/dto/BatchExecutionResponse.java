@@ -0,0 +1,23 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchExecutionResponse {
+    private String status;              // "success", "partial", "error"
+    private String message;
+    private String batchId;
+    private String dataset;
+    private Integer totalExecutions;
+    private Integer failures;
+    private Long wallTimeMs;
+    private List<BatchQueryReport> queries;
+}
@@ -0,0 +1,27 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryReport {
+    private String queryFile;
+    private Integer planNumber;         // plan every run of the query used
+    private Integer executions;
+    private Integer failures;
+    private Integer resultCount;        // from the last successful run
+    private Long minMs;
+    private Long p50Ms;
+    private Long p95Ms;
+    private Long p99Ms;
+    private Long maxMs;
+    private Double meanMs;
+    private List<String> errors;        // first few failure messages
+}
@@ -0,0 +1,30 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cluster state collected by the background health monitor, also pushed to
+ * /topic/cluster/health whenever something relevant changes
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterHealthSnapshot {
+    private String status;              // "healthy", "degraded", "down" or "unknown"
+    private long collectedAt;           // epoch millis
+    private long collectionMs;
+    private String currentDataset;      // DB_DEFAULT
+    private List<String> datasets;      // available in pqdag_data
+    private boolean masterAlive;
+    private int workersAlive;
+    private int workersTotal;
+    private List<NodeHealth> nodes;
+    private List<String> changes;       // what changed since the previous collection
+    private boolean stale;              // older than max-age-ms or invalidated; a new collection is under way
+}
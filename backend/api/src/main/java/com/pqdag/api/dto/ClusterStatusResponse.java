@@ -3,10 +3,13 @@ package com.pqdag.api.dto;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 @Builder
 public class ClusterStatusResponse {
     private String status;
     private String message;
     private String output;
+    private List<NodeOperationResult> nodes;    // per-node results of cluster-wide operations
 }
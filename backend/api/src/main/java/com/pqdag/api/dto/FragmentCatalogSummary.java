@@ -0,0 +1,28 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Totals of the fragment catalog and how its last refresh went
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FragmentCatalogSummary {
+    private String directory;
+    private int fragmentCount;
+    private long totalTriples;
+    private long dataBytes;
+    private long schemaBytes;
+    private long dicBytes;
+    private int predicateCount;
+    private int subjectFragments;
+    private int objectFragments;
+    private long indexedAt;             // epoch millis of the last refresh
+    private long refreshMs;
+    private int rescannedFragments;     // fragments read by the last refresh; the others were unchanged
+}
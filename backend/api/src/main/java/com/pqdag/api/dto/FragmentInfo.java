@@ -0,0 +1,25 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One fragment of outputdata, as indexed by the fragment catalog
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FragmentInfo {
+    private int id;
+    private long dataBytes;
+    private long schemaBytes;
+    private long dicBytes;
+    private long triples;               // lines of the .data file
+    private int direction;              // 1 = subject-based (spo_index), -1 = object-based (ops_index), 0 = unknown
+    private List<Integer> predicates;   // predicate IDs from the .schema file
+}
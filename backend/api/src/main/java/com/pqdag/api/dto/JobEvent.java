@@ -0,0 +1,21 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Frame pushed to /topic/jobs/{jobId}: a log line or a status/progress update
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobEvent {
+    private String jobId;
+    private String type;                // "log" or "status"
+    private Long lineNumber;
+    private String line;
+    private JobInfo job;                // set for "status"
+}
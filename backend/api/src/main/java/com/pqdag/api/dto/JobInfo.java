@@ -0,0 +1,34 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * State of a background job; the log is only included when one job is requested
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobInfo {
+    private String id;
+    private String type;                // "fragmentation", "allocation", "start-cluster", ...
+    private String resource;            // jobs on the same resource run one at a time
+    private String description;
+    private String status;              // "queued", "running", "success", "error", "cancelled"
+    private String stage;
+    private Double progress;            // 0..1 when the job reports it
+    private long createdAt;
+    private Long startedAt;
+    private Long finishedAt;
+    private Long durationMs;
+    private String error;
+    private Object result;              // the response the synchronous endpoint would return
+    private long logLines;              // lines logged so far
+    private Long logFrom;               // index of the first line in log
+    private List<String> log;
+}
@@ -13,4 +13,6 @@ public class MachineAllocation {
     private Integer machineId;
     private Integer fragmentCount;
     private String workerIp;
+    private Long dataBytes;     // .data + .schema + .dic of the machine's fragments
+    private Long triples;
 }
@@ -0,0 +1,24 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Liveness and load of one cluster node at the last health collection
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeHealth {
+    private String node;
+    private String role;                // "master" or "worker"
+    private boolean reachable;          // SSH probe answered
+    private boolean alive;              // master.jar / worker.jar process is running
+    private Double load1;               // 1-minute load average
+    private Long memTotalKb;
+    private Long memAvailableKb;
+    private String error;
+}
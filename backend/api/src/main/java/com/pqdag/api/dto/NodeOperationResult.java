@@ -0,0 +1,18 @@
+package com.pqdag.api.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Outcome of a cluster operation on one node
+ */
+@Data
+@Builder
+public class NodeOperationResult {
+    private String node;
+    private String status;              // "success", "failed" (bad exit code), "timeout", "error" (SSH failure)
+    private Integer exitCode;
+    private String output;
+    private Integer attempts;
+    private Long durationMs;
+}
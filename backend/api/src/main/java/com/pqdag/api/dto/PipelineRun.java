@@ -0,0 +1,38 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * One recorded fragmentation, allocation or distribution run
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PipelineRun {
+    private String id;
+    private String type;                        // fragmentation, allocation, distribution
+    private String dataset;
+    private boolean success;
+    private String message;
+    private long startedAt;                     // epoch millis
+    private long durationMs;
+    private Long triples;                       // dataset size
+    private Long inputBytes;
+    private Long throughput;                    // triples per second
+    private Map<String, Double> phaseSeconds;
+    private Map<String, Object> config;
+    private Map<String, Object> host;
+
+    // Comparison with the rolling baseline of earlier successful runs (same type and dataset)
+    private String metric;                      // throughput or durationMs
+    private Double baseline;                    // median of the metric over baselineRuns runs
+    private Integer baselineRuns;
+    private Double slowdownPercent;             // positive when slower than the baseline
+    private boolean regression;
+}
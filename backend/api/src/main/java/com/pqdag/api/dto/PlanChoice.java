@@ -0,0 +1,23 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Learned plan choice for a (dataset, query shape) class
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanChoice {
+    private String dataset;
+    private String shape;               // e.g. "star/6": shape and triple pattern count
+    private Integer bestPlan;           // null until a plan has been measured
+    private boolean converged;          // every candidate plan has enough samples
+    private Map<Integer, PlanStats> plans;
+}
@@ -0,0 +1,21 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Observed latency of one plan number for one query class
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanStats {
+    private long samples;
+    private double meanMs;              // exponentially weighted, recent runs count more
+    private long bestMs;
+    private long lastMs;
+    private long lastRunAt;             // epoch millis
+}
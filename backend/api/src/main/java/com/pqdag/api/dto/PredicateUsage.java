@@ -0,0 +1,19 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Predicate of predicates.txt with the number of fragments containing it
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PredicateUsage {
+    private int id;
+    private String iri;
+    private int fragments;
+}
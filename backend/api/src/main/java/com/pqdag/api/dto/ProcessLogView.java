@@ -0,0 +1,26 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Captured process output: metadata plus, for reads, a range of lines
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessLogView {
+    private String id;
+    private long createdAt;
+    private boolean closed;             // process finished
+    private long lineCount;
+    private long firstAvailableLine;    // older lines were rotated away
+    private long diskBytes;
+    private Long from;                  // number of the first line in lines
+    private List<String> lines;
+}
@@ -1,11 +1,21 @@
 package com.pqdag.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 @Data
 public class QueryExecutionRequest {
+    private String queryId;            // optional, lets the caller subscribe to /topic/query/{queryId} first
+    private String userId;             // fairness key for the query scheduler (or X-User header)
     private String dataset;
     private String queryFile;
-    private Integer planNumber;
+    private Integer planNumber;        // null = learned best plan (query.plan.auto-select)
     private String masterIp;
+    private String executionMode;      // "cold", "warm", "cold-every-n" (null = query.execution-mode)
+    private Integer coldEvery;         // restart interval for "cold-every-n"
+    private Boolean useCache;          // null = true (when query.cache.enabled)
+    private Long timeoutMs;            // null = query.timeout-ms, 0 = no deadline
+    private Boolean explorePlans;      // null = true; false for batch runs, which must not start explorations
+    @JsonIgnore
+    private boolean exploration;       // set on the background runs measuring another plan
 }
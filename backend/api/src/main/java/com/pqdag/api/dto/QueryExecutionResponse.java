@@ -1,18 +1,30 @@
 package com.pqdag.api.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
 public class QueryExecutionResponse {
     private String status;
     private String message;
+    private String queryId;
     private String queryFile;
     private Long executionTimeMs;
     private Integer resultCount;
     private String output;
     private List<String> results;
+    private Boolean outputTruncated;    // output/results capped, full stream was sent over WebSocket
+    private Boolean restartScheduled;
+    private Boolean cached;             // served from the result cache, no remote execution
+    private Integer planNumber;         // plan the query ran with
+    private Boolean planAutoSelected;   // plan was picked from execution history
+    private Map<String, Long> phaseTimesMs; // latency per phase (analysis, queue, ..., transfer) and total
 }
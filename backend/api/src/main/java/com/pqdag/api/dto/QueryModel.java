@@ -0,0 +1,30 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed form of a SELECT/BGP query file, computed without touching the cluster
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryModel {
+    private String shape;                       // "star", "chain", "snowflake" or "complex"
+    private boolean distinct;
+    private List<String> projection;            // selected variables, all variables for SELECT *
+    private Integer limit;
+    private List<TriplePattern> triplePatterns;
+    private List<String> variables;             // in order of first appearance
+    private Map<String, Integer> joinVariables; // variables shared by 2+ patterns -> pattern count
+    private List<List<Integer>> joinEdges;      // pairs of pattern indexes sharing a variable
+    private Integer boundTerms;                 // constants in subject/object position
+    private Integer connectedComponents;
+    private String normalizedText;              // canonical text, used for cache keys
+}
@@ -0,0 +1,26 @@
+package com.pqdag.api.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message pushed to /topic/query/{queryId} while a query runs
+ */
+@Data
+@Builder
+public class QueryStreamFrame {
+    private String type;                // "queued", "batch" or "summary"
+    private String queryId;
+    private Long sequence;
+    private Integer queuePosition;      // queued only, 1 = next to run
+    private List<String> lines;         // non-result output lines in this batch
+    private List<String> results;       // result lines in this batch
+    private Integer resultCount;        // results so far
+    private String status;              // summary only
+    private String message;             // summary only
+    private Long executionTimeMs;       // summary only
+    private Map<String, Long> phaseTimesMs; // summary only
+}
@@ -0,0 +1,32 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs set against a reference run; changes are in percent of the reference
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RunComparison {
+    private PipelineRun reference;
+    private List<Entry> runs;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private PipelineRun run;
+        private Double durationChangePercent;
+        private Double throughputChangePercent;
+        private Map<String, Double> phaseChangePercent;
+    }
+}
@@ -0,0 +1,24 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Metric of one run in a trend series, with the baseline it was judged against
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RunTrendPoint {
+    private String runId;
+    private long startedAt;
+    private boolean success;
+    private long durationMs;
+    private Long throughput;
+    private Double baseline;
+    private Double slowdownPercent;
+    private boolean regression;
+}
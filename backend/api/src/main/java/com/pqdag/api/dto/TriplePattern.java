@@ -0,0 +1,18 @@
+package com.pqdag.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One triple pattern of a basic graph pattern. Variables keep their "?" prefix,
+ * IRIs their angle brackets; prefixed names are expanded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TriplePattern {
+    private String subject;
+    private String predicate;
+    private String object;
+}
@@ -1,6 +1,9 @@
 package com.pqdag.api.service;
 
 import com.pqdag.api.dto.*;
+import com.pqdag.model.RdfFileProfile;
+import com.pqdag.service.RdfProfileService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -14,8 +17,19 @@ import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class AllocationService {
 
+    private static final String ALLOCATION_CONTAINER = "pqdag-allocation";
+
+    private final QueryResultCache queryResultCache;
+    private final ProcessOutputStore outputStore;
+    private final RdfProfileService profileService;
+    private final RunHistoryService runHistoryService;
+    private final WorkspaceTrash workspaceTrash;
+    private final FragmentCatalog fragmentCatalog;
+    private final ContainerWorkerPool workerPool;
+
     @Value("${workspace.root:/home/boumi/Documents/PQDAG GUI}")
     private String workspaceRoot;
 
@@ -26,22 +40,48 @@ public class AllocationService {
      * Run allocation (steps 1-3): statistics, graph generation, METIS
      */
     public AllocationResponse runAllocation(AllocationRequest request) throws Exception {
+        return runAllocation(request, JobContext.NONE);
+    }
+
+    /**
+     * Run allocation, reporting each step and the script output to a job
+     */
+    public AllocationResponse runAllocation(AllocationRequest request, JobContext job) throws Exception {
         Instant start = Instant.now();
         String datasetName = request.getDatasetName();
+        Map<String, Double> phaseSeconds = new LinkedHashMap<>();
         
         log.info("Starting allocation for dataset: {}", datasetName);
 
-        // Step 0: Generate config_runtime.yaml
-        generateConfig(datasetName);
-
-        // Step 1: Run stat_MPI.py (with Docker)
-        runStatistics(datasetName);
-
-        // Step 2: Run generate_fragments_graph.py
-        runGraphGeneration();
-
-        // Step 3: Run weighted_metis.py
-        runMetisAllocation(request.getNumMachines());
+        try {
+            // Step 0: Generate config_runtime.yaml
+            job.progress("config", 0.0);
+            Instant phaseStart = Instant.now();
+            generateConfig(datasetName, job);
+            phaseSeconds.put("config", secondsSince(phaseStart));
+
+            // Step 1: Run stat_MPI.py (with Docker)
+            job.progress("statistics", 0.1);
+            phaseStart = Instant.now();
+            runStatistics(datasetName, job);
+            phaseSeconds.put("statistics", secondsSince(phaseStart));
+
+            // Step 2: Run generate_fragments_graph.py
+            job.progress("graph", 0.5);
+            phaseStart = Instant.now();
+            runGraphGeneration(job);
+            phaseSeconds.put("graph", secondsSince(phaseStart));
+
+            // Step 3: Run weighted_metis.py
+            job.progress("metis", 0.75);
+            phaseStart = Instant.now();
+            runMetisAllocation(request.getNumMachines(), job);
+            phaseSeconds.put("metis", secondsSince(phaseStart));
+            job.progress("results", 0.95);
+        } catch (Exception e) {
+            recordRun(RunHistoryService.ALLOCATION, request, start, phaseSeconds, null, e);
+            throw e;
+        }
 
         // Parse results
         AllocationStatistics stats = parseAllocationResults(datasetName);
@@ -49,6 +89,7 @@ public class AllocationService {
         
         Duration duration = Duration.between(start, Instant.now());
         stats.setExecutionTime(duration.toMillis() / 1000.0);
+        recordRun(RunHistoryService.ALLOCATION, request, start, phaseSeconds, stats.getInputTriples(), null);
 
         return AllocationResponse.builder()
                 .status("success")
@@ -63,36 +104,53 @@ public class AllocationService {
      * Distribute fragments to cluster (step 4)
      */
     public AllocationResponse distributeFragments(AllocationRequest request) throws Exception {
+        return distributeFragments(request, JobContext.NONE);
+    }
+
+    /**
+     * Distribute fragments, reporting the script output to a job
+     */
+    public AllocationResponse distributeFragments(AllocationRequest request, JobContext job) throws Exception {
+        Instant start = Instant.now();
         String datasetName = request.getDatasetName();
         
         log.info("Starting distribution for dataset: {}", datasetName);
 
-        // Ensure config is generated
-        generateConfig(datasetName);
-
-        // Run distribute_fragments.py using docker exec
-        ProcessBuilder pb = new ProcessBuilder(
-            "docker", "exec", "pqdag-allocation",
-            "python3",
-            "/app/allocation/distribute_fragments.py",
-            "--config_file",
-            "/app/allocation/config_runtime.yaml"
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
-        
-        int exitCode = process.waitFor();
-        
-        if (exitCode != 0) {
-            throw new RuntimeException("Distribution failed: " + output);
+        try {
+            // Ensure config is generated
+            job.progress("config", 0.0);
+            generateConfig(datasetName, job);
+            checkAffectationFragments();
+            job.progress("distribution", 0.1);
+
+            // Run distribute_fragments.py using docker exec
+            Process process = workerPool.exec(ALLOCATION_CONTAINER, List.of(
+                "python3",
+                "/app/allocation/distribute_fragments.py",
+                "--config_file",
+                "/app/allocation/config_runtime.yaml"
+            ));
+            String output = readProcessOutput(process, job, "distribute");
+            
+            int exitCode = process.waitFor();
+            
+            if (exitCode != 0) {
+                throw new RuntimeException("Distribution failed: " + output);
+            }
+        } catch (Exception e) {
+            recordRun(RunHistoryService.DISTRIBUTION, request, start, null, null, e);
+            throw e;
         }
         
         log.info("Distribution completed successfully");
+        recordRun(RunHistoryService.DISTRIBUTION, request, start, null, null, null);
+        
+        // Workers now hold a new fragment layout, cached query results are stale
+        queryResultCache.invalidateAll("new fragment distribution for " + datasetName);
         
         // Clean up if requested
         if (Boolean.TRUE.equals(request.getCleanAfter())) {
+            job.progress("cleanup", 0.95);
             cleanupAfterDistribution(datasetName);
         }
 
@@ -102,6 +160,39 @@ public class AllocationService {
                 .build();
     }
 
+    /**
+     * Add an allocation or distribution run to the benchmark history
+     *
+     * @param failure the exception that ended the run, null on success
+     */
+    private void recordRun(String type, AllocationRequest request, Instant start, Map<String, Double> phaseSeconds,
+                           Long triples, Exception failure) {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("numMachines", request.getNumMachines());
+        config.put("cleanAfter", request.getCleanAfter());
+        config.put("dockerImage", dockerImage);
+        String message = failure == null ? null : failure.getMessage();
+        if (message != null && message.length() > 500) {
+            // Script output is appended to the message; the full log is in process_logs
+            message = message.substring(0, 500) + "...";
+        }
+        runHistoryService.record(PipelineRun.builder()
+                .type(type)
+                .dataset(request.getDatasetName())
+                .success(failure == null)
+                .message(message)
+                .startedAt(start.toEpochMilli())
+                .durationMs(Duration.between(start, Instant.now()).toMillis())
+                .triples(triples)
+                .phaseSeconds(phaseSeconds)
+                .config(config)
+                .build());
+    }
+
+    private static double secondsSince(Instant start) {
+        return Duration.between(start, Instant.now()).toMillis() / 1000.0;
+    }
+
     /**
      * Clean up temporary files after successful distribution
      */
@@ -109,54 +200,25 @@ public class AllocationService {
         log.info("Cleaning up temporary files after distribution for dataset: {}", datasetName);
         
         try {
+            // Renamed away at once and deleted in the background, so the next run can start right away
             // 1. Clean outputdata directory (fragments)
             Path outputDataPath = Paths.get(workspaceRoot, "storage", "outputdata");
             if (Files.exists(outputDataPath)) {
-                Files.walk(outputDataPath)
-                    .sorted(Comparator.reverseOrder())
-                    .filter(path -> !path.equals(outputDataPath)) // Keep the directory itself
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                            log.debug("Deleted: {}", path);
-                        } catch (IOException e) {
-                            log.warn("Failed to delete: {}", path, e);
-                        }
-                    });
+                workspaceTrash.empty(outputDataPath);
                 log.info("✓ Cleaned outputdata directory");
             }
             
             // 2. Clean allocation_results directory
             Path allocationResultsPath = Paths.get(workspaceRoot, "storage", "allocation_results");
             if (Files.exists(allocationResultsPath)) {
-                Files.walk(allocationResultsPath)
-                    .sorted(Comparator.reverseOrder())
-                    .filter(path -> !path.equals(allocationResultsPath)) // Keep the directory itself
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                            log.debug("Deleted: {}", path);
-                        } catch (IOException e) {
-                            log.warn("Failed to delete: {}", path, e);
-                        }
-                    });
+                workspaceTrash.empty(allocationResultsPath);
                 log.info("✓ Cleaned allocation_results directory");
             }
             
             // 3. Clean allocation_temp directory
             Path allocationTempPath = Paths.get(workspaceRoot, "storage", "allocation_temp");
             if (Files.exists(allocationTempPath)) {
-                Files.walk(allocationTempPath)
-                    .sorted(Comparator.reverseOrder())
-                    .filter(path -> !path.equals(allocationTempPath)) // Keep the directory itself
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                            log.debug("Deleted: {}", path);
-                        } catch (IOException e) {
-                            log.warn("Failed to delete: {}", path, e);
-                        }
-                    });
+                workspaceTrash.empty(allocationTempPath);
                 log.info("✓ Cleaned allocation_temp directory");
             }
             
@@ -187,20 +249,16 @@ public class AllocationService {
     // Private helper methods
     // ========================================================================
 
-    private void generateConfig(String datasetName) throws Exception {
+    private void generateConfig(String datasetName, JobContext job) throws Exception {
         log.info("Generating config_runtime.yaml for dataset: {}", datasetName);
         
-        ProcessBuilder pb = new ProcessBuilder(
-            "docker", "exec", "pqdag-allocation",
+        Process process = workerPool.exec(ALLOCATION_CONTAINER, List.of(
             "python3",
             "/app/allocation/generate_config.py",
             datasetName,
             "/app"
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
+        ));
+        String output = readProcessOutput(process, job, "config");
         
         int exitCode = process.waitFor();
         
@@ -211,19 +269,15 @@ public class AllocationService {
         log.info("Config generated successfully");
     }
 
-    private void runStatistics(String datasetName) throws Exception {
+    private void runStatistics(String datasetName, JobContext job) throws Exception {
         log.info("Step 1: Running MPI statistics calculation");
 
         // Use existing pqdag-allocation container
-        ProcessBuilder pb = new ProcessBuilder(
-            "docker", "exec", "pqdag-allocation",
+        Process process = workerPool.exec(ALLOCATION_CONTAINER, List.of(
             "bash", "-c",
             "cd /app/allocation && mpiexec -n 4 python3 stat_MPI.py /app/storage/outputdata /app/storage/allocation_results/db"
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
+        ));
+        String output = readProcessOutput(process, job, "statistics");
         
         int exitCode = process.waitFor();
         
@@ -234,18 +288,14 @@ public class AllocationService {
         log.info("Statistics calculation completed");
     }
 
-    private void runGraphGeneration() throws Exception {
+    private void runGraphGeneration(JobContext job) throws Exception {
         log.info("Step 2: Running graph generation");
 
-        ProcessBuilder pb = new ProcessBuilder(
-            "docker", "exec", "pqdag-allocation",
+        Process process = workerPool.exec(ALLOCATION_CONTAINER, List.of(
             "bash", "-c",
             "cd /app/allocation && python3 generate_fragments_graph.py /app/storage/allocation_results/db.stat /app/storage/allocation_results/fragments_graph.quad"
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
+        ));
+        String output = readProcessOutput(process, job, "graph");
         
         int exitCode = process.waitFor();
         
@@ -256,18 +306,14 @@ public class AllocationService {
         log.info("Graph generation completed");
     }
 
-    private void runMetisAllocation(Integer numMachines) throws Exception {
+    private void runMetisAllocation(Integer numMachines, JobContext job) throws Exception {
         log.info("Step 3: Running METIS allocation for {} machines", numMachines);
 
-        ProcessBuilder pb = new ProcessBuilder(
-            "docker", "exec", "pqdag-allocation",
+        Process process = workerPool.exec(ALLOCATION_CONTAINER, List.of(
             "bash", "-c",
             String.format("cd /app/allocation && python3 allocation_approaches/weighted_metis.py /app/storage/allocation_results/fragments_graph.quad /app/storage/allocation_results/affectation_weighted_metis.txt %d", numMachines)
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
+        ));
+        String output = readProcessOutput(process, job, "metis");
         
         int exitCode = process.waitFor();
         
@@ -295,12 +341,22 @@ public class AllocationService {
             totalEdges = (int) Files.lines(graphPath).count();
         }
 
-        return AllocationStatistics.builder()
+        AllocationStatistics.AllocationStatisticsBuilder stats = AllocationStatistics.builder()
                 .totalFragments(totalFragments)
                 .totalEdges(totalEdges)
                 .dbStatFile(dbStatPath.toString())
-                .graphFile(graphPath.toString())
-                .build();
+                .graphFile(graphPath.toString());
+
+        // Dataset size from the profiles taken before fragmentation, without rescanning the data
+        List<RdfFileProfile> input = profileService.getFragmentationInput();
+        if (!input.isEmpty()) {
+            Set<String> predicates = new HashSet<>();
+            input.forEach(p -> predicates.addAll(p.getPredicates().keySet()));
+            stats.inputTriples(input.stream().mapToLong(RdfFileProfile::getTriples).sum())
+                    .inputPredicates(predicates.size())
+                    .inputFiles(input.stream().map(RdfFileProfile::getFileName).toList());
+        }
+        return stats.build();
     }
 
     private List<MachineAllocation> parseDistribution() throws Exception {
@@ -310,28 +366,21 @@ public class AllocationService {
             return new ArrayList<>();
         }
 
-        // Count fragments per machine
-        Map<Integer, Integer> machineFragments = new HashMap<>();
-        
-        List<String> lines = Files.readAllLines(affectationPath);
-        for (String line : lines) {
-            String[] parts = line.trim().split("\\s+");
-            if (parts.length >= 2) {
-                int machineId = Integer.parseInt(parts[1]);
-                machineFragments.put(machineId, machineFragments.getOrDefault(machineId, 0) + 1);
-            }
-        }
+        Map<Integer, List<Integer>> machineFragments = readAffectation(affectationPath);
 
         // Read worker IPs
         Map<Integer, String> workerIps = readWorkerIps();
 
-        // Build result
+        // Build result, with the size of each machine's share from the fragment catalog
         List<MachineAllocation> result = new ArrayList<>();
-        for (Map.Entry<Integer, Integer> entry : machineFragments.entrySet()) {
+        for (Map.Entry<Integer, List<Integer>> entry : machineFragments.entrySet()) {
+            FragmentCatalog.Selection share = fragmentCatalog.select(entry.getValue());
             result.add(MachineAllocation.builder()
                     .machineId(entry.getKey())
-                    .fragmentCount(entry.getValue())
+                    .fragmentCount(entry.getValue().size())
                     .workerIp(workerIps.getOrDefault(entry.getKey(), "unknown"))
+                    .dataBytes(share.bytes())
+                    .triples(share.triples())
                     .build());
         }
 
@@ -339,6 +388,39 @@ public class AllocationService {
         return result;
     }
 
+    /**
+     * Fragment IDs per machine from an affectation file ("fragmentId machineId" per line)
+     */
+    private Map<Integer, List<Integer>> readAffectation(Path affectationPath) throws IOException {
+        Map<Integer, List<Integer>> machineFragments = new HashMap<>();
+        for (String line : Files.readAllLines(affectationPath)) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length >= 2) {
+                machineFragments.computeIfAbsent(Integer.parseInt(parts[1]), k -> new ArrayList<>())
+                        .add(Integer.parseInt(parts[0]));
+            }
+        }
+        return machineFragments;
+    }
+
+    /**
+     * Fail before copying anything if the allocation refers to fragments no longer in outputdata
+     */
+    private void checkAffectationFragments() throws IOException {
+        Path affectationPath = Paths.get(workspaceRoot, "storage", "allocation_results", "affectation_weighted_metis.txt");
+        if (!Files.exists(affectationPath)) {
+            return;
+        }
+        List<Integer> fragmentIds = new ArrayList<>();
+        readAffectation(affectationPath).values().forEach(fragmentIds::addAll);
+        List<Integer> missing = fragmentCatalog.select(fragmentIds).missing();
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                    "%d of %d allocated fragments are missing from outputdata (e.g. %s); re-run fragmentation and allocation",
+                    missing.size(), fragmentIds.size(), missing.subList(0, Math.min(10, missing.size()))));
+        }
+    }
+
     private Map<Integer, String> readWorkerIps() throws Exception {
         Path workersPath = Paths.get(workspaceRoot, "backend", "allocation", "workers");
         Map<Integer, String> workerIps = new HashMap<>();
@@ -353,15 +435,23 @@ public class AllocationService {
         return workerIps;
     }
 
-    private String readProcessOutput(Process process) throws IOException {
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+    /**
+     * Capture a step's output; the full log goes to storage/process_logs, only the tail is returned
+     */
+    private String readProcessOutput(Process process, JobContext job, String step) throws IOException {
+        // An interrupt does not unblock readLine; a cancelled job kills the process instead
+        job.onCancel(process::destroyForcibly);
+        try (ProcessOutputLog output = outputStore.open("allocation-" + step);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+                output.append(line);
                 log.info(line);  // Log each line in real-time
+                job.log(line);
             }
+            return output.isTruncated()
+                    ? "[last lines of output log " + output.getId() + "]\n" + output.tailText()
+                    : output.tailText();
         }
-        return output.toString();
     }
 }
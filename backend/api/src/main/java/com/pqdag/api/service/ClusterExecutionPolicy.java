@@ -0,0 +1,280 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.ClusterStatusResponse;
+import com.pqdag.api.dto.QueryExecutionRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import com.pqdag.api.service.JobService.JobTask;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decides when the cluster has to be restarted between queries and keeps
+ * queries out while a restart is pending or running.
+ *
+ * Modes (QueryExecutionRequest.executionMode):
+ *   cold          restart after every query, so each one starts with empty caches
+ *   warm          never restart
+ *   cold-every-n  restart once every coldEvery queries
+ * Any other mode is rejected when the request comes in (isValidMode).
+ *
+ * Like the original cold mode, only successful queries lead to a restart;
+ * with query.restart-after-failure failed and cancelled ones do as well (they
+ * may have left the cluster in any state). All of them count for cold-every-n.
+ *
+ * Plan explorations (QueryExecutionRequest.exploration) neither count as
+ * queries nor trigger a restart.
+ *
+ * Restarts run as RESOURCE_CLUSTER jobs, so they never overlap a manual
+ * start/stop/clear: a scheduled restart waits until the cluster resource is
+ * free, and a manual operation during a restart gets a conflict. A manual
+ * restart while one is scheduled does the work of both.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterExecutionPolicy {
+
+    public static final String MODE_COLD = "cold";
+    public static final String MODE_WARM = "warm";
+    public static final String MODE_COLD_EVERY_N = "cold-every-n";
+    private static final Set<String> MODES = Set.of(MODE_COLD, MODE_WARM, MODE_COLD_EVERY_N);
+
+    private final JobService jobService;
+
+    @Value("${query.execution-mode:cold}")
+    private String defaultMode;
+
+    @Value("${query.cold-every:10}")
+    private int defaultColdEvery;
+
+    @Value("${query.restart-after-failure:false}")
+    private boolean restartAfterFailure;
+
+    @Value("${query.cluster-ready-timeout-ms:300000}")
+    private long readyTimeoutMs;
+
+    // Retry interval while a manual cluster operation holds the cluster resource
+    @Value("${query.restart-retry-ms:1000}")
+    private long restartRetryMs;
+
+    private final ExecutorService restartExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-restart");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object monitor = new Object();
+    private int inFlight;
+    private long queriesSinceRestart;
+    private boolean restartPending;
+    // An automatic restart is waiting for the cluster resource; a manual restart clears it
+    private boolean restartScheduled;
+    private String lastRestartStatus;
+
+    @PostConstruct
+    public void checkDefaultMode() {
+        if (!MODES.contains(defaultMode)) {
+            throw new IllegalStateException("query.execution-mode must be one of " + MODES + ", got: " + defaultMode);
+        }
+    }
+
+    /**
+     * Whether mode is cold, warm or cold-every-n; null stands for query.execution-mode
+     */
+    public static boolean isValidMode(String mode) {
+        return mode == null || MODES.contains(mode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        restartExecutor.shutdownNow();
+    }
+
+    /**
+     * Block until no restart is pending, then count the caller as an in-flight query
+     */
+    public void awaitClusterReady() throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + readyTimeoutMs;
+        synchronized (monitor) {
+            while (restartPending) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Cluster was not ready after " + readyTimeoutMs + " ms");
+                }
+                monitor.wait(remaining);
+            }
+            inFlight++;
+        }
+    }
+
+    /**
+     * Record a finished query and schedule a restart if its mode requires one.
+     *
+     * @param succeeded false for failed, timed out and cancelled queries
+     * @return true if a restart was scheduled
+     */
+    public boolean queryFinished(QueryExecutionRequest request, boolean succeeded,
+                                 Callable<ClusterStatusResponse> restart) {
+        synchronized (monitor) {
+            inFlight--;
+            if (request.isExploration()) {
+                monitor.notifyAll();
+                return false;
+            }
+            queriesSinceRestart++;
+            boolean schedule = !restartPending && (succeeded || restartAfterFailure) && requiresRestart(request);
+            if (schedule) {
+                restartPending = true;
+                restartScheduled = true;
+                restartExecutor.submit(() -> submitRestart(restart));
+            }
+            monitor.notifyAll();
+            return schedule;
+        }
+    }
+
+    /**
+     * Restart right away (manual restart), waiting for in-flight queries first.
+     * The caller holds RESOURCE_CLUSTER, so no automatic restart is running;
+     * a scheduled one is dropped.
+     */
+    public ClusterStatusResponse restartNow(Callable<ClusterStatusResponse> restart) throws Exception {
+        synchronized (monitor) {
+            restartPending = true;
+            restartScheduled = false;
+        }
+        return runRestart(restart);
+    }
+
+    public Map<String, Object> getStatus() {
+        synchronized (monitor) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("defaultMode", defaultMode);
+            status.put("defaultColdEvery", defaultColdEvery);
+            status.put("restartAfterFailure", restartAfterFailure);
+            status.put("inFlight", inFlight);
+            status.put("queriesSinceRestart", queriesSinceRestart);
+            status.put("restartPending", restartPending);
+            status.put("lastRestartStatus", lastRestartStatus);
+            return status;
+        }
+    }
+
+    /**
+     * Whether the request's mode restarts the cluster after every query
+     */
+    public boolean restartsAfterEveryQuery(QueryExecutionRequest request) {
+        return MODE_COLD.equals(modeOf(request));
+    }
+
+    private boolean requiresRestart(QueryExecutionRequest request) {
+        String mode = modeOf(request);
+        switch (mode) {
+            case MODE_WARM:
+                return false;
+            case MODE_COLD_EVERY_N:
+                int coldEvery = request.getColdEvery() != null ? request.getColdEvery() : defaultColdEvery;
+                return queriesSinceRestart >= Math.max(1, coldEvery);
+            case MODE_COLD:
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown execution mode: " + mode);
+        }
+    }
+
+    private String modeOf(QueryExecutionRequest request) {
+        return request.getExecutionMode() != null ? request.getExecutionMode() : defaultMode;
+    }
+
+    /**
+     * Run a scheduled restart as a cluster job, retrying while a manual operation holds the resource
+     */
+    private void submitRestart(Callable<ClusterStatusResponse> restart) {
+        JobTask<ClusterStatusResponse> task = job -> {
+            synchronized (monitor) {
+                if (!restartScheduled) {
+                    return null;
+                }
+                restartScheduled = false;
+            }
+            return runRestart(restart);
+        };
+        try {
+            retrySubmit(task);
+        } finally {
+            synchronized (monitor) {
+                // Cancelled or shut down before the restart started: let queries in again
+                if (restartScheduled) {
+                    restartScheduled = false;
+                    restartPending = false;
+                    lastRestartStatus = "error";
+                    monitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void retrySubmit(JobTask<ClusterStatusResponse> task) {
+        while (true) {
+            try {
+                jobService.runAndWait("restart-cluster", JobService.RESOURCE_CLUSTER,
+                        "Cluster restart (execution policy)", task);
+                return;
+            } catch (JobConflictException e) {
+                synchronized (monitor) {
+                    if (!restartScheduled) {
+                        return;
+                    }
+                }
+                log.debug("Cluster restart waits for {}", e.getActiveJob().getDescription());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // runRestart already logged it
+                return;
+            }
+            try {
+                Thread.sleep(restartRetryMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private ClusterStatusResponse runRestart(Callable<ClusterStatusResponse> restart) throws Exception {
+        ClusterStatusResponse response = null;
+        try {
+            synchronized (monitor) {
+                while (inFlight > 0) {
+                    monitor.wait();
+                }
+                log.info("Restarting cluster (after {} queries)", queriesSinceRestart);
+            }
+            response = restart.call();
+            return response;
+        } catch (Exception e) {
+            log.warn("Cluster restart failed", e);
+            throw e;
+        } finally {
+            synchronized (monitor) {
+                restartPending = false;
+                queriesSinceRestart = 0;
+                lastRestartStatus = response != null ? response.getStatus() : "error";
+                monitor.notifyAll();
+            }
+        }
+    }
+}
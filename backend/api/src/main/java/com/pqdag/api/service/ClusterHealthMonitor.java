@@ -0,0 +1,339 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.ClusterHealthSnapshot;
+import com.pqdag.api.dto.NodeHealth;
+import com.pqdag.api.dto.NodeOperationResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps an in-memory snapshot of the cluster so status reads need no SSH round-trip.
+ *
+ * Every interval-ms the monitor reads DB_DEFAULT and the dataset list from the
+ * cluster host and probes all nodes in parallel for process liveness (a running
+ * master.jar / worker.jar), load average and memory. Reads are served from the snapshot and never wait
+ * for SSH: one older than max-age-ms, or invalidated by a cluster operation, is
+ * returned marked stale while a new one is collected in the background. Only
+ * the very first read blocks until a snapshot exists.
+ * When liveness, status or datasets change (not load or memory, which always
+ * move) the snapshot is pushed to /topic/cluster/health.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterHealthMonitor {
+
+    public static final String TOPIC = "/topic/cluster/health";
+
+    private static final String INFO_SEPARATOR = "---";
+
+    private final SshSessionPool sshPool;
+    private final ClusterOperationExecutor clusterOperations;
+    private final ClusterTopology topology;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${cluster.host.ip:172.17.0.1}")
+    private String clusterHostIp;
+
+    @Value("${pqdag.installation.path:/home/ubuntu/pqdag}")
+    private String pqdagInstallationPath;
+
+    @Value("${pqdag.data.path:/home/ubuntu/mounted_vol/pqdag_data}")
+    private String pqdagDataPath;
+
+    @Value("${cluster.monitor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cluster.monitor.interval-ms:15000}")
+    private long intervalMs;
+
+    @Value("${cluster.monitor.max-age-ms:60000}")
+    private long maxAgeMs;
+
+    @Value("${cluster.monitor.timeout-ms:10000}")
+    private long timeoutMs;
+
+    private volatile ClusterHealthSnapshot snapshot;
+    // Bumped by invalidate(); a snapshot collected under an older generation is stale
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long snapshotGeneration;
+    private final Object collectLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    private final ScheduledExecutorService monitorExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            monitorExecutor.scheduleWithFixedDelay(this::refreshQuietly, 0, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        monitorExecutor.shutdownNow();
+    }
+
+    /**
+     * Latest snapshot; a stale one is returned marked as such and collected again in
+     * the background. Only blocks while no snapshot was collected yet.
+     */
+    public ClusterHealthSnapshot getSnapshot() {
+        ClusterHealthSnapshot current = snapshot;
+        if (current == null) {
+            return refresh();
+        }
+        if (snapshotGeneration != generation.get() || System.currentTimeMillis() - current.getCollectedAt() > maxAgeMs) {
+            refreshInBackground();
+            return current.toBuilder().stale(true).build();
+        }
+        return current;
+    }
+
+    /**
+     * Collect a new snapshot. A caller that waited for a collection started after
+     * its own request gets that one instead of starting another.
+     */
+    public ClusterHealthSnapshot refresh() {
+        long requestedAt = System.currentTimeMillis();
+        synchronized (collectLock) {
+            ClusterHealthSnapshot current = snapshot;
+            if (current != null && snapshotGeneration == generation.get() && current.getCollectedAt() >= requestedAt) {
+                return current;
+            }
+            long collectedGeneration = generation.get();
+            ClusterHealthSnapshot next = collect();
+            next.setChanges(diff(current, next));
+            snapshot = next;
+            snapshotGeneration = collectedGeneration;
+            if (!next.getChanges().isEmpty()) {
+                log.info("Cluster health {}: {}", next.getStatus(), next.getChanges());
+                publish(next);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Mark the snapshot outdated after a cluster operation and collect again in the background
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        refreshInBackground();
+    }
+
+    /**
+     * Queue one collection on the monitor thread; further requests until it starts share it
+     */
+    private void refreshInBackground() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            monitorExecutor.execute(() -> {
+                refreshQueued.set(false);
+                refreshQuietly();
+            });
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Cluster health collection failed", e);
+        }
+    }
+
+    private ClusterHealthSnapshot collect() {
+        long start = System.currentTimeMillis();
+        ClusterHealthSnapshot.ClusterHealthSnapshotBuilder builder = ClusterHealthSnapshot.builder()
+                .collectedAt(start)
+                .datasets(Collections.emptyList());
+        collectDatasets(builder);
+
+        List<NodeHealth> nodes = new ArrayList<>();
+        try {
+            Map<String, String> commands = new LinkedHashMap<>();
+            Map<String, String> roles = new HashMap<>();
+            String master = topology.getMaster();
+            if (master != null) {
+                commands.put(master, probeCommand("master"));
+                roles.put(master, "master");
+            }
+            for (String worker : topology.getWorkers()) {
+                if (commands.putIfAbsent(worker, probeCommand("worker")) == null) {
+                    roles.put(worker, "worker");
+                }
+            }
+            for (NodeOperationResult result : clusterOperations.run("Health probe", commands, exit -> true)) {
+                nodes.add(parseProbe(result, roles.get(result.getNode())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Error probing cluster nodes", e);
+        }
+
+        boolean masterAlive = nodes.stream().anyMatch(node -> "master".equals(node.getRole()) && node.isAlive());
+        int workersTotal = (int) nodes.stream().filter(node -> "worker".equals(node.getRole())).count();
+        int workersAlive = (int) nodes.stream().filter(node -> "worker".equals(node.getRole()) && node.isAlive()).count();
+        String status;
+        if (nodes.isEmpty()) {
+            status = "unknown";
+        } else if (!masterAlive) {
+            status = "down";
+        } else {
+            status = workersAlive == workersTotal ? "healthy" : "degraded";
+        }
+
+        return builder
+                .status(status)
+                .masterAlive(masterAlive)
+                .workersAlive(workersAlive)
+                .workersTotal(workersTotal)
+                .nodes(nodes)
+                .collectionMs(System.currentTimeMillis() - start)
+                .build();
+    }
+
+    /**
+     * DB_DEFAULT and the pqdag_data listing in one command on the cluster host
+     */
+    private void collectDatasets(ClusterHealthSnapshot.ClusterHealthSnapshotBuilder builder) {
+        String command = "grep '^DB_DEFAULT=' " + pqdagInstallationPath + "/conf/config.properties | cut -d'=' -f2; "
+                + "echo " + INFO_SEPARATOR + "; ls -1 " + pqdagDataPath;
+        try {
+            RemoteCommandResult result = sshPool.execute(clusterHostIp, command, timeoutMs);
+            String[] lines = result.getOutput().split("\n");
+            int separator = Arrays.asList(lines).indexOf(INFO_SEPARATOR);
+            if (separator < 0) {
+                log.warn("Unexpected dataset info from {}: {}", clusterHostIp, result.getOutput());
+                return;
+            }
+            Arrays.stream(lines, 0, separator)
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .findFirst()
+                    .ifPresent(builder::currentDataset);
+            if (result.isSuccess()) {
+                builder.datasets(Arrays.stream(lines, separator + 1, lines.length)
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty())
+                        .sorted()
+                        .toList());
+            }
+        } catch (Exception e) {
+            log.warn("Error reading dataset info from {}: {}", clusterHostIp, e.getMessage());
+        }
+    }
+
+    /**
+     * Prints alive=0|1, load=, and the MemTotal/MemAvailable lines of /proc/meminfo
+     */
+    private String probeCommand(String role) {
+        return "bash -c 'if " + ClusterReadinessProbe.processCheck(role) + ";"
+                + " then echo alive=1; else echo alive=0; fi;"
+                + " read load rest < /proc/loadavg && echo load=$load;"
+                + " grep -E \"^(MemTotal|MemAvailable):\" /proc/meminfo'";
+    }
+
+    private NodeHealth parseProbe(NodeOperationResult result, String role) {
+        NodeHealth health = NodeHealth.builder()
+                .node(result.getNode())
+                .role(role)
+                .build();
+        if (!"success".equals(result.getStatus())) {
+            health.setError(result.getOutput());
+            return health;
+        }
+        health.setReachable(true);
+        for (String line : result.getOutput().split("\n")) {
+            try {
+                if (line.startsWith("alive=")) {
+                    health.setAlive(line.endsWith("1"));
+                } else if (line.startsWith("load=")) {
+                    health.setLoad1(Double.parseDouble(line.substring(5).trim()));
+                } else if (line.startsWith("MemTotal:")) {
+                    health.setMemTotalKb(parseKb(line));
+                } else if (line.startsWith("MemAvailable:")) {
+                    health.setMemAvailableKb(parseKb(line));
+                }
+            } catch (NumberFormatException e) {
+                log.debug("Unparseable health probe line from {}: {}", result.getNode(), line);
+            }
+        }
+        return health;
+    }
+
+    private static long parseKb(String line) {
+        return Long.parseLong(line.replaceAll("[^0-9]", ""));
+    }
+
+    /**
+     * Human-readable differences that warrant an event; load and memory are ignored
+     */
+    private static List<String> diff(ClusterHealthSnapshot previous, ClusterHealthSnapshot next) {
+        List<String> changes = new ArrayList<>();
+        if (previous == null) {
+            changes.add("first collection");
+            return changes;
+        }
+        if (!next.getStatus().equals(previous.getStatus())) {
+            changes.add("status " + previous.getStatus() + " -> " + next.getStatus());
+        }
+        if (!Objects.equals(previous.getCurrentDataset(), next.getCurrentDataset())) {
+            changes.add("current dataset " + previous.getCurrentDataset() + " -> " + next.getCurrentDataset());
+        }
+        if (!previous.getDatasets().equals(next.getDatasets())) {
+            Set<String> added = new TreeSet<>(next.getDatasets());
+            added.removeAll(previous.getDatasets());
+            Set<String> removed = new TreeSet<>(previous.getDatasets());
+            removed.removeAll(next.getDatasets());
+            changes.add("datasets added " + added + ", removed " + removed);
+        }
+
+        Map<String, NodeHealth> before = new HashMap<>();
+        previous.getNodes().forEach(node -> before.put(node.getNode(), node));
+        for (NodeHealth node : next.getNodes()) {
+            NodeHealth old = before.remove(node.getNode());
+            String state = nodeState(node);
+            if (old == null) {
+                changes.add(node.getNode() + " added (" + state + ")");
+            } else if (!state.equals(nodeState(old))) {
+                changes.add(node.getNode() + " " + nodeState(old) + " -> " + state);
+            }
+        }
+        before.keySet().forEach(node -> changes.add(node + " removed"));
+        return changes;
+    }
+
+    private static String nodeState(NodeHealth node) {
+        if (!node.isReachable()) {
+            return "unreachable";
+        }
+        return node.isAlive() ? "up" : "down";
+    }
+
+    private void publish(ClusterHealthSnapshot next) {
+        try {
+            messagingTemplate.convertAndSend(TOPIC, next);
+        } catch (MessagingException e) {
+            log.warn("Failed to publish cluster health change", e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.NodeOperationResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Runs one command per node across the cluster concurrently.
+ *
+ * At most parallelism nodes are contacted at once. Each attempt has its own
+ * deadline (node-timeout-ms), enforced by closing the SSH channel, so one hung
+ * node cannot hold up the others. SSH failures and timeouts are retried with
+ * exponential backoff; a command that ran and returned a bad exit code is not.
+ */
+@Slf4j
+@Service
+public class ClusterOperationExecutor {
+
+    private final SshSessionPool sshPool;
+    private final int retries;
+    private final long nodeTimeoutMs;
+    private final long retryBackoffMs;
+    private final ExecutorService executor;
+
+    public ClusterOperationExecutor(SshSessionPool sshPool,
+                                    @Value("${cluster.ops.parallelism:16}") int parallelism,
+                                    @Value("${cluster.ops.node-timeout-ms:30000}") long nodeTimeoutMs,
+                                    @Value("${cluster.ops.retries:2}") int retries,
+                                    @Value("${cluster.ops.retry-backoff-ms:500}") long retryBackoffMs) {
+        this.sshPool = sshPool;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.retries = retries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "cluster-op");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run each node's command and wait for all of them
+     *
+     * @param commandsByNode node -> command, results come back in the same order
+     * @param successExit    which exit codes count as success
+     */
+    public List<NodeOperationResult> run(String operation, Map<String, String> commandsByNode,
+                                         IntPredicate successExit) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<Future<NodeOperationResult>> futures = new ArrayList<>();
+        commandsByNode.forEach((node, command) ->
+                futures.add(executor.submit(() -> runOnNode(operation, node, command, successExit))));
+
+        List<NodeOperationResult> results = new ArrayList<>();
+        Iterator<String> nodes = commandsByNode.keySet().iterator();
+        for (Future<NodeOperationResult> future : futures) {
+            String node = nodes.next();
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                results.add(NodeOperationResult.builder()
+                        .node(node)
+                        .status("error")
+                        .output(String.valueOf(e.getCause()))
+                        .build());
+            }
+        }
+
+        long failed = results.stream().filter(result -> !"success".equals(result.getStatus())).count();
+        log.debug("{} on {} nodes finished in {} ms, {} failed", operation, results.size(),
+                System.currentTimeMillis() - start, failed);
+        return results;
+    }
+
+    /**
+     * Same command on every node
+     */
+    public List<NodeOperationResult> run(String operation, List<String> nodes, String command,
+                                         IntPredicate successExit) throws InterruptedException {
+        Map<String, String> commandsByNode = new LinkedHashMap<>();
+        nodes.forEach(node -> commandsByNode.put(node, command));
+        return run(operation, commandsByNode, successExit);
+    }
+
+    private NodeOperationResult runOnNode(String operation, String node, String command, IntPredicate successExit)
+            throws InterruptedException {
+        long start = System.currentTimeMillis();
+        String status;
+        String output;
+        Integer exitCode = null;
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                RemoteCommandResult result = sshPool.execute(node, command, nodeTimeoutMs);
+                exitCode = result.getExitCode();
+                output = result.getOutput();
+                status = successExit.test(exitCode) ? "success" : "failed";
+                break;
+            } catch (IOException e) {
+                status = e instanceof SocketTimeoutException ? "timeout" : "error";
+                output = e.getMessage();
+                if (attempt > retries) {
+                    break;
+                }
+                log.warn("{} on {} failed (attempt {}/{}): {}", operation, node, attempt, retries + 1, e.getMessage());
+                Thread.sleep(retryBackoffMs << (attempt - 1));
+            }
+        }
+
+        return NodeOperationResult.builder()
+                .node(node)
+                .status(status)
+                .exitCode(exitCode)
+                .output(output)
+                .attempts(attempt)
+                .durationMs(System.currentTimeMillis() - start)
+                .build();
+    }
+}
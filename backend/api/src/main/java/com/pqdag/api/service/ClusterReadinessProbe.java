@@ -0,0 +1,144 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.NodeOperationResult;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Polls the cluster nodes after start/stop until they are really up or down.
+ *
+ * A node is up when its master.jar / worker.jar process is running (matched the
+ * same way clearJavaProcesses kills them; start-master / start-worker write no
+ * pid files) and, if a port is configured, something is listening on it. It is
+ * down when that process is gone and the port is free.
+ * All pending nodes are probed in parallel every poll-interval-ms; nodes that
+ * reach the wanted state drop out of the next round. Without the ports only
+ * the process is checked, which is reported at startup and in every result.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterReadinessProbe {
+
+    private final ClusterOperationExecutor clusterOperations;
+    private final ClusterTopology topology;
+
+    // 0 = check the process only; logged as an error, a started process is not necessarily serving
+    @Value("${cluster.master.port:0}")
+    private int masterPort;
+
+    @Value("${cluster.worker.port:0}")
+    private int workerPort;
+
+    @Value("${cluster.probe.poll-interval-ms:250}")
+    private long pollIntervalMs;
+
+    @PostConstruct
+    public void checkPorts() {
+        if (masterPort <= 0 || workerPort <= 0) {
+            log.error("cluster.master.port / cluster.worker.port not set (master {}, worker {}): readiness only "
+                    + "checks that the master/worker jar is running, not that PQDAG is listening",
+                    masterPort, workerPort);
+        }
+    }
+
+    /**
+     * Wait until master and workers are up
+     *
+     * @return per-node results: success once up, timeout if still down at the deadline
+     */
+    public List<NodeOperationResult> awaitUp(long timeoutMs) throws IOException, InterruptedException {
+        return await("up", timeoutMs, true);
+    }
+
+    /**
+     * Wait until master and workers are down
+     */
+    public List<NodeOperationResult> awaitDown(long timeoutMs) throws IOException, InterruptedException {
+        return await("down", timeoutMs, false);
+    }
+
+    private List<NodeOperationResult> await(String state, long timeoutMs, boolean up)
+            throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMs;
+
+        Map<String, String> pending = new LinkedHashMap<>();
+        Map<String, Integer> ports = new HashMap<>();
+        String master = topology.getMaster();
+        if (master != null) {
+            pending.put(master, probeCommand("master", masterPort, up));
+            ports.put(master, masterPort);
+        }
+        for (String worker : topology.getWorkers()) {
+            if (pending.putIfAbsent(worker, probeCommand("worker", workerPort, up)) == null) {
+                ports.put(worker, workerPort);
+            }
+        }
+
+        Map<String, NodeOperationResult> results = new LinkedHashMap<>();
+        pending.keySet().forEach(node -> results.put(node, null));
+        int rounds = 0;
+        while (!pending.isEmpty()) {
+            rounds++;
+            for (NodeOperationResult probe : clusterOperations.run("Probe " + state, pending, exit -> exit == 0)) {
+                if ("success".equals(probe.getStatus())) {
+                    pending.remove(probe.getNode());
+                    probe.setDurationMs(System.currentTimeMillis() - start);
+                    probe.setOutput(ports.get(probe.getNode()) > 0
+                            ? state
+                            : state + " (process only, no port configured)");
+                    probe.setAttempts(rounds);
+                    results.put(probe.getNode(), probe);
+                }
+            }
+            if (pending.isEmpty() || System.currentTimeMillis() + pollIntervalMs > deadline) {
+                break;
+            }
+            Thread.sleep(pollIntervalMs);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        for (String node : pending.keySet()) {
+            results.put(node, NodeOperationResult.builder()
+                    .node(node)
+                    .status("timeout")
+                    .output("not " + state + " after " + elapsed + " ms")
+                    .attempts(rounds)
+                    .durationMs(elapsed)
+                    .build());
+        }
+        if (pending.isEmpty()) {
+            log.info("Cluster {} after {} ms ({} probe rounds)", state, elapsed, rounds);
+        } else {
+            log.warn("{} of {} nodes not {} after {} ms: {}", pending.size(), results.size(), state, elapsed,
+                    pending.keySet());
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Exit 0 when the node is in the wanted state. Runs under bash for /dev/tcp.
+     */
+    private String probeCommand(String role, int port, boolean up) {
+        String alive = processCheck(role);
+        String listening = port > 0 ? "(exec 3<>/dev/tcp/127.0.0.1/" + port + ") 2>/dev/null" : null;
+        String check = up
+                ? alive + (listening != null ? " && " + listening : "")
+                : "! " + alive + (listening != null ? " && ! " + listening : "");
+        return "bash -c '" + check + "'";
+    }
+
+    /**
+     * Exit 0 when the role's jar runs on the node; the bracket keeps pgrep from matching its own shell
+     */
+    static String processCheck(String role) {
+        return "pgrep -f \"[" + role.charAt(0) + "]" + role.substring(1) + ".jar\" >/dev/null";
+    }
+}
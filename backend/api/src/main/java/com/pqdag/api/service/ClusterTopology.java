@@ -0,0 +1,45 @@
+package com.pqdag.api.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Cluster nodes as listed in the master and workers files of the scripts directory
+ */
+@Service
+public class ClusterTopology {
+
+    @Value("${cluster.scripts.local-path:/app/storage/scripts}")
+    private String scriptsPath;
+
+    /**
+     * Master node, or null if not configured
+     */
+    public String getMaster() throws IOException {
+        Path masterFile = Paths.get(scriptsPath, "master");
+        if (!Files.exists(masterFile)) {
+            return null;
+        }
+        String masterIp = Files.readString(masterFile).trim();
+        return masterIp.isEmpty() ? null : masterIp;
+    }
+
+    public List<String> getWorkers() throws IOException {
+        Path workersFile = Paths.get(scriptsPath, "workers");
+        if (!Files.exists(workersFile)) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(workersFile).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+}
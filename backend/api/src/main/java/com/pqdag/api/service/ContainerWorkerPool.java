@@ -0,0 +1,247 @@
+package com.pqdag.api.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs pipeline steps in Docker containers.
+ *
+ * With the Docker Engine API available, each worker image gets one long-lived
+ * container (bind mounts and user fixed at creation, kept alive by a no-op
+ * command) and every run is an exec of the image's entrypoint in it, so
+ * repeated fragmentations skip container creation and teardown. The worker is
+ * recreated when its image is rebuilt, its mounts change or a mounted directory
+ * was replaced, since a bind mount stays on the directory it was created with.
+ * Stopping a run kills the worker, which is restarted by the next one. Commands in existing
+ * containers (pqdag-allocation) are exec'd through the API as well.
+ *
+ * Without a reachable socket the docker CLI is used as before: docker run --rm
+ * per run and docker exec per command.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContainerWorkerPool {
+
+    private static final String CONFIG_LABEL = "pqdag.worker-config";
+
+    private final DockerEngineClient dockerClient;
+
+    @Value("${docker.engine.enabled:true}")
+    private boolean engineEnabled;
+
+    private volatile boolean fallbackLogged;
+
+    /**
+     * Container settings of a worker
+     *
+     * @param name         name of the warm container; one-off CLI containers get a unique suffix
+     * @param user         "uid:gid" to run as
+     * @param binds        "hostPath:containerPath" mounts
+     * @param mountSources the bound directories as this process sees them, checked for replacement
+     */
+    public record WorkerSpec(String name, String image, String user, List<String> binds, List<Path> mountSources) {
+    }
+
+    /**
+     * Run the worker image's entrypoint with args, output merged; destroy() stops the container
+     */
+    public Process run(WorkerSpec spec, List<String> args) throws IOException {
+        if (!useEngine()) {
+            return runWithCli(spec, args);
+        }
+        WarmWorker worker = warmWorker(spec);
+        List<String> command = new ArrayList<>(worker.entrypoint());
+        command.addAll(args);
+        return dockerClient.exec(worker.id(), command, null, () -> stopWorker(spec.name()));
+    }
+
+    /**
+     * Run a command in an existing container, output merged
+     */
+    public Process exec(String container, List<String> command) throws IOException {
+        if (useEngine()) {
+            return dockerClient.exec(container, command, null, null);
+        }
+        List<String> cli = new ArrayList<>(List.of("docker", "exec", container));
+        cli.addAll(command);
+        return new ProcessBuilder(cli).redirectErrorStream(true).start();
+    }
+
+    /**
+     * "uid:gid" of this process, so files written to the mounts stay ours
+     */
+    public static String hostUser() {
+        try {
+            // /proc/self is owned by the effective uid and gid
+            Path self = Paths.get("/proc/self");
+            return Files.getAttribute(self, "unix:uid") + ":" + Files.getAttribute(self, "unix:gid");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return System.getProperty("user.name");
+        }
+    }
+
+    private boolean useEngine() {
+        if (!engineEnabled) {
+            return false;
+        }
+        if (dockerClient.ping()) {
+            fallbackLogged = false;
+            return true;
+        }
+        if (!fallbackLogged) {
+            fallbackLogged = true;
+            log.warn("Docker Engine API not reachable, using the docker CLI");
+        }
+        return false;
+    }
+
+    private record WarmWorker(String id, List<String> entrypoint) {
+    }
+
+    private synchronized WarmWorker warmWorker(WorkerSpec spec) throws IOException {
+        JsonNode image = dockerClient.inspectImage(spec.image())
+                .orElseThrow(() -> new DockerEngineException(404, "Image not found: " + spec.image()));
+        List<String> entrypoint = new ArrayList<>();
+        image.path("Config").path("Entrypoint").forEach(part -> entrypoint.add(part.asText()));
+
+        // Image ID, user, mounts and the identity of the mounted directories: a worker created
+        // with anything else is replaced
+        String config = image.path("Id").asText() + "|" + spec.user() + "|" + String.join(",", spec.binds())
+                + "|" + directoryKeys(spec.mountSources());
+        Optional<JsonNode> existing = dockerClient.inspectContainer(spec.name());
+        if (existing.isPresent()) {
+            JsonNode container = existing.get();
+            String id = container.path("Id").asText();
+            if (config.equals(container.path("Config").path("Labels").path(CONFIG_LABEL).asText())) {
+                if (!container.path("State").path("Running").asBoolean()) {
+                    dockerClient.startContainer(id);
+                    log.info("Restarted worker container {}", spec.name());
+                }
+                return new WarmWorker(id, entrypoint);
+            }
+            log.info("Replacing worker container {}: image or mounted directories changed", spec.name());
+            dockerClient.removeContainer(id);
+        }
+
+        Map<String, Object> create = new LinkedHashMap<>();
+        create.put("Image", spec.image());
+        // Idles until runs are exec'd into it
+        create.put("Entrypoint", List.of("tail", "-f", "/dev/null"));
+        create.put("Cmd", List.of());
+        create.put("User", spec.user());
+        create.put("Labels", Map.of(CONFIG_LABEL, config));
+        create.put("HostConfig", Map.of("Binds", spec.binds()));
+        String id = dockerClient.createContainer(spec.name(), create);
+        dockerClient.startContainer(id);
+        log.info("Started worker container {} from {}", spec.name(), spec.image());
+        return new WarmWorker(id, entrypoint);
+    }
+
+    private static String directoryKeys(List<Path> directories) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (Path directory : directories) {
+            Files.createDirectories(directory);
+            BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class);
+            // Without file keys (not on Linux) fall back to the creation time
+            keys.add(attributes.fileKey() != null ? attributes.fileKey().toString()
+                    : attributes.creationTime().toString());
+        }
+        return String.join(",", keys);
+    }
+
+    private void stopWorker(String name) {
+        try {
+            dockerClient.killContainer(name);
+        } catch (IOException e) {
+            log.warn("Failed to kill worker container {}", name, e);
+        }
+    }
+
+    private Process runWithCli(WorkerSpec spec, List<String> args) throws IOException {
+        // Named so stopping the run can stop the container, not just the docker client
+        String containerName = spec.name() + "-" + UUID.randomUUID();
+        List<String> command = new ArrayList<>(List.of("docker", "run", "--rm", "--name", containerName,
+                "--user", spec.user()));
+        for (String bind : spec.binds()) {
+            command.add("-v");
+            command.add(bind);
+        }
+        command.add(spec.image());
+        command.addAll(args);
+        return new CliRun(new ProcessBuilder(command).redirectErrorStream(true).start(), containerName);
+    }
+
+    /**
+     * docker run client whose destroy() also kills the container; killing the client alone leaves it running
+     */
+    private static final class CliRun extends Process {
+        private final Process client;
+        private final String containerName;
+
+        CliRun(Process client, String containerName) {
+            this.client = client;
+            this.containerName = containerName;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return client.getOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return client.getInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return client.getErrorStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            return client.waitFor();
+        }
+
+        @Override
+        public int exitValue() {
+            return client.exitValue();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return client.isAlive();
+        }
+
+        @Override
+        public void destroy() {
+            try {
+                Process kill = new ProcessBuilder("docker", "kill", containerName)
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                kill.waitFor(30, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                log.warn("Failed to kill container {}: {}", containerName, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                client.destroyForcibly();
+            }
+        }
+    }
+}
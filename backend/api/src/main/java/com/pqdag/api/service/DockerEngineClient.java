@@ -0,0 +1,411 @@
+package com.pqdag.api.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.URLEncoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Docker Engine API client speaking HTTP/1.1 over the daemon's unix socket.
+ *
+ * Pipeline steps use it instead of the docker CLI: creating, starting and
+ * exec'ing into a container is one socket round trip each rather than a CLI
+ * process, exec output arrives as the daemon's multiplexed stdout/stderr
+ * stream, and the exit code is read back from the exec state. Every request
+ * opens its own connection, so a long streaming exec never holds up other calls.
+ */
+@Slf4j
+@Service
+public class DockerEngineClient {
+
+    // Reported for an exec that ended with its killed container (128 + SIGKILL)
+    private static final int KILLED_EXIT_CODE = 137;
+
+    private final Path socketPath;
+    private final String apiVersion;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public DockerEngineClient(@Value("${docker.socket-path:/var/run/docker.sock}") String socketPath,
+                              @Value("${docker.api-version:v1.41}") String apiVersion) {
+        this.socketPath = Paths.get(socketPath);
+        this.apiVersion = apiVersion;
+    }
+
+    /**
+     * Whether a daemon answers on the socket
+     */
+    public boolean ping() {
+        if (!Files.exists(socketPath)) {
+            return false;
+        }
+        try {
+            return call("GET", "/_ping", null).status() == 200;
+        } catch (IOException e) {
+            log.debug("Docker daemon not reachable on {}: {}", socketPath, e.toString());
+            return false;
+        }
+    }
+
+    public Optional<JsonNode> inspectContainer(String container) throws IOException {
+        Reply reply = call("GET", "/containers/" + container + "/json", null);
+        if (reply.status() == 404) {
+            return Optional.empty();
+        }
+        return Optional.of(json(check(reply, "inspect container " + container, 200)));
+    }
+
+    public Optional<JsonNode> inspectImage(String image) throws IOException {
+        Reply reply = call("GET", "/images/" + image + "/json", null);
+        if (reply.status() == 404) {
+            return Optional.empty();
+        }
+        return Optional.of(json(check(reply, "inspect image " + image, 200)));
+    }
+
+    /**
+     * @param config body of POST /containers/create (Image, Cmd, User, Labels, HostConfig...)
+     * @return the container ID
+     */
+    public String createContainer(String name, Map<String, Object> config) throws IOException {
+        Reply reply = call("POST", "/containers/create?name=" + URLEncoder.encode(name, StandardCharsets.UTF_8), config);
+        return json(check(reply, "create container " + name, 201)).path("Id").asText();
+    }
+
+    public void startContainer(String container) throws IOException {
+        // 304: already running
+        check(call("POST", "/containers/" + container + "/start", null), "start container " + container, 204, 304);
+    }
+
+    /**
+     * Send SIGKILL to a container
+     *
+     * @return false if it did not exist or was not running
+     */
+    public boolean killContainer(String container) throws IOException {
+        Reply reply = call("POST", "/containers/" + container + "/kill", null);
+        if (reply.status() == 404 || reply.status() == 409) {
+            return false;
+        }
+        check(reply, "kill container " + container, 204);
+        return true;
+    }
+
+    public void removeContainer(String container) throws IOException {
+        check(call("DELETE", "/containers/" + container + "?force=true", null), "remove container " + container, 204, 404);
+    }
+
+    /**
+     * Run a command in a running container. The returned process streams stdout and
+     * stderr merged, like a ProcessBuilder with redirectErrorStream; its exit value
+     * comes from the exec state once the stream ends.
+     *
+     * @param user      null to run as the container user
+     * @param onDestroy run by destroy(), e.g. to kill the container; the exec itself cannot be signalled
+     */
+    public Process exec(String container, List<String> command, String user, Runnable onDestroy) throws IOException {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("Cmd", command);
+        config.put("AttachStdout", true);
+        config.put("AttachStderr", true);
+        config.put("Tty", false);
+        if (user != null) {
+            config.put("User", user);
+        }
+        String execId = json(check(call("POST", "/containers/" + container + "/exec", config),
+                "create exec in " + container, 201)).path("Id").asText();
+
+        Exchange exchange = open("POST", "/exec/" + execId + "/start", Map.of("Detach", false, "Tty", false));
+        if (exchange.status != 200) {
+            try (exchange) {
+                check(new Reply(exchange.status, exchange.readBody()), "start exec in " + container, 200);
+            }
+        }
+        return new ExecProcess(execId, exchange, onDestroy);
+    }
+
+    private Integer execExitCode(String execId) throws IOException {
+        Reply reply = call("GET", "/exec/" + execId + "/json", null);
+        if (reply.status() == 404) {
+            return KILLED_EXIT_CODE;
+        }
+        JsonNode state = json(check(reply, "inspect exec " + execId, 200));
+        if (state.path("Running").asBoolean()) {
+            return null;
+        }
+        JsonNode exitCode = state.path("ExitCode");
+        return exitCode.isNumber() ? exitCode.asInt() : KILLED_EXIT_CODE;
+    }
+
+    // ========================================================================
+    // HTTP over the unix socket
+    // ========================================================================
+
+    private record Reply(int status, byte[] body) {
+    }
+
+    private Reply call(String method, String path, Object body) throws IOException {
+        try (Exchange exchange = open(method, path, body)) {
+            return new Reply(exchange.status, exchange.readBody());
+        }
+    }
+
+    private Exchange open(String method, String path, Object body) throws IOException {
+        byte[] payload = body != null ? objectMapper.writeValueAsBytes(body) : new byte[0];
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            StringBuilder head = new StringBuilder()
+                    .append(method).append(" /").append(apiVersion).append(path).append(" HTTP/1.1\r\n")
+                    .append("Host: docker\r\n")
+                    .append("Connection: close\r\n")
+                    .append("Content-Length: ").append(payload.length).append("\r\n");
+            if (body != null) {
+                head.append("Content-Type: application/json\r\n");
+            }
+            head.append("\r\n");
+            OutputStream out = Channels.newOutputStream(channel);
+            out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+            out.write(payload);
+            out.flush();
+
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+            String statusLine = readLine(in);
+            String[] parts = statusLine != null ? statusLine.split(" ", 3) : new String[0];
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed response from Docker daemon: " + statusLine);
+            }
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+            return new Exchange(channel, in, Integer.parseInt(parts[1]), headers);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private Reply check(Reply reply, String action, int... expected) throws DockerEngineException {
+        for (int status : expected) {
+            if (reply.status() == status) {
+                return reply;
+            }
+        }
+        String message = new String(reply.body(), StandardCharsets.UTF_8);
+        try {
+            message = objectMapper.readTree(reply.body()).path("message").asText(message);
+        } catch (IOException e) {
+            // Not JSON: keep the raw text
+        }
+        throw new DockerEngineException(reply.status(), "Failed to " + action + ": " + message.trim());
+    }
+
+    private JsonNode json(Reply reply) throws IOException {
+        return objectMapper.readTree(reply.body());
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.US_ASCII);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * One request/response on its own connection
+     */
+    private static final class Exchange implements Closeable {
+        private final SocketChannel channel;
+        private final InputStream in;
+        private final int status;
+        private final Map<String, String> headers;
+
+        Exchange(SocketChannel channel, InputStream in, int status, Map<String, String> headers) {
+            this.channel = channel;
+            this.in = in;
+            this.status = status;
+            this.headers = headers;
+        }
+
+        byte[] readBody() throws IOException {
+            if (status == 204 || status == 304) {
+                return new byte[0];
+            }
+            if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                String size;
+                while ((size = readLine(in)) != null) {
+                    int semicolon = size.indexOf(';');
+                    int length = Integer.parseInt((semicolon >= 0 ? size.substring(0, semicolon) : size).trim(), 16);
+                    if (length == 0) {
+                        break;
+                    }
+                    body.write(in.readNBytes(length));
+                    readLine(in);
+                }
+                return body.toByteArray();
+            }
+            String length = headers.get("content-length");
+            return length != null ? in.readNBytes(Integer.parseInt(length)) : in.readAllBytes();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Exec output: frames of an 8-byte header (stream type, 3 zero bytes, big-endian
+     * payload length) followed by the payload. stdout and stderr are merged.
+     */
+    private static final class DemultiplexingInputStream extends InputStream {
+        private final InputStream in;
+        private int remaining;
+
+        DemultiplexingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                while (remaining == 0) {
+                    byte[] header = in.readNBytes(8);
+                    if (header.length < 8) {
+                        return -1;
+                    }
+                    remaining = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16)
+                            | ((header[6] & 0xff) << 8) | (header[7] & 0xff);
+                }
+                int n = in.read(b, off, Math.min(len, remaining));
+                if (n == -1) {
+                    return -1;
+                }
+                remaining -= n;
+                return n;
+            } catch (ClosedChannelException e) {
+                // Closed by destroy(): end of output, as for a destroyed process
+                return -1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private final class ExecProcess extends Process {
+        private final String execId;
+        private final Exchange exchange;
+        private final InputStream output;
+        private final Runnable onDestroy;
+        private volatile Integer exitCode;
+
+        ExecProcess(String execId, Exchange exchange, Runnable onDestroy) {
+            this.execId = execId;
+            this.exchange = exchange;
+            this.output = new DemultiplexingInputStream(exchange.in);
+            this.onDestroy = onDestroy;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return output;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            Integer code;
+            while ((code = poll()) == null) {
+                Thread.sleep(50);
+            }
+            return code;
+        }
+
+        @Override
+        public int exitValue() {
+            Integer code = poll();
+            if (code == null) {
+                throw new IllegalThreadStateException("Exec " + execId + " is still running");
+            }
+            return code;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return poll() == null;
+        }
+
+        @Override
+        public void destroy() {
+            try {
+                if (onDestroy != null) {
+                    onDestroy.run();
+                }
+            } finally {
+                try {
+                    exchange.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close exec stream {}", execId, e);
+                }
+            }
+        }
+
+        private Integer poll() {
+            if (exitCode == null) {
+                try {
+                    exitCode = execExitCode(execId);
+                } catch (IOException e) {
+                    log.warn("Lost track of exec {}: {}", execId, e.getMessage());
+                    exitCode = -1;
+                }
+            }
+            return exitCode;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.pqdag.api.service;
+
+import java.io.IOException;
+
+/**
+ * Error answer of the Docker daemon, with its HTTP status and message
+ */
+public class DockerEngineException extends IOException {
+
+    private final int status;
+
+    public DockerEngineException(int status, String message) {
+        super(message + " (HTTP " + status + ")");
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,598 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.FragmentCatalogSummary;
+import com.pqdag.api.dto.FragmentInfo;
+import com.pqdag.api.dto.PredicateUsage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Index of the fragments in outputdata, shared by fragmentation, allocation,
+ * distribution and the GUI so none of them walks the fragment files again.
+ *
+ * For every fragment (N.data, N.schema, N.dic) the catalog keeps the file
+ * sizes, the triple count (lines of .data), its predicates (from .schema) and
+ * whether it is a subject or object fragment (spo_index / ops_index). Columns
+ * are primitive arrays sorted by fragment ID, with predicates in one flat array
+ * addressed by per-fragment offsets, so hundreds of thousands of fragments cost
+ * a few bytes each.
+ *
+ * A refresh lists the directory once and only reads fragments whose size or
+ * modification time changed; the rest are carried over from the previous index.
+ * Readers get an immutable snapshot, refreshed automatically when the directory
+ * itself has changed (fragments added, removed or replaced) and, checked at most
+ * every recheck-ms, when a fragment or index file was rewritten in place.
+ */
+@Slf4j
+@Service
+public class FragmentCatalog {
+
+    private static final String PREDICATES_FILE = "predicates.txt";
+    private static final String SPO_INDEX = "spo_index.txt";
+    private static final String OPS_INDEX = "ops_index.txt";
+
+    @Value("${app.storage.outputdata-path}")
+    private String outputdataPath;
+
+    @Value("${fragments.catalog.threads:0}")
+    private int threads;
+
+    // In-place rewrites leave the directory untouched; compare every file's size and mtime at most this often
+    @Value("${fragments.catalog.recheck-ms:5000}")
+    private long recheckMs;
+
+    private volatile Index index;
+    private ExecutorService scanPool;
+
+    @PostConstruct
+    public void init() {
+        scanPool = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "fragment-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        index = Index.empty(directory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanPool.shutdownNow();
+    }
+
+    /**
+     * Current index, refreshed first if fragments were added, removed or rewritten since the last refresh
+     */
+    public Index current() throws IOException {
+        Index snapshot = index;
+        return snapshot.isStale(recheckMs) ? refresh() : snapshot;
+    }
+
+    /**
+     * Re-index outputdata, reading only new and modified fragments
+     */
+    public synchronized Index refresh() throws IOException {
+        long start = System.currentTimeMillis();
+        Index previous = index;
+        Path dir = directory();
+        if (!Files.isDirectory(dir)) {
+            index = Index.empty(dir);
+            return index;
+        }
+        Object dirKey = directoryKey(dir);
+
+        // One listing; the file attributes come with it on most file systems
+        Map<Integer, long[]> files = new HashMap<>();    // id -> data size, data mtime, schema size, schema mtime, dic size
+        Map<String, long[]> shared = new HashMap<>();    // index file -> size, mtime
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.equals(PREDICATES_FILE) || name.equals(SPO_INDEX) || name.equals(OPS_INDEX)) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    shared.put(name, new long[]{attributes.size(), attributes.lastModifiedTime().toMillis()});
+                    continue;
+                }
+                int dot = name.lastIndexOf('.');
+                int slot = switch (dot > 0 ? name.substring(dot) : "") {
+                    case ".data" -> 0;
+                    case ".schema" -> 2;
+                    case ".dic" -> 4;
+                    default -> -1;
+                };
+                Integer id = slot >= 0 ? parseId(name.substring(0, dot)) : null;
+                if (id == null) {
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                long[] stats = files.computeIfAbsent(id, k -> new long[]{-1, 0, -1, 0, -1});
+                stats[slot] = attributes.size();
+                if (slot < 4) {
+                    stats[slot + 1] = attributes.lastModifiedTime().toMillis();
+                }
+            }
+        }
+
+        int[] ids = files.entrySet().stream()
+                .filter(e -> e.getValue()[0] >= 0)
+                .mapToInt(Map.Entry::getKey)
+                .sorted()
+                .toArray();
+        int n = ids.length;
+        Index next = new Index(dir, dirKey, n);
+        next.ids = ids;
+
+        // Reuse unchanged fragments, scan the others in parallel
+        Map<Integer, Future<Scan>> scans = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            long[] stats = files.get(ids[i]);
+            next.dataBytes[i] = stats[0];
+            next.dataModified[i] = stats[1];
+            next.schemaBytes[i] = Math.max(0, stats[2]);
+            next.schemaModified[i] = stats[3];
+            next.dicBytes[i] = Math.max(0, stats[4]);
+            int old = previous.indexOf(ids[i]);
+            if (old < 0 || previous.dataBytes[old] != stats[0] || previous.dataModified[old] != stats[1]
+                    || previous.schemaBytes[old] != next.schemaBytes[i] || previous.schemaModified[old] != stats[3]) {
+                Path data = dir.resolve(ids[i] + ".data");
+                Path schema = stats[2] >= 0 ? dir.resolve(ids[i] + ".schema") : null;
+                scans.put(i, scanPool.submit(() -> scan(data, schema)));
+            }
+        }
+
+        int[][] fragmentPredicates = new int[n][];
+        try {
+            for (int i = 0; i < n; i++) {
+                Future<Scan> scan = scans.get(i);
+                if (scan != null) {
+                    Scan result = scan.get();
+                    next.triples[i] = result.triples();
+                    fragmentPredicates[i] = result.predicates();
+                } else {
+                    int old = previous.indexOf(ids[i]);
+                    next.triples[i] = previous.triples[old];
+                    fragmentPredicates[i] = previous.predicatesOf(old);
+                }
+            }
+        } catch (InterruptedException e) {
+            scans.values().forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Fragment catalog refresh interrupted");
+        } catch (ExecutionException e) {
+            scans.values().forEach(f -> f.cancel(true));
+            throw new IOException("Failed to index fragments: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        int total = 0;
+        for (int[] predicates : fragmentPredicates) {
+            total += predicates.length;
+        }
+        next.predicateOffsets = new int[n + 1];
+        next.predicates = new int[total];
+        for (int i = 0, offset = 0; i < n; i++) {
+            next.predicateOffsets[i] = offset;
+            System.arraycopy(fragmentPredicates[i], 0, next.predicates, offset, fragmentPredicates[i].length);
+            offset += fragmentPredicates[i].length;
+        }
+        next.predicateOffsets[n] = total;
+
+        // Index files are re-read only when they changed
+        next.sharedFiles = shared;
+        next.predicateIris = changed(previous, shared, PREDICATES_FILE)
+                ? readPredicates(dir.resolve(PREDICATES_FILE), shared.containsKey(PREDICATES_FILE))
+                : previous.predicateIris;
+        next.spoFragments = changed(previous, shared, SPO_INDEX)
+                ? readIndexFragments(dir.resolve(SPO_INDEX), shared.containsKey(SPO_INDEX))
+                : previous.spoFragments;
+        next.opsFragments = changed(previous, shared, OPS_INDEX)
+                ? readIndexFragments(dir.resolve(OPS_INDEX), shared.containsKey(OPS_INDEX))
+                : previous.opsFragments;
+
+        next.indexedAt = System.currentTimeMillis();
+        next.verifiedAt = next.indexedAt;
+        next.refreshMs = next.indexedAt - start;
+        next.rescanned = scans.size();
+        index = next;
+        if (!scans.isEmpty() || previous.size() != n) {
+            log.info("Fragment catalog: {} fragments ({} read, {} unchanged) in {} ms", n, scans.size(),
+                    n - scans.size(), next.refreshMs);
+        }
+        return next;
+    }
+
+    public FragmentCatalogSummary getSummary() throws IOException {
+        return current().summary();
+    }
+
+    public Optional<FragmentInfo> getFragment(int id) throws IOException {
+        Index snapshot = current();
+        int i = snapshot.indexOf(id);
+        return i >= 0 ? Optional.of(snapshot.info(i)) : Optional.empty();
+    }
+
+    /**
+     * Fragments in ID order
+     *
+     * @param predicate only fragments containing this predicate ID, null for all
+     */
+    public List<FragmentInfo> listFragments(int offset, int limit, Integer predicate) throws IOException {
+        Index snapshot = current();
+        List<FragmentInfo> result = new ArrayList<>();
+        int skipped = 0;
+        for (int i = 0; i < snapshot.size() && result.size() < limit; i++) {
+            if (predicate != null && !snapshot.hasPredicate(i, predicate)) {
+                continue;
+            }
+            if (skipped++ >= offset) {
+                result.add(snapshot.info(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Predicates with the number of fragments using them, most used first
+     */
+    public List<PredicateUsage> getPredicates() throws IOException {
+        Index snapshot = current();
+        Map<Integer, Integer> fragments = new HashMap<>();
+        for (int predicate : snapshot.predicates) {
+            fragments.merge(predicate, 1, Integer::sum);
+        }
+        snapshot.predicateIris.keySet().forEach(id -> fragments.putIfAbsent(id, 0));
+        List<PredicateUsage> result = new ArrayList<>();
+        fragments.forEach((id, count) -> result.add(PredicateUsage.builder()
+                .id(id)
+                .iri(snapshot.predicateIris.get(id))
+                .fragments(count)
+                .build()));
+        result.sort(Comparator.comparingInt(PredicateUsage::getFragments).reversed()
+                .thenComparingInt(PredicateUsage::getId));
+        return result;
+    }
+
+    /**
+     * Size of a set of fragments, e.g. those assigned to one worker
+     */
+    public Selection select(Collection<Integer> fragmentIds) throws IOException {
+        Index snapshot = current();
+        long bytes = 0;
+        long triples = 0;
+        int found = 0;
+        List<Integer> missing = new ArrayList<>();
+        for (int id : fragmentIds) {
+            int i = snapshot.indexOf(id);
+            if (i < 0) {
+                missing.add(id);
+                continue;
+            }
+            found++;
+            bytes += snapshot.dataBytes[i] + snapshot.schemaBytes[i] + snapshot.dicBytes[i];
+            triples += snapshot.triples[i];
+        }
+        return new Selection(found, bytes, triples, missing);
+    }
+
+    /**
+     * @param missing IDs not present in outputdata
+     */
+    public record Selection(int fragments, long bytes, long triples, List<Integer> missing) {
+    }
+
+    private record Scan(long triples, int[] predicates) {
+    }
+
+    private static Scan scan(Path data, Path schema) throws IOException {
+        return new Scan(countLines(data), schema != null ? readSchemaPredicates(schema) : new int[0]);
+    }
+
+    private static long countLines(Path file) throws IOException {
+        long lines = 0;
+        byte last = '\n';
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lines++;
+                    }
+                }
+                last = buffer.get(limit - 1);
+                buffer.clear();
+            }
+        }
+        // A last line without newline still holds a triple
+        return last == '\n' ? lines : lines + 1;
+    }
+
+    /**
+     * .schema: the node type on the first line, then one "predicateId:type" line per predicate
+     */
+    private static int[] readSchemaPredicates(Path schema) throws IOException {
+        List<String> lines = Files.readAllLines(schema, StandardCharsets.UTF_8);
+        int[] predicates = new int[Math.max(0, lines.size() - 1)];
+        int count = 0;
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int colon = line.indexOf(':');
+            Integer id = colon > 0 ? parseId(line.substring(0, colon).trim()) : null;
+            if (id != null) {
+                predicates[count++] = id;
+            }
+        }
+        int[] result = Arrays.copyOf(predicates, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * predicates.txt: "id iri subjectType objectType" per line
+     */
+    private static Map<Integer, String> readPredicates(Path file, boolean exists) throws IOException {
+        Map<Integer, String> iris = new HashMap<>();
+        if (!exists) {
+            return iris;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                Integer id = parts.length >= 2 ? parseId(parts[0]) : null;
+                if (id != null) {
+                    iris.put(id, parts[1]);
+                }
+            }
+        }
+        return iris;
+    }
+
+    /**
+     * spo_index.txt / ops_index.txt: "node;fragmentId" per line; returns the sorted distinct fragment IDs
+     */
+    private static int[] readIndexFragments(Path file, boolean exists) throws IOException {
+        if (!exists) {
+            return new int[0];
+        }
+        int[] ids = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(';');
+                Integer id = separator >= 0 ? parseId(line.substring(separator + 1).trim()) : null;
+                if (id != null) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = id;
+                }
+            }
+        }
+        return Arrays.stream(ids, 0, count).sorted().distinct().toArray();
+    }
+
+    private static boolean changed(Index previous, Map<String, long[]> shared, String name) {
+        long[] now = shared.get(name);
+        long[] before = previous.sharedFiles.get(name);
+        return now == null || before == null ? now != before : !Arrays.equals(now, before);
+    }
+
+    private static Integer parseId(String text) {
+        if (text.isEmpty() || text.length() > 9) {
+            return null;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return null;
+            }
+        }
+        return Integer.parseInt(text);
+    }
+
+    private static Object directoryKey(Path dir) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(dir, BasicFileAttributes.class);
+            // The key changes when the directory is replaced, the time when entries are added or removed
+            return List.of(String.valueOf(attributes.fileKey()), attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Path directory() {
+        return Paths.get(outputdataPath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Immutable snapshot of the catalog
+     */
+    public static final class Index {
+        private final Path directory;
+        private final Object directoryKey;
+        private int[] ids;
+        private final long[] dataBytes;
+        private final long[] dataModified;
+        private final long[] schemaBytes;
+        private final long[] schemaModified;
+        private final long[] dicBytes;
+        private final long[] triples;
+        private int[] predicateOffsets;
+        private int[] predicates;
+        private int[] spoFragments = new int[0];
+        private int[] opsFragments = new int[0];
+        private Map<Integer, String> predicateIris = Map.of();
+        private Map<String, long[]> sharedFiles = Map.of();
+        private long indexedAt;
+        // Last time the files were found unchanged since indexedAt
+        private volatile long verifiedAt;
+        private long refreshMs;
+        private int rescanned;
+
+        private Index(Path directory, Object directoryKey, int size) {
+            this.directory = directory;
+            this.directoryKey = directoryKey;
+            ids = new int[size];
+            dataBytes = new long[size];
+            dataModified = new long[size];
+            schemaBytes = new long[size];
+            schemaModified = new long[size];
+            dicBytes = new long[size];
+            triples = new long[size];
+            predicateOffsets = new int[size + 1];
+            predicates = new int[0];
+        }
+
+        private static Index empty(Path directory) {
+            Index empty = new Index(directory, null, 0);
+            empty.indexedAt = System.currentTimeMillis();
+            empty.verifiedAt = empty.indexedAt;
+            return empty;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public long totalTriples() {
+            long total = 0;
+            for (long count : triples) {
+                total += count;
+            }
+            return total;
+        }
+
+        private boolean isStale(long recheckMs) {
+            if (!Objects.equals(directoryKey, directoryKey(directory))) {
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            if (now - verifiedAt < recheckMs) {
+                return false;
+            }
+            if (filesChanged()) {
+                return true;
+            }
+            verifiedAt = now;
+            return false;
+        }
+
+        /**
+         * Whether a fragment or index file no longer has the size and mtime recorded in this snapshot
+         */
+        private boolean filesChanged() {
+            for (int i = 0; i < ids.length; i++) {
+                long[] data = stat(directory.resolve(ids[i] + ".data"));
+                long[] schema = stat(directory.resolve(ids[i] + ".schema"));
+                if (data[0] != dataBytes[i] || data[1] != dataModified[i]
+                        || Math.max(0, schema[0]) != schemaBytes[i] || schema[1] != schemaModified[i]
+                        || Math.max(0, stat(directory.resolve(ids[i] + ".dic"))[0]) != dicBytes[i]) {
+                    return true;
+                }
+            }
+            for (String name : List.of(PREDICATES_FILE, SPO_INDEX, OPS_INDEX)) {
+                long[] now = stat(directory.resolve(name));
+                long[] before = sharedFiles.get(name);
+                if (now[0] < 0 ? before != null : !Arrays.equals(now, before)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Size and mtime, or {-1, 0} for a missing file
+         */
+        private static long[] stat(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new long[]{attributes.size(), attributes.lastModifiedTime().toMillis()};
+            } catch (IOException e) {
+                return new long[]{-1, 0};
+            }
+        }
+
+        private int indexOf(int id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        private int[] predicatesOf(int i) {
+            return Arrays.copyOfRange(predicates, predicateOffsets[i], predicateOffsets[i + 1]);
+        }
+
+        private boolean hasPredicate(int i, int predicate) {
+            return Arrays.binarySearch(predicates, predicateOffsets[i], predicateOffsets[i + 1], predicate) >= 0;
+        }
+
+        private int direction(int id) {
+            if (Arrays.binarySearch(spoFragments, id) >= 0) {
+                return 1;
+            }
+            return Arrays.binarySearch(opsFragments, id) >= 0 ? -1 : 0;
+        }
+
+        private FragmentInfo info(int i) {
+            List<Integer> fragmentPredicates = new ArrayList<>(predicateOffsets[i + 1] - predicateOffsets[i]);
+            for (int p = predicateOffsets[i]; p < predicateOffsets[i + 1]; p++) {
+                fragmentPredicates.add(predicates[p]);
+            }
+            return FragmentInfo.builder()
+                    .id(ids[i])
+                    .dataBytes(dataBytes[i])
+                    .schemaBytes(schemaBytes[i])
+                    .dicBytes(dicBytes[i])
+                    .triples(triples[i])
+                    .direction(direction(ids[i]))
+                    .predicates(fragmentPredicates)
+                    .build();
+        }
+
+        private FragmentCatalogSummary summary() {
+            long data = 0;
+            long schema = 0;
+            long dic = 0;
+            int subjectFragments = 0;
+            int objectFragments = 0;
+            for (int i = 0; i < ids.length; i++) {
+                data += dataBytes[i];
+                schema += schemaBytes[i];
+                dic += dicBytes[i];
+                int direction = direction(ids[i]);
+                if (direction > 0) {
+                    subjectFragments++;
+                } else if (direction < 0) {
+                    objectFragments++;
+                }
+            }
+            return FragmentCatalogSummary.builder()
+                    .directory(directory.toString())
+                    .fragmentCount(ids.length)
+                    .totalTriples(totalTriples())
+                    .dataBytes(data)
+                    .schemaBytes(schema)
+                    .dicBytes(dic)
+                    .predicateCount(Math.max(predicateIris.size(), (int) Arrays.stream(predicates).distinct().count()))
+                    .subjectFragments(subjectFragments)
+                    .objectFragments(objectFragments)
+                    .indexedAt(indexedAt)
+                    .refreshMs(refreshMs)
+                    .rescannedFragments(rescanned)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.JobInfo;
+
+/**
+ * Thrown when a job is submitted for a resource another job is still using
+ */
+public class JobConflictException extends RuntimeException {
+
+    private final transient JobInfo activeJob;
+
+    public JobConflictException(JobInfo activeJob) {
+        super("Job " + activeJob.getId() + " (" + activeJob.getType() + ") is still " + activeJob.getStatus());
+        this.activeJob = activeJob;
+    }
+
+    public JobInfo getActiveJob() {
+        return activeJob;
+    }
+}
@@ -0,0 +1,35 @@
+package com.pqdag.api.service;
+
+/**
+ * Handle given to work running as a job, to report progress and output.
+ * NONE is used when the same code runs inline for a synchronous endpoint.
+ */
+public interface JobContext {
+
+    JobContext NONE = new JobContext() {
+        @Override
+        public void log(String line) {
+        }
+
+        @Override
+        public void progress(String stage, Double fraction) {
+        }
+
+        @Override
+        public void onCancel(Runnable action) {
+        }
+    };
+
+    void log(String line);
+
+    /**
+     * @param fraction 0..1, or null if unknown
+     */
+    void progress(String stage, Double fraction);
+
+    /**
+     * Run action when the job is cancelled, e.g. to destroy a child process that
+     * an interrupt would not stop
+     */
+    void onCancel(Runnable action);
+}
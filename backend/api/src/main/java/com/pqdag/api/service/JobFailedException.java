@@ -0,0 +1,18 @@
+package com.pqdag.api.service;
+
+/**
+ * Ends a job with status "error" while still keeping its result
+ */
+public class JobFailedException extends Exception {
+
+    private final transient Object result;
+
+    public JobFailedException(String message, Object result) {
+        super(message);
+        this.result = result;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,411 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.JobEvent;
+import com.pqdag.api.dto.JobInfo;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs long pipeline steps (fragmentation, allocation, cluster operations) and
+ * query batches in the background so the request thread returns a job ID immediately.
+ *
+ * Jobs run on virtual threads when the JVM has them (Java 21+), otherwise on a
+ * pool of max-concurrent platform threads; further jobs wait as "queued". Jobs
+ * naming the same resource never overlap: a second submit is rejected with the
+ * job already holding it. State and log lines can be polled through /api/jobs
+ * or followed on /topic/jobs/{jobId}; the log is a ProcessOutputLog, so a
+ * verbose job costs disk, not heap. Finished jobs are kept for retention-ms.
+ * The synchronous endpoints run as jobs as well (runAndWait), so they take the
+ * same resources.
+ */
+@Slf4j
+@Service
+public class JobService {
+
+    // Fragmentation, allocation and distribution share the storage/ working directories
+    public static final String RESOURCE_PIPELINE = "pipeline";
+    public static final String RESOURCE_CLUSTER = "cluster";
+    // Concurrent batches would skew each other's latencies
+    public static final String RESOURCE_QUERY_BATCH = "query-batch";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ProcessOutputStore outputStore;
+    private final ExecutorService executor;
+    private final int maxLogLines;
+    private final long retentionMs;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Work run as a job; the return value becomes the job result
+     */
+    @FunctionalInterface
+    public interface JobTask<T> {
+        T run(JobContext job) throws Exception;
+    }
+
+    public JobService(SimpMessagingTemplate messagingTemplate,
+                      ProcessOutputStore outputStore,
+                      @Value("${jobs.virtual-threads:true}") boolean virtualThreads,
+                      @Value("${jobs.max-concurrent:8}") int maxConcurrent,
+                      @Value("${jobs.max-log-lines:2000}") int maxLogLines,
+                      @Value("${jobs.retention-ms:3600000}") long retentionMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.outputStore = outputStore;
+        this.maxLogLines = maxLogLines;
+        this.retentionMs = retentionMs;
+        this.executor = createExecutor(virtualThreads, maxConcurrent);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static String topic(String jobId) {
+        return "/topic/jobs/" + jobId;
+    }
+
+    /**
+     * Start a job in the background
+     *
+     * @param resource jobs with the same resource run one at a time, null for none
+     * @throws JobConflictException if another job still holds the resource
+     */
+    public <T> JobInfo submit(String type, String resource, String description, JobTask<T> task) {
+        purgeExpired();
+        Job job;
+        synchronized (this) {
+            if (resource != null) {
+                Optional<Job> holder = jobs.values().stream()
+                        .filter(other -> resource.equals(other.resource) && !other.isFinished())
+                        .findFirst();
+                if (holder.isPresent()) {
+                    throw new JobConflictException(holder.get().toInfo(null));
+                }
+            }
+            job = new Job(UUID.randomUUID().toString(), type, resource, description);
+            jobs.put(job.id, job);
+        }
+        log.info("Job {} submitted: {}", job.id, description);
+        job.setFuture(executor.submit(() -> execute(job, task)));
+        publishStatus(job);
+        return job.toInfo(null);
+    }
+
+    /**
+     * Run a job and wait for it, for the synchronous endpoints: the work holds its
+     * resource like any other job and is listed under /api/jobs
+     *
+     * @return what the task returned
+     * @throws JobConflictException  if another job still holds the resource
+     * @throws CancellationException if the job was cancelled
+     */
+    public <T> T runAndWait(String type, String resource, String description, JobTask<T> task) throws Exception {
+        CompletableFuture<T> outcome = new CompletableFuture<>();
+        JobInfo info = submit(type, resource, description, job -> {
+            try {
+                T result = task.run(job);
+                outcome.complete(result);
+                return result;
+            } catch (Exception e) {
+                outcome.completeExceptionally(e);
+                throw e;
+            }
+        });
+        Job job = jobs.get(info.getId());
+        if (job != null) {
+            job.onCancel(() -> outcome.cancel(false));
+        }
+        try {
+            return outcome.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } catch (InterruptedException e) {
+            cancel(info.getId());
+            throw e;
+        }
+    }
+
+    /**
+     * @param fromLine first log line to include (at most max-log-lines are returned), null to leave the log out
+     */
+    public Optional<JobInfo> getJob(String id, Long fromLine) {
+        Job job = jobs.get(id);
+        return job != null ? Optional.of(job.toInfo(fromLine)) : Optional.empty();
+    }
+
+    /**
+     * Jobs newest first, optionally filtered by type and status
+     */
+    public List<JobInfo> listJobs(String type, String status) {
+        purgeExpired();
+        return jobs.values().stream()
+                .sorted(Comparator.comparingLong((Job job) -> job.createdAt).reversed())
+                .map(job -> job.toInfo(null))
+                .filter(info -> type == null || type.equals(info.getType()))
+                .filter(info -> status == null || status.equals(info.getStatus()))
+                .toList();
+    }
+
+    /**
+     * Unfinished job holding a resource, if any
+     */
+    public Optional<JobInfo> findActive(String resource) {
+        return jobs.values().stream()
+                .filter(job -> resource.equals(job.resource) && !job.isFinished())
+                .findFirst()
+                .map(job -> job.toInfo(null));
+    }
+
+    /**
+     * Cancel a queued or running job
+     *
+     * @return the job, empty if unknown
+     */
+    public Optional<JobInfo> cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (job.cancel()) {
+            log.info("Job {} cancelled", id);
+            publishStatus(job);
+        }
+        return Optional.of(job.toInfo(null));
+    }
+
+    private <T> void execute(Job job, JobTask<T> task) {
+        if (!job.start()) {
+            return;
+        }
+        publishStatus(job);
+        try {
+            T result = task.run(job);
+            job.finish("success", result, null);
+        } catch (JobFailedException e) {
+            job.finish("error", e.getResult(), e.getMessage());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (!job.isCancelled()) {
+                log.warn("Job {} failed", job.id, e);
+            }
+            job.finish("error", null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        log.info("Job {} finished: {}", job.id, job.status);
+        publishStatus(job);
+    }
+
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt < cutoff);
+    }
+
+    private void publishStatus(Job job) {
+        publish(JobEvent.builder()
+                .jobId(job.id)
+                .type("status")
+                .job(job.toInfo(null))
+                .build());
+    }
+
+    private void publish(JobEvent event) {
+        try {
+            messagingTemplate.convertAndSend(topic(event.getJobId()), event);
+        } catch (MessagingException e) {
+            log.debug("Failed to publish job event for {}", event.getJobId(), e);
+        }
+    }
+
+    private static ExecutorService createExecutor(boolean virtualThreads, int maxConcurrent) {
+        if (virtualThreads) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                log.info("Jobs run on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                log.info("Virtual threads not available on Java {}, jobs use {} platform threads",
+                        Runtime.version().feature(), maxConcurrent);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, maxConcurrent), r -> {
+            Thread thread = new Thread(r, "job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Mutable job state; every access goes through the job's monitor
+     */
+    private final class Job implements JobContext {
+        private final String id;
+        private final String type;
+        private final String resource;
+        private final String description;
+        private final long createdAt = System.currentTimeMillis();
+        private final ProcessOutputLog output;
+        private final List<Runnable> cancelActions = new ArrayList<>();
+        private String status = "queued";
+        private String stage;
+        private Double progress;
+        private Long startedAt;
+        private volatile Long finishedAt;
+        private String error;
+        private Object result;
+        private boolean cancelled;
+        private Future<?> future;
+
+        Job(String id, String type, String resource, String description) {
+            this.id = id;
+            this.type = type;
+            this.resource = resource;
+            this.description = description;
+            this.output = outputStore.open("job-" + type);
+        }
+
+        @Override
+        public void log(String line) {
+            long lineNumber;
+            synchronized (this) {
+                if (output.isClosed()) {
+                    return;
+                }
+                lineNumber = output.getLineCount();
+                output.append(line);
+            }
+            publish(JobEvent.builder()
+                    .jobId(id)
+                    .type("log")
+                    .lineNumber(lineNumber)
+                    .line(line)
+                    .build());
+        }
+
+        @Override
+        public void progress(String stage, Double fraction) {
+            synchronized (this) {
+                this.stage = stage;
+                this.progress = fraction;
+            }
+            publishStatus(this);
+        }
+
+        @Override
+        public void onCancel(Runnable action) {
+            boolean runNow;
+            synchronized (this) {
+                runNow = cancelled;
+                if (!runNow) {
+                    cancelActions.add(action);
+                }
+            }
+            if (runNow) {
+                action.run();
+            }
+        }
+
+        synchronized void setFuture(Future<?> future) {
+            this.future = future;
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        synchronized boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return false if the job was cancelled while queued
+         */
+        synchronized boolean start() {
+            if (cancelled) {
+                return false;
+            }
+            status = "running";
+            startedAt = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void finish(String status, Object result, String error) {
+            if (finishedAt != null) {
+                return;
+            }
+            this.status = cancelled ? "cancelled" : status;
+            this.result = result;
+            this.error = error;
+            finishedAt = System.currentTimeMillis();
+            output.close();
+        }
+
+        /**
+         * @return false if the job had already finished
+         */
+        boolean cancel() {
+            List<Runnable> actions;
+            synchronized (this) {
+                if (finishedAt != null) {
+                    return false;
+                }
+                cancelled = true;
+                actions = new ArrayList<>(cancelActions);
+                if (startedAt == null) {
+                    // Never started: nothing will call finish()
+                    finish("cancelled", null, "Cancelled before start");
+                }
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+            for (Runnable action : actions) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.warn("Cancel action of job {} failed", id, e);
+                }
+            }
+            return true;
+        }
+
+        synchronized JobInfo toInfo(Long fromLine) {
+            JobInfo.JobInfoBuilder info = JobInfo.builder()
+                    .id(id)
+                    .type(type)
+                    .resource(resource)
+                    .description(description)
+                    .status(status)
+                    .stage(stage)
+                    .progress(progress)
+                    .createdAt(createdAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .result(result)
+                    .logLines(output.getLineCount());
+            if (startedAt != null) {
+                info.durationMs((finishedAt != null ? finishedAt : System.currentTimeMillis()) - startedAt);
+            }
+            if (fromLine != null) {
+                ProcessOutputLog.Chunk chunk = output.read(fromLine, maxLogLines);
+                info.logFrom(chunk.from()).log(chunk.lines());
+            }
+            return info.build();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.pqdag.api.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pqdag.api.dto.PlanChoice;
+import com.pqdag.api.dto.PlanStats;
+import com.pqdag.api.dto.QueryModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Learns which plan number is fastest for each (dataset, query shape) class.
+ *
+ * Every successful execution records its latency against the plan it ran with.
+ * When a request leaves planNumber empty, the plan with the lowest weighted mean
+ * latency is used. Candidate plans with fewer than min-samples measurements are
+ * explored in the background, one run per finished query, through the regular
+ * admission queue; a small share of runs keeps re-checking the other plans once
+ * the choice has converged. Statistics are persisted as JSON under storage/.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PlanAdvisor {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${workspace.root:/app}")
+    private String workspaceRoot;
+
+    @Value("${query.plan.auto-select:true}")
+    private boolean autoSelect;
+
+    @Value("${query.plan.candidates:0,1,2}")
+    private List<Integer> candidatePlans;
+
+    @Value("${query.plan.min-samples:3}")
+    private int minSamples;
+
+    @Value("${query.plan.ewma-alpha:0.3}")
+    private double ewmaAlpha;
+
+    @Value("${query.plan.explore.enabled:true}")
+    private boolean exploreEnabled;
+
+    // Share of finished queries that re-measure a non-best plan after convergence
+    @Value("${query.plan.explore.rate:0.05}")
+    private double exploreRate;
+
+    // Class key ("dataset|shape") -> plan number -> stats
+    private final Map<String, Map<Integer, PlanStats>> stats = new TreeMap<>();
+
+    private final AtomicBoolean exploring = new AtomicBoolean();
+    private final ExecutorService explorer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "plan-explorer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Runs the query being recorded with another plan number
+     */
+    @FunctionalInterface
+    public interface PlanRunner {
+        void run(int planNumber) throws Exception;
+    }
+
+    @PostConstruct
+    public void init() {
+        Path file = statsFile();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            Map<String, Map<Integer, PlanStats>> loaded = objectMapper.readValue(file.toFile(),
+                    new TypeReference<Map<String, Map<Integer, PlanStats>>>() {
+                    });
+            stats.putAll(loaded);
+            log.info("Loaded plan statistics for {} query classes from {}", stats.size(), file);
+        } catch (IOException e) {
+            log.warn("Failed to load plan statistics from {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explorer.shutdownNow();
+    }
+
+    public boolean isAutoSelectEnabled() {
+        return autoSelect;
+    }
+
+    /**
+     * Plan to use for a query that does not ask for one
+     */
+    public synchronized int choosePlan(String dataset, QueryModel model) {
+        Integer best = bestPlan(stats.get(classKey(dataset, model)));
+        return best != null ? best : candidatePlans.get(0);
+    }
+
+    /**
+     * Record a successful execution; may start one exploration run of another plan
+     *
+     * @param explore runs the same query with the given plan number; null = don't explore
+     */
+    public void recordExecution(String dataset, QueryModel model, int planNumber, long executionTimeMs,
+                                PlanRunner explore) {
+        String key = classKey(dataset, model);
+        Integer explorePlan;
+        synchronized (this) {
+            Map<Integer, PlanStats> plans = stats.computeIfAbsent(key, k -> new TreeMap<>());
+            PlanStats planStats = plans.computeIfAbsent(planNumber, p -> new PlanStats());
+            planStats.setMeanMs(planStats.getSamples() == 0
+                    ? executionTimeMs
+                    : ewmaAlpha * executionTimeMs + (1 - ewmaAlpha) * planStats.getMeanMs());
+            planStats.setBestMs(planStats.getSamples() == 0
+                    ? executionTimeMs
+                    : Math.min(planStats.getBestMs(), executionTimeMs));
+            planStats.setSamples(planStats.getSamples() + 1);
+            planStats.setLastMs(executionTimeMs);
+            planStats.setLastRunAt(System.currentTimeMillis());
+            explorePlan = exploreEnabled ? nextExploration(plans) : null;
+            save();
+        }
+
+        if (explore != null && explorePlan != null && exploring.compareAndSet(false, true)) {
+            log.info("Exploring plan {} for {}", explorePlan, key);
+            explorer.submit(() -> {
+                try {
+                    explore.run(explorePlan);
+                } catch (Exception e) {
+                    log.warn("Exploration of plan {} for {} failed", explorePlan, key, e);
+                } finally {
+                    exploring.set(false);
+                }
+            });
+        }
+    }
+
+    public synchronized List<PlanChoice> getChoices() {
+        List<PlanChoice> choices = new ArrayList<>();
+        stats.forEach((key, plans) -> {
+            int separator = key.indexOf('|');
+            choices.add(PlanChoice.builder()
+                    .dataset(key.substring(0, separator))
+                    .shape(key.substring(separator + 1))
+                    .bestPlan(bestPlan(plans))
+                    .converged(isConverged(plans))
+                    .plans(copy(plans))
+                    .build());
+        });
+        return choices;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        save();
+        log.info("Plan statistics cleared");
+    }
+
+    /**
+     * Queries of the same shape and size on the same dataset share their plan statistics
+     */
+    private String classKey(String dataset, QueryModel model) {
+        return dataset + "|" + model.getShape() + "/" + model.getTriplePatterns().size();
+    }
+
+    private Integer bestPlan(Map<Integer, PlanStats> plans) {
+        if (plans == null) {
+            return null;
+        }
+        return plans.entrySet().stream()
+                .filter(entry -> candidatePlans.contains(entry.getKey()))
+                .min(Comparator.comparingDouble(entry -> entry.getValue().getMeanMs()))
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    private boolean isConverged(Map<Integer, PlanStats> plans) {
+        return candidatePlans.stream().allMatch(plan -> samples(plans, plan) >= minSamples);
+    }
+
+    /**
+     * Least measured candidate below min-samples, otherwise occasionally a random non-best one
+     */
+    private Integer nextExploration(Map<Integer, PlanStats> plans) {
+        Optional<Integer> underSampled = candidatePlans.stream()
+                .filter(plan -> samples(plans, plan) < minSamples)
+                .min(Comparator.comparingLong(plan -> samples(plans, plan)));
+        if (underSampled.isPresent()) {
+            return underSampled.get();
+        }
+        if (candidatePlans.size() > 1 && ThreadLocalRandom.current().nextDouble() < exploreRate) {
+            Integer best = bestPlan(plans);
+            List<Integer> others = candidatePlans.stream().filter(plan -> !plan.equals(best)).toList();
+            return others.get(ThreadLocalRandom.current().nextInt(others.size()));
+        }
+        return null;
+    }
+
+    private static long samples(Map<Integer, PlanStats> plans, int plan) {
+        PlanStats planStats = plans.get(plan);
+        return planStats != null ? planStats.getSamples() : 0;
+    }
+
+    private static Map<Integer, PlanStats> copy(Map<Integer, PlanStats> plans) {
+        Map<Integer, PlanStats> copy = new TreeMap<>();
+        plans.forEach((plan, planStats) -> copy.put(plan, planStats.toBuilder().build()));
+        return copy;
+    }
+
+    private Path statsFile() {
+        return Paths.get(workspaceRoot, "storage", "query_stats", "plan_stats.json");
+    }
+
+    /**
+     * Write through a temp file so a crash never leaves a truncated file behind
+     */
+    private void save() {
+        Path file = statsFile();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), stats);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save plan statistics to {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.pqdag.api.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Output of an external process with constant memory use.
+ *
+ * The last ringLines lines stay in memory; every line is also appended to a
+ * segment file, and a new segment is started once the current one reaches
+ * maxSegmentBytes. Only the newest maxSegments segments are kept, so disk use is
+ * bounded too. Lines are numbered from 0; reads by offset are served from memory
+ * when possible and from the segment files otherwise. After close() the ring is
+ * released and everything is read from disk.
+ */
+@Slf4j
+public class ProcessOutputLog implements Closeable {
+
+    private final String id;
+    private final Path directory;
+    private final int ringLines;
+    private final long maxSegmentBytes;
+    private final int maxSegments;
+
+    private final Deque<String> ring = new ArrayDeque<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final long createdAt = System.currentTimeMillis();
+    private BufferedWriter writer;
+    private long segmentBytes;
+    private int segmentSequence;
+    private long lineCount;
+    private boolean diskFailed;
+    private boolean closed;
+
+    private record Segment(Path path, long firstLine) {
+    }
+
+    /**
+     * Lines read from the log; from is the number of the first one
+     */
+    public record Chunk(long from, List<String> lines, long totalLines) {
+    }
+
+    ProcessOutputLog(String id, Path directory, int ringLines, long maxSegmentBytes, int maxSegments) {
+        this.id = id;
+        this.directory = directory;
+        this.ringLines = ringLines;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Whether lines were dropped from memory (the ring no longer holds the whole output)
+     */
+    public synchronized boolean isTruncated() {
+        return lineCount > ringLines;
+    }
+
+    /**
+     * Number of the oldest line still readable
+     */
+    public synchronized long getFirstAvailableLine() {
+        if (!diskFailed && !segments.isEmpty()) {
+            return segments.peekFirst().firstLine();
+        }
+        return lineCount - ring.size();
+    }
+
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            try {
+                bytes += Files.size(segment.path());
+            } catch (IOException e) {
+                // Deleted underneath us
+            }
+        }
+        return bytes;
+    }
+
+    public synchronized void append(String line) {
+        if (closed) {
+            throw new IllegalStateException("Output log " + id + " is closed");
+        }
+        ring.addLast(line);
+        if (ring.size() > ringLines) {
+            ring.removeFirst();
+        }
+        if (!diskFailed) {
+            try {
+                if (writer == null || segmentBytes >= maxSegmentBytes) {
+                    rotate();
+                }
+                writer.write(line);
+                writer.newLine();
+                segmentBytes += utf8Length(line) + System.lineSeparator().length();
+            } catch (IOException e) {
+                // Keep going with the in-memory tail only
+                log.warn("Cannot write output log {}, keeping only the last {} lines", id, ringLines, e);
+                diskFailed = true;
+                closeWriter();
+            }
+        }
+        lineCount++;
+    }
+
+    /**
+     * Last lines of output, at most the ring size when served from memory
+     */
+    public Chunk tail(int lines) {
+        long count = getLineCount();
+        return read(Math.max(0, count - lines), lines);
+    }
+
+    /**
+     * Last lines joined into one string, for messages and responses
+     */
+    public String tailText() {
+        return String.join("\n", tail(ringLines).lines());
+    }
+
+    /**
+     * Up to maxLines lines starting at line fromLine (or the oldest one still kept)
+     */
+    public synchronized Chunk read(long fromLine, int maxLines) {
+        long ringStart = lineCount - ring.size();
+        long from = Math.max(fromLine, getFirstAvailableLine());
+        if (from >= lineCount || maxLines <= 0) {
+            return new Chunk(Math.min(from, lineCount), List.of(), lineCount);
+        }
+        if ((!closed || diskFailed) && from >= ringStart) {
+            return new Chunk(from, ring.stream().skip(from - ringStart).limit(maxLines).toList(), lineCount);
+        }
+        try {
+            return new Chunk(from, readSegments(from, maxLines), lineCount);
+        } catch (IOException e) {
+            log.warn("Cannot read output log {}", id, e);
+            return new Chunk(from, List.of(), lineCount);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeWriter();
+        if (!diskFailed) {
+            ring.clear();
+        }
+    }
+
+    /**
+     * Size of the line in the segment file (UTF-8), without encoding it
+     */
+    private static long utf8Length(String line) {
+        long bytes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < line.length()
+                    && Character.isLowSurrogate(line.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private List<String> readSegments(long from, int maxLines) throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        List<String> lines = new ArrayList<>();
+        List<Segment> ordered = new ArrayList<>(segments);
+        for (int i = 0; i < ordered.size() && lines.size() < maxLines; i++) {
+            Segment segment = ordered.get(i);
+            long end = i + 1 < ordered.size() ? ordered.get(i + 1).firstLine() : lineCount;
+            if (from >= end) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(segment.path(), StandardCharsets.UTF_8)) {
+                for (long skip = from - segment.firstLine(); skip > 0; skip--) {
+                    reader.readLine();
+                }
+                String line;
+                while (lines.size() < maxLines && (line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            from = end;
+        }
+        return lines;
+    }
+
+    private void rotate() throws IOException {
+        closeWriter();
+        Files.createDirectories(directory);
+        Path path = directory.resolve(id + "." + segmentSequence++ + ".log");
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        segmentBytes = 0;
+        segments.addLast(new Segment(path, lineCount));
+        while (segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.removeFirst().path());
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.debug("Error closing output log {}", id, e);
+        }
+        writer = null;
+    }
+}
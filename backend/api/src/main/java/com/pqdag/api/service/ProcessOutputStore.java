@@ -0,0 +1,120 @@
+package com.pqdag.api.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Creates and tracks ProcessOutputLogs under storage/process_logs.
+ *
+ * The most recent max-logs finished logs stay readable by id; older ones are
+ * forgotten (their files stay until retention-hours have passed, then they are
+ * deleted). Logs still being written are never forgotten.
+ */
+@Slf4j
+@Service
+public class ProcessOutputStore {
+
+    @Value("${workspace.root:/app}")
+    private String workspaceRoot;
+
+    @Value("${process.output.ring-lines:1000}")
+    private int ringLines;
+
+    @Value("${process.output.max-file-size:16777216}")
+    private long maxFileSize;
+
+    @Value("${process.output.max-files:4}")
+    private int maxFiles;
+
+    @Value("${process.output.max-logs:200}")
+    private int maxLogs;
+
+    @Value("${process.output.retention-hours:24}")
+    private long retentionHours;
+
+    private final Map<String, ProcessOutputLog> logs = new LinkedHashMap<>();
+    private long lastPurge;
+
+    @PostConstruct
+    public void init() {
+        purgeOldFiles();
+    }
+
+    /**
+     * New log; the id is the name plus a timestamp and sequence suffix
+     */
+    public synchronized ProcessOutputLog open(String name) {
+        if (System.currentTimeMillis() - lastPurge > 3_600_000L) {
+            purgeOldFiles();
+        }
+        String base = name.replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + System.currentTimeMillis();
+        String id = base;
+        for (int i = 1; logs.containsKey(id); i++) {
+            id = base + "-" + i;
+        }
+        ProcessOutputLog outputLog = new ProcessOutputLog(id, directory(), ringLines, maxFileSize, maxFiles);
+        logs.put(id, outputLog);
+        // Forget the oldest finished logs; ones still being written stay
+        Iterator<ProcessOutputLog> oldest = logs.values().iterator();
+        while (logs.size() > maxLogs && oldest.hasNext()) {
+            if (oldest.next().isClosed()) {
+                oldest.remove();
+            }
+        }
+        return outputLog;
+    }
+
+    public synchronized Optional<ProcessOutputLog> get(String id) {
+        return Optional.ofNullable(logs.get(id));
+    }
+
+    /**
+     * Known logs, newest first
+     */
+    public synchronized List<ProcessOutputLog> list() {
+        List<ProcessOutputLog> list = new ArrayList<>(logs.values());
+        Collections.reverse(list);
+        return list;
+    }
+
+    private Path directory() {
+        return Paths.get(workspaceRoot, "storage", "process_logs");
+    }
+
+    private void purgeOldFiles() {
+        lastPurge = System.currentTimeMillis();
+        Path directory = directory();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long cutoff = lastPurge - retentionHours * 3_600_000L;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".log"))
+                    .filter(file -> {
+                        try {
+                            return Files.getLastModifiedTime(file).toMillis() < cutoff;
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    })
+                    .forEach(file -> {
+                        try {
+                            Files.deleteIfExists(file);
+                        } catch (IOException e) {
+                            log.debug("Cannot delete old output log {}", file, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Cannot clean up output logs in {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.QueryStreamFrame;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Admission control for query execution.
+ *
+ * Each cluster (master IP) runs at most max-in-flight queries; the rest wait in
+ * a bounded queue. Waiting queries are dispatched round-robin across users so
+ * one user's batch cannot starve the others. Waiting queries receive their
+ * position on /topic/query/{queryId}; when the queue is full, or a query waits
+ * longer than queue-timeout-ms, it is rejected with QueryRejectedException.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueryAdmissionScheduler {
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${query.scheduler.max-in-flight:1}")
+    private int maxInFlight;
+
+    @Value("${query.scheduler.max-queued:32}")
+    private int maxQueued;
+
+    @Value("${query.scheduler.max-queued-per-user:8}")
+    private int maxQueuedPerUser;
+
+    @Value("${query.scheduler.queue-timeout-ms:600000}")
+    private long queueTimeoutMs;
+
+    private final Map<String, ClusterQueue> clusters = new HashMap<>();
+
+    /**
+     * Queries of one cluster: running count and waiting tickets per user, in round-robin order
+     */
+    private static final class ClusterQueue {
+        private int inFlight;
+        private final LinkedHashMap<String, Deque<Ticket>> waitingByUser = new LinkedHashMap<>();
+
+        int waitingCount() {
+            return waitingByUser.values().stream().mapToInt(Deque::size).sum();
+        }
+
+        /**
+         * Waiting tickets in the order they would be dispatched
+         */
+        List<Ticket> dispatchOrder() {
+            List<Deque<Ticket>> queues = new ArrayList<>();
+            waitingByUser.values().forEach(queue -> queues.add(new ArrayDeque<>(queue)));
+            List<Ticket> order = new ArrayList<>();
+            while (!queues.isEmpty()) {
+                Iterator<Deque<Ticket>> it = queues.iterator();
+                while (it.hasNext()) {
+                    Deque<Ticket> queue = it.next();
+                    order.add(queue.poll());
+                    if (queue.isEmpty()) {
+                        it.remove();
+                    }
+                }
+            }
+            return order;
+        }
+    }
+
+    /**
+     * Admission of one query; close it to free the slot
+     */
+    public final class Ticket implements AutoCloseable {
+        private final String cluster;
+        private final String userId;
+        private final String queryId;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private boolean admitted;
+        private boolean released;
+
+        private Ticket(String cluster, String userId, String queryId) {
+            this.cluster = cluster;
+            this.userId = userId;
+            this.queryId = queryId;
+        }
+
+        /**
+         * Whether this is the only query running on its cluster right now
+         */
+        public boolean isAloneOnCluster() {
+            synchronized (QueryAdmissionScheduler.this) {
+                return clusters.get(cluster).inFlight == 1;
+            }
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    /**
+     * Wait for a slot on the cluster.
+     *
+     * @throws QueryRejectedException if the queue is full or the wait times out
+     */
+    public Ticket acquire(String cluster, String userId, String queryId) throws InterruptedException {
+        String user = userId != null && !userId.isBlank() ? userId : "anonymous";
+        long deadline = System.currentTimeMillis() + queueTimeoutMs;
+
+        synchronized (this) {
+            ClusterQueue queue = clusters.computeIfAbsent(cluster, c -> new ClusterQueue());
+            if (queue.waitingCount() >= maxQueued) {
+                throw new QueryRejectedException("Query queue is full (" + maxQueued + " waiting), try again later");
+            }
+            Deque<Ticket> userQueue = queue.waitingByUser.computeIfAbsent(user, u -> new ArrayDeque<>());
+            if (userQueue.size() >= maxQueuedPerUser) {
+                throw new QueryRejectedException("User " + user + " already has " + maxQueuedPerUser + " queries waiting");
+            }
+
+            Ticket ticket = new Ticket(cluster, user, queryId);
+            userQueue.add(ticket);
+            dispatch(queue);
+
+            while (!ticket.admitted) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    removeWaiting(queue, ticket);
+                    publishPositions(queue);
+                    throw new QueryRejectedException("Query waited more than " + queueTimeoutMs + " ms for a slot");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    if (ticket.admitted) {
+                        release(ticket);
+                    } else {
+                        removeWaiting(queue, ticket);
+                        publishPositions(queue);
+                    }
+                    throw e;
+                }
+            }
+
+            log.info("Admitted query {} of {} on cluster {} after {} ms", queryId, user, cluster,
+                    System.currentTimeMillis() - ticket.enqueuedAt);
+            return ticket;
+        }
+    }
+
+    public synchronized Map<String, Object> getQueueSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("maxInFlight", maxInFlight);
+        snapshot.put("maxQueued", maxQueued);
+        long now = System.currentTimeMillis();
+        Map<String, Object> clusterStates = new LinkedHashMap<>();
+        clusters.forEach((cluster, queue) -> {
+            List<Map<String, Object>> waiting = new ArrayList<>();
+            List<Ticket> order = queue.dispatchOrder();
+            for (int i = 0; i < order.size(); i++) {
+                Ticket ticket = order.get(i);
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("queryId", ticket.queryId);
+                entry.put("userId", ticket.userId);
+                entry.put("position", i + 1);
+                entry.put("waitingMs", now - ticket.enqueuedAt);
+                waiting.add(entry);
+            }
+            clusterStates.put(cluster, Map.of("inFlight", queue.inFlight, "waiting", waiting));
+        });
+        snapshot.put("clusters", clusterStates);
+        return snapshot;
+    }
+
+    private synchronized void release(Ticket ticket) {
+        if (ticket.released) {
+            return;
+        }
+        ticket.released = true;
+        ClusterQueue queue = clusters.get(ticket.cluster);
+        queue.inFlight--;
+        dispatch(queue);
+    }
+
+    /**
+     * Admit waiting tickets while slots are free, one user at a time
+     */
+    private void dispatch(ClusterQueue queue) {
+        boolean changed = false;
+        while (queue.inFlight < maxInFlight && !queue.waitingByUser.isEmpty()) {
+            Iterator<Map.Entry<String, Deque<Ticket>>> it = queue.waitingByUser.entrySet().iterator();
+            Map.Entry<String, Deque<Ticket>> next = it.next();
+            Ticket ticket = next.getValue().poll();
+            // Move this user behind the others
+            it.remove();
+            if (!next.getValue().isEmpty()) {
+                queue.waitingByUser.put(next.getKey(), next.getValue());
+            }
+            ticket.admitted = true;
+            queue.inFlight++;
+            changed = true;
+        }
+        if (changed) {
+            notifyAll();
+        }
+        publishPositions(queue);
+    }
+
+    private void removeWaiting(ClusterQueue queue, Ticket ticket) {
+        Deque<Ticket> userQueue = queue.waitingByUser.get(ticket.userId);
+        if (userQueue != null) {
+            userQueue.remove(ticket);
+            if (userQueue.isEmpty()) {
+                queue.waitingByUser.remove(ticket.userId);
+            }
+        }
+    }
+
+    private void publishPositions(ClusterQueue queue) {
+        List<Ticket> order = queue.dispatchOrder();
+        for (int i = 0; i < order.size(); i++) {
+            Ticket ticket = order.get(i);
+            try {
+                messagingTemplate.convertAndSend(QueryStreamPublisher.topic(ticket.queryId), QueryStreamFrame.builder()
+                        .type("queued")
+                        .queryId(ticket.queryId)
+                        .queuePosition(i + 1)
+                        .build());
+            } catch (MessagingException e) {
+                log.debug("Failed to publish queue position of query {}", ticket.queryId, e);
+            }
+        }
+    }
+}
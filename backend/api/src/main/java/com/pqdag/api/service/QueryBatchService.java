@@ -0,0 +1,236 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a whole query workload unattended and reports latency percentiles.
+ *
+ * Executions are submitted pipelineDepth at a time through QueryService, so the
+ * next query is already waiting in the admission scheduler when the previous one
+ * finishes and the cluster never idles between runs. Warmup runs go first and
+ * are not measured. The result cache is bypassed and no plan explorations are
+ * started, so background runs don't compete with the measured ones. Without a
+ * planNumber each query's learned plan is resolved once at the start and pinned
+ * for all its runs, so the percentiles describe one plan.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueryBatchService {
+
+    private static final int MAX_ERRORS_PER_QUERY = 5;
+
+    private final QueryService queryService;
+
+    @Value("${query.batch.max-pipeline-depth:4}")
+    private int maxPipelineDepth;
+
+    @Value("${query.batch.max-executions:10000}")
+    private int maxExecutions;
+
+    private record Execution(String queryFile, QueryExecutionResponse response, String error) {
+
+        boolean succeeded() {
+            return error == null && response != null && "success".equals(response.getStatus());
+        }
+    }
+
+    public BatchExecutionResponse runBatch(BatchExecutionRequest request) throws InterruptedException {
+        String dataset = request.getDataset();
+        List<String> queryFiles = request.getQueryFiles() != null && !request.getQueryFiles().isEmpty()
+                ? request.getQueryFiles()
+                : queryService.getQueryFiles(dataset);
+        int repetitions = Math.max(1, request.getRepetitions() != null ? request.getRepetitions() : 1);
+        int warmup = Math.max(0, request.getWarmup() != null ? request.getWarmup() : 0);
+        int pipelineDepth = Math.min(maxPipelineDepth,
+                Math.max(1, request.getPipelineDepth() != null ? request.getPipelineDepth() : 2));
+
+        if (queryFiles.isEmpty()) {
+            return BatchExecutionResponse.builder()
+                    .status("error")
+                    .message("No query files found for dataset: " + dataset)
+                    .dataset(dataset)
+                    .build();
+        }
+        int totalRuns = queryFiles.size() * (repetitions + warmup);
+        if (totalRuns > maxExecutions) {
+            return BatchExecutionResponse.builder()
+                    .status("error")
+                    .message("Batch of " + totalRuns + " executions exceeds the limit of " + maxExecutions)
+                    .dataset(dataset)
+                    .build();
+        }
+
+        Map<String, Integer> plans = new HashMap<>();
+        for (String queryFile : queryFiles) {
+            plans.put(queryFile, request.getPlanNumber() != null
+                    ? request.getPlanNumber()
+                    : queryService.learnedPlan(dataset, queryFile));
+        }
+
+        String batchId = UUID.randomUUID().toString();
+        String userId = request.getUserId() != null ? request.getUserId() : "batch-" + batchId.substring(0, 8);
+        log.info("Starting batch {}: {} queries on {}, {} warmup + {} measured runs each, pipeline depth {}",
+                batchId, queryFiles.size(), dataset, warmup, repetitions, pipelineDepth);
+
+        AtomicInteger sequence = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(pipelineDepth, r -> {
+            Thread thread = new Thread(r, "query-batch-" + batchId.substring(0, 8));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            if (warmup > 0) {
+                runRound(executor, request, queryFiles, plans, warmup, batchId, userId, sequence);
+            }
+
+            long start = System.currentTimeMillis();
+            List<Execution> executions = runRound(executor, request, queryFiles, plans, repetitions, batchId, userId,
+                    sequence);
+            long wallTime = System.currentTimeMillis() - start;
+
+            List<BatchQueryReport> reports = new ArrayList<>();
+            for (String queryFile : queryFiles) {
+                reports.add(buildReport(queryFile, plans.get(queryFile), executions.stream()
+                        .filter(execution -> execution.queryFile().equals(queryFile))
+                        .toList()));
+            }
+
+            int failures = reports.stream().mapToInt(BatchQueryReport::getFailures).sum();
+            String status = failures == 0 ? "success" : failures == executions.size() ? "error" : "partial";
+            log.info("Batch {} finished in {} ms with {} failures out of {}", batchId, wallTime, failures, executions.size());
+
+            return BatchExecutionResponse.builder()
+                    .status(status)
+                    .message("Executed " + executions.size() + " queries, " + failures + " failed")
+                    .batchId(batchId)
+                    .dataset(dataset)
+                    .totalExecutions(executions.size())
+                    .failures(failures)
+                    .wallTimeMs(wallTime)
+                    .queries(reports)
+                    .build();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit rounds x queryFiles executions (round by round) and wait for all of them
+     */
+    private List<Execution> runRound(ExecutorService executor, BatchExecutionRequest request, List<String> queryFiles,
+                                     Map<String, Integer> plans, int rounds, String batchId, String userId,
+                                     AtomicInteger sequence)
+            throws InterruptedException {
+        List<QueryExecutionRequest> submitted = new ArrayList<>();
+        List<Future<Execution>> futures = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (String queryFile : queryFiles) {
+                QueryExecutionRequest single = toSingleRequest(request, queryFile, plans.get(queryFile), userId,
+                        batchId + "-" + sequence.incrementAndGet());
+                submitted.add(single);
+                futures.add(executor.submit(() -> execute(single)));
+            }
+        }
+
+        List<Execution> executions = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                executions.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                executions.add(new Execution(submitted.get(i).getQueryFile(), null, String.valueOf(e.getCause())));
+            }
+        }
+        return executions;
+    }
+
+    private Execution execute(QueryExecutionRequest request) {
+        try {
+            QueryExecutionResponse response = queryService.executeQuery(request);
+            String error = "success".equals(response.getStatus()) ? null : response.getMessage();
+            return new Execution(request.getQueryFile(), response, error);
+        } catch (Exception e) {
+            log.warn("Batch execution of {} failed", request.getQueryFile(), e);
+            return new Execution(request.getQueryFile(), null, e.getMessage());
+        }
+    }
+
+    private QueryExecutionRequest toSingleRequest(BatchExecutionRequest batch, String queryFile, Integer planNumber,
+                                                  String userId, String queryId) {
+        QueryExecutionRequest request = new QueryExecutionRequest();
+        request.setQueryId(queryId);
+        request.setUserId(userId);
+        request.setDataset(batch.getDataset());
+        request.setQueryFile(queryFile);
+        request.setPlanNumber(planNumber);
+        request.setMasterIp(batch.getMasterIp());
+        request.setExecutionMode(batch.getExecutionMode());
+        request.setColdEvery(batch.getColdEvery());
+        request.setUseCache(false);
+        request.setExplorePlans(false);
+        return request;
+    }
+
+    private BatchQueryReport buildReport(String queryFile, Integer planNumber, List<Execution> executions) {
+        long[] latencies = executions.stream()
+                .filter(Execution::succeeded)
+                .mapToLong(execution -> execution.response().getExecutionTimeMs())
+                .sorted()
+                .toArray();
+        List<String> errors = executions.stream()
+                .filter(execution -> !execution.succeeded())
+                .map(execution -> execution.error() != null ? execution.error() : "unknown error")
+                .limit(MAX_ERRORS_PER_QUERY)
+                .toList();
+        Integer resultCount = executions.stream()
+                .filter(Execution::succeeded)
+                .reduce((first, second) -> second)
+                .map(execution -> execution.response().getResultCount())
+                .orElse(null);
+
+        // Only unpinned when no plan could be resolved; then report the default plan the runs used
+        if (planNumber == null) {
+            planNumber = executions.stream()
+                    .filter(execution -> execution.response() != null)
+                    .map(execution -> execution.response().getPlanNumber())
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        BatchQueryReport.BatchQueryReportBuilder report = BatchQueryReport.builder()
+                .queryFile(queryFile)
+                .planNumber(planNumber)
+                .executions(executions.size())
+                .failures(executions.size() - latencies.length)
+                .resultCount(resultCount)
+                .errors(errors);
+
+        if (latencies.length > 0) {
+            report.minMs(latencies[0])
+                    .p50Ms(percentile(latencies, 50))
+                    .p95Ms(percentile(latencies, 95))
+                    .p99Ms(percentile(latencies, 99))
+                    .maxMs(latencies[latencies.length - 1])
+                    .meanMs(Arrays.stream(latencies).average().orElse(0));
+        }
+        return report.build();
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values
+     */
+    private long percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,392 @@
+package com.pqdag.api.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * In-memory mirror of the query files, so listing and viewing queries needs no
+ * SSH round-trip.
+ *
+ * Two sources are mirrored: the local storage/queries tree, kept current by a
+ * WatchService, and the client machine's queries directory, synced every
+ * sync-interval-ms by comparing sha256sum output and fetching only the files
+ * whose checksum changed. The client copy is what queries actually run against,
+ * so its content wins when both exist. Every entry carries its SHA-256, used as
+ * the content ETag; the catalog version is the listing ETag.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueryCatalog {
+
+    private static final String QUERY_EXTENSION = ".in";
+
+    private final SshSessionPool sshPool;
+
+    @Value("${workspace.root:/app}")
+    private String workspaceRoot;
+
+    @Value("${client.machine.ip:192.168.165.191}")
+    private String clientMachineIp;
+
+    @Value("${client.queries.path:/home/ubuntu/queries}")
+    private String clientQueriesPath;
+
+    @Value("${query.catalog.remote-sync.enabled:true}")
+    private boolean remoteSyncEnabled;
+
+    @Value("${query.catalog.sync-interval-ms:60000}")
+    private long syncIntervalMs;
+
+    /**
+     * One mirrored query file
+     */
+    public record Entry(String content, String checksum) {
+    }
+
+    // "dataset/file" -> entry, per source
+    private final Map<String, Entry> localEntries = new TreeMap<>();
+    private final Map<String, Entry> remoteEntries = new TreeMap<>();
+    private long version;
+    private final Object syncLock = new Object();
+
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "query-catalog-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WatchService watchService;
+    private Thread watchThread;
+
+    @PostConstruct
+    public void init() {
+        Path root = localRoot();
+        try {
+            Files.createDirectories(root);
+            watchService = root.getFileSystem().newWatchService();
+            registerTree(root);
+            watchThread = new Thread(this::watchLoop, "query-catalog-watch");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException e) {
+            log.warn("Cannot watch local query tree {}, changes will not be picked up", root, e);
+        }
+        rescanLocal();
+
+        if (remoteSyncEnabled) {
+            syncExecutor.scheduleWithFixedDelay(this::syncRemoteQuietly, 0, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        syncExecutor.shutdownNow();
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            log.debug("Error closing query catalog watch service", e);
+        }
+    }
+
+    /**
+     * Catalog version, bumped on every change; used as the ETag of listings
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized List<String> getDatasets() {
+        Set<String> datasets = new TreeSet<>();
+        for (Map<String, Entry> entries : List.of(localEntries, remoteEntries)) {
+            entries.keySet().forEach(key -> datasets.add(key.substring(0, key.indexOf('/'))));
+        }
+        return new ArrayList<>(datasets);
+    }
+
+    public synchronized List<String> getQueryFiles(String dataset) {
+        String prefix = dataset + "/";
+        Set<String> files = new TreeSet<>();
+        for (Map<String, Entry> entries : List.of(localEntries, remoteEntries)) {
+            entries.keySet().stream()
+                    .filter(key -> key.startsWith(prefix))
+                    .forEach(key -> files.add(key.substring(prefix.length())));
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Mirrored query file, the client machine's copy first. A file not seen yet is
+     * fetched from the client once and kept.
+     */
+    public Optional<Entry> getEntry(String dataset, String queryFile) {
+        String key = dataset + "/" + queryFile;
+        synchronized (this) {
+            Entry entry = remoteEntries.getOrDefault(key, localEntries.get(key));
+            if (entry != null) {
+                return Optional.of(entry);
+            }
+        }
+        if (!isSafeName(dataset) || !isSafeName(queryFile)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(fetchRemote(key));
+    }
+
+    /**
+     * Sync with the client machine now instead of waiting for the next interval
+     */
+    public void refresh() throws IOException {
+        rescanLocal();
+        if (remoteSyncEnabled) {
+            syncRemote();
+        }
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("version", version);
+        status.put("localFiles", localEntries.size());
+        status.put("remoteFiles", remoteEntries.size());
+        long differing = remoteEntries.entrySet().stream()
+                .filter(e -> localEntries.containsKey(e.getKey())
+                        && !localEntries.get(e.getKey()).checksum().equals(e.getValue().checksum()))
+                .count();
+        status.put("differingFiles", differing);
+        status.put("remoteSyncEnabled", remoteSyncEnabled);
+        return status;
+    }
+
+    private Path localRoot() {
+        return Paths.get(workspaceRoot, "storage", "queries");
+    }
+
+    // ---------------------------------------------------------------- local tree
+
+    private void registerTree(Path root) throws IOException {
+        root.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Path dir = (Path) key.watchable();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                        continue;
+                    }
+                    Path changed = dir.resolve((Path) event.context());
+                    if (dir.equals(localRoot())) {
+                        // New dataset directory: watch it and pick up its files
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                            changed.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                        }
+                        overflow = true;
+                    } else {
+                        reloadLocal(changed);
+                    }
+                }
+                if (overflow) {
+                    rescanLocal();
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        } catch (IOException e) {
+            log.warn("Query catalog watcher stopped", e);
+        }
+    }
+
+    private void rescanLocal() {
+        Map<String, Entry> scanned = new TreeMap<>();
+        try (Stream<Path> dirs = Files.list(localRoot())) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                try (Stream<Path> files = Files.list(dir)) {
+                    for (Path file : files.filter(this::isQueryFile).toList()) {
+                        Entry entry = readLocal(file);
+                        if (entry != null) {
+                            scanned.put(dir.getFileName() + "/" + file.getFileName(), entry);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error scanning local query tree {}", localRoot(), e);
+            return;
+        }
+        synchronized (this) {
+            if (!scanned.equals(localEntries)) {
+                localEntries.clear();
+                localEntries.putAll(scanned);
+                version++;
+            }
+        }
+    }
+
+    private void reloadLocal(Path file) {
+        String key = file.getParent().getFileName() + "/" + file.getFileName();
+        Entry entry = isQueryFile(file) ? readLocal(file) : null;
+        synchronized (this) {
+            Entry previous = entry != null ? localEntries.put(key, entry) : localEntries.remove(key);
+            if (!Objects.equals(previous, entry)) {
+                version++;
+                log.debug("Local query file {} {}", key, entry != null ? "updated" : "removed");
+            }
+        }
+    }
+
+    private boolean isQueryFile(Path file) {
+        return Files.isRegularFile(file) && file.getFileName().toString().endsWith(QUERY_EXTENSION);
+    }
+
+    private Entry readLocal(Path file) {
+        try {
+            String content = Files.readString(file).stripTrailing();
+            return new Entry(content, sha256(Files.readAllBytes(file)));
+        } catch (IOException e) {
+            // Deleted or still being written; the next event fixes it up
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------- client machine
+
+    private void syncRemoteQuietly() {
+        try {
+            syncRemote();
+        } catch (Exception e) {
+            log.warn("Query catalog sync with {} failed: {}", clientMachineIp, e.getMessage());
+        }
+    }
+
+    /**
+     * One sha256sum listing, then a fetch per changed file only. Readers are only
+     * blocked while the maps are updated, never during SSH calls.
+     */
+    private void syncRemote() throws IOException {
+        synchronized (syncLock) {
+            RemoteCommandResult listing = sshPool.execute(clientMachineIp, "cd " + clientQueriesPath
+                    + " && find . -mindepth 2 -maxdepth 2 -type f -name '*" + QUERY_EXTENSION + "' -exec sha256sum {} +");
+            if (!listing.isSuccess()) {
+                throw new IOException("Listing remote queries failed: " + listing.getOutput().trim());
+            }
+
+            Map<String, String> remoteChecksums = new HashMap<>();
+            for (String line : listing.getOutput().split("\n")) {
+                // "<sha256>  ./<dataset>/<file>"
+                int separator = line.indexOf("  ./");
+                if (separator > 0) {
+                    remoteChecksums.put(line.substring(separator + 4), line.substring(0, separator));
+                }
+            }
+
+            boolean removed;
+            Map<String, Entry> known;
+            Map<String, Entry> local;
+            synchronized (this) {
+                removed = remoteEntries.keySet().retainAll(remoteChecksums.keySet());
+                if (removed) {
+                    version++;
+                }
+                known = new HashMap<>(remoteEntries);
+                local = new HashMap<>(localEntries);
+            }
+
+            int updated = 0;
+            for (Map.Entry<String, String> remote : remoteChecksums.entrySet()) {
+                Entry current = known.get(remote.getKey());
+                if (current != null && current.checksum().equals(remote.getValue())) {
+                    continue;
+                }
+                // Reuse the local copy when it is byte-identical, otherwise fetch (fetchRemote stores it)
+                Entry localCopy = local.get(remote.getKey());
+                Entry entry;
+                if (localCopy != null && localCopy.checksum().equals(remote.getValue())) {
+                    entry = localCopy;
+                    synchronized (this) {
+                        remoteEntries.put(remote.getKey(), entry);
+                        version++;
+                    }
+                } else {
+                    entry = fetchRemote(remote.getKey());
+                }
+                if (entry != null) {
+                    if (!entry.checksum().equals(remote.getValue())) {
+                        // Changed between listing and fetch; the next sync settles it
+                        log.warn("Checksum mismatch for remote query {}", remote.getKey());
+                    }
+                    updated++;
+                }
+            }
+            if (removed || updated > 0) {
+                log.info("Query catalog synced with {}: {} files, {} updated", clientMachineIp,
+                        remoteChecksums.size(), updated);
+            }
+        }
+    }
+
+    private Entry fetchRemote(String key) {
+        try {
+            // Raw stdout (no line re-joining) so the checksum matches sha256sum on the client
+            RemoteCommandResult result = sshPool.execute(clientMachineIp,
+                    "cat " + clientQueriesPath + "/" + key, new byte[0]);
+            if (!result.isSuccess()) {
+                return null;
+            }
+            byte[] bytes = result.getOutput().getBytes(StandardCharsets.UTF_8);
+            Entry entry = new Entry(result.getOutput().stripTrailing(), sha256(bytes));
+            synchronized (this) {
+                if (!entry.equals(remoteEntries.put(key, entry))) {
+                    version++;
+                }
+            }
+            return entry;
+        } catch (IOException e) {
+            log.error("Error fetching query {} from client machine", key, e);
+            return null;
+        }
+    }
+
+    private static boolean isSafeName(String name) {
+        return !name.isEmpty() && !name.contains("/") && !name.contains("..") && name.matches("[\\w.-]+");
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
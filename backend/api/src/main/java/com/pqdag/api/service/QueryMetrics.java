@@ -0,0 +1,71 @@
+package com.pqdag.api.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Query latency timers: pqdag.query.phase (tagged by phase and mode) and
+ * pqdag.query.total (tagged by mode and status), with percentile histograms.
+ * Readable under /actuator/metrics and /actuator/prometheus.
+ */
+@Service
+@RequiredArgsConstructor
+public class QueryMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    // Client output line that shows the master connection is up (empty = no marker)
+    @Value("${query.phases.connect-marker:(?i)connected to master}")
+    private String connectMarker;
+
+    // Client output line that shows planning is done (empty = no marker)
+    @Value("${query.phases.plan-marker:(?i)plan (selected|ready|generated)}")
+    private String planMarker;
+
+    private Pattern connectPattern;
+    private Pattern planPattern;
+
+    @PostConstruct
+    public void init() {
+        connectPattern = compile(connectMarker);
+        planPattern = compile(planMarker);
+    }
+
+    public QueryPhaseTimer startTimer() {
+        return new QueryPhaseTimer(connectPattern, planPattern);
+    }
+
+    /**
+     * @param mode "cold" (client.jar run) or "cached"
+     */
+    public void record(QueryPhaseTimer timer, String mode, String status) {
+        timer.finish();
+        timer.getPhaseNanos().forEach((phase, nanos) -> Timer.builder("pqdag.query.phase")
+                .description("Query latency per execution phase")
+                .tag("phase", phase)
+                .tag("mode", mode)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS));
+        Timer.builder("pqdag.query.total")
+                .description("End-to-end query latency")
+                .tag("mode", mode)
+                .tag("status", status != null ? status : "unknown")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(timer.getTotalNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static Pattern compile(String regex) {
+        return regex == null || regex.isBlank() ? null : Pattern.compile(regex);
+    }
+}
@@ -0,0 +1,61 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.QueryModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Parses query files into QueryModel, keeping the last models in an LRU keyed
+ * by query text so repeated executions and page loads skip the parse.
+ */
+@Slf4j
+@Service
+public class QueryModelService {
+
+    private final Map<String, QueryModel> models;
+
+    public QueryModelService(@Value("${query.model.cache-size:512}") int cacheSize) {
+        this.models = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryModel> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Model of a query text
+     *
+     * @throws IllegalArgumentException if the text is outside the supported SELECT/BGP subset
+     */
+    public QueryModel analyze(String queryText) {
+        synchronized (models) {
+            QueryModel model = models.get(queryText);
+            if (model != null) {
+                return model;
+            }
+        }
+        QueryModel model = SparqlBgpParser.parse(queryText);
+        synchronized (models) {
+            models.put(queryText, model);
+        }
+        return model;
+    }
+
+    /**
+     * Model of a query text, or empty if it cannot be parsed
+     */
+    public Optional<QueryModel> tryAnalyze(String queryText) {
+        try {
+            return Optional.of(analyze(queryText));
+        } catch (IllegalArgumentException e) {
+            log.debug("Query is outside the supported SPARQL subset: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.pqdag.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps what the HTTP response needs from a query's output, within fixed
+ * limits: the first maxOutputChars of output and the first maxResults result
+ * lines. Every result is still counted; the full stream goes over WebSocket.
+ */
+public class QueryOutputCollector {
+
+    private final int maxOutputChars;
+    private final int maxResults;
+
+    private final StringBuilder output = new StringBuilder();
+    private final List<String> results = new ArrayList<>();
+    private int resultCount;
+    private boolean truncated;
+
+    public QueryOutputCollector(int maxOutputChars, int maxResults) {
+        this.maxOutputChars = maxOutputChars;
+        this.maxResults = maxResults;
+    }
+
+    public void accept(String line, boolean isResult) {
+        if (output.length() + line.length() + 1 <= maxOutputChars) {
+            output.append(line).append("\n");
+        } else {
+            truncated = true;
+        }
+
+        if (isResult) {
+            resultCount++;
+            if (results.size() < maxResults) {
+                results.add(line.trim());
+            } else {
+                truncated = true;
+            }
+        }
+    }
+
+    public String getOutput() {
+        return output.toString().stripTrailing();
+    }
+
+    public List<String> getResults() {
+        return results;
+    }
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,104 @@
+package com.pqdag.api.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Splits one query execution into consecutive phases.
+ *
+ * Local phases (analysis, queue, cluster-wait, prepare) are closed by the
+ * service as it goes. Once the client is launched, phases are closed by its
+ * output: the first line ends startup (SSH + JVM boot), lines matching the
+ * connect and plan markers end connect and planning, the first result line
+ * ends execution, and everything after it is transfer. A marker that never
+ * shows up simply folds its phase into the next one.
+ */
+public class QueryPhaseTimer {
+
+    public static final String ANALYSIS = "analysis";
+    public static final String QUEUE = "queue";
+    public static final String CLUSTER_WAIT = "cluster-wait";
+    public static final String PREPARE = "prepare";
+    public static final String STARTUP = "startup";
+    public static final String CONNECT = "connect";
+    public static final String PLANNING = "planning";
+    public static final String EXECUTION = "execution";
+    public static final String TRANSFER = "transfer";
+
+    private final Pattern connectMarker;
+    private final Pattern planMarker;
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private long lastMark = startNanos;
+    private long endNanos;
+
+    // Output-driven phase reached so far: 0 = startup ... 4 = transfer
+    private int outputState;
+
+    public QueryPhaseTimer(Pattern connectMarker, Pattern planMarker) {
+        this.connectMarker = connectMarker;
+        this.planMarker = planMarker;
+    }
+
+    /**
+     * Close the current phase under the given name
+     */
+    public synchronized void endPhase(String phase) {
+        long now = System.nanoTime();
+        phaseNanos.merge(phase, now - lastMark, Long::sum);
+        lastMark = now;
+    }
+
+    /**
+     * Advance the output-driven phases for one line of client output
+     */
+    public synchronized void onOutputLine(String line, boolean isResult) {
+        if (outputState == 0) {
+            endPhase(STARTUP);
+            outputState = 1;
+        }
+        if (outputState == 1 && connectMarker != null && connectMarker.matcher(line).find()) {
+            endPhase(CONNECT);
+            outputState = 2;
+        }
+        if (outputState <= 2 && planMarker != null && planMarker.matcher(line).find()) {
+            endPhase(PLANNING);
+            outputState = 3;
+        }
+        if (outputState <= 3 && isResult) {
+            endPhase(EXECUTION);
+            outputState = 4;
+        }
+    }
+
+    /**
+     * Close the last output phase after the client exits
+     */
+    public synchronized void finishOutput() {
+        endPhase(outputState == 0 ? STARTUP : outputState == 4 ? TRANSFER : EXECUTION);
+    }
+
+    public synchronized void finish() {
+        if (endNanos == 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized Map<String, Long> getPhaseNanos() {
+        return new LinkedHashMap<>(phaseNanos);
+    }
+
+    public synchronized long getTotalNanos() {
+        return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    public synchronized Map<String, Long> getPhaseTimesMs() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        phaseNanos.forEach((phase, nanos) -> millis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        millis.put("total", TimeUnit.NANOSECONDS.toMillis(getTotalNanos()));
+        return millis;
+    }
+}
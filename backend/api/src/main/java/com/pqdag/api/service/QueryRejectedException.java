@@ -0,0 +1,11 @@
+package com.pqdag.api.service;
+
+/**
+ * Thrown when the query scheduler cannot take a query (queue full or wait timed out)
+ */
+public class QueryRejectedException extends RuntimeException {
+
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
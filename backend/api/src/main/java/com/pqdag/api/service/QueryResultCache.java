@@ -0,0 +1,260 @@
+package com.pqdag.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pqdag.api.dto.QueryExecutionResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Bounded LRU cache of successful query results, keyed by dataset, normalized
+ * query text hash and plan number.
+ *
+ * Entries are evicted by count and by estimated size. When a spill directory is
+ * configured, evicted entries are written there as JSON (named by a hash of the
+ * key) and promoted back on a hit; the oldest spilled files are deleted once
+ * they exceed spill-max-bytes on disk. Everything is dropped when the cluster's data changes (dataset switch or
+ * new fragment distribution); the generation counter keeps queries that were
+ * already running at that point from re-populating the cache.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueryResultCache {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${query.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.cache.max-entries:256}")
+    private int maxEntries;
+
+    @Value("${query.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    // Empty = no spill, evicted entries are dropped
+    @Value("${query.cache.spill-dir:}")
+    private String spillDir;
+
+    @Value("${query.cache.spill-max-bytes:1073741824}")
+    private long spillMaxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long generation;
+    private long hits;
+    private long misses;
+    // Spilled keys, oldest first, with their file size
+    private final LinkedHashMap<String, Long> spilled = new LinkedHashMap<>();
+    private long spilledBytes;
+
+    private record Entry(QueryExecutionResponse response, long bytes) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (isSpillEnabled()) {
+            Files.createDirectories(Paths.get(spillDir));
+            clearSpillDir();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cache key for a query: dataset, SHA-256 of the whitespace-normalized text, plan number
+     */
+    public String key(String dataset, String queryText, int planNumber) {
+        String normalized = queryText.trim().replaceAll("\\s+", " ");
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return dataset + ":" + HexFormat.of().formatHex(hash) + ":" + planNumber;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized long currentGeneration() {
+        return generation;
+    }
+
+    public synchronized Optional<QueryExecutionResponse> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null && isSpillEnabled()) {
+            entry = readSpilled(key);
+            if (entry != null) {
+                insert(key, entry);
+            }
+        }
+        if (entry == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(entry.response());
+    }
+
+    /**
+     * Store a response unless the cache was invalidated since the query started
+     */
+    public synchronized void put(String key, QueryExecutionResponse response, long startedAtGeneration) {
+        if (!enabled || startedAtGeneration != generation) {
+            return;
+        }
+        long bytes = estimateSize(response);
+        if (bytes > maxBytes) {
+            return;
+        }
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.bytes();
+        }
+        insert(key, new Entry(response, bytes));
+    }
+
+    public synchronized void invalidateAll(String reason) {
+        if (!entries.isEmpty() || !spilled.isEmpty()) {
+            log.info("Invalidating query result cache ({} entries): {}", entries.size(), reason);
+        }
+        entries.clear();
+        totalBytes = 0;
+        spilled.clear();
+        spilledBytes = 0;
+        generation++;
+        if (isSpillEnabled()) {
+            clearSpillDir();
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("spilled", spilled.size());
+        stats.put("spilledBytes", spilledBytes);
+        stats.put("spillMaxBytes", spillMaxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("generation", generation);
+        return stats;
+    }
+
+    private void insert(String key, Entry entry) {
+        entries.put(key, entry);
+        totalBytes += entry.bytes();
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            if (evicted.getKey().equals(key)) {
+                break;
+            }
+            eldest.remove();
+            totalBytes -= evicted.getValue().bytes();
+            if (isSpillEnabled()) {
+                spill(evicted.getKey(), evicted.getValue());
+            }
+        }
+    }
+
+    private long estimateSize(QueryExecutionResponse response) {
+        long bytes = 256;
+        if (response.getOutput() != null) {
+            bytes += 2L * response.getOutput().length();
+        }
+        if (response.getResults() != null) {
+            for (String result : response.getResults()) {
+                bytes += 48 + 2L * result.length();
+            }
+        }
+        return bytes;
+    }
+
+    private boolean isSpillEnabled() {
+        return spillDir != null && !spillDir.isBlank();
+    }
+
+    /**
+     * The key holds the dataset name from the request, so it is hashed rather than used as a file name
+     */
+    private Path spillPath(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return Paths.get(spillDir, HexFormat.of().formatHex(hash) + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void spill(String key, Entry entry) {
+        Path path = spillPath(key);
+        try {
+            objectMapper.writeValue(path.toFile(), entry.response());
+            long size = Files.size(path);
+            Long previous = spilled.put(key, size);
+            spilledBytes += size - (previous != null ? previous : 0);
+        } catch (IOException e) {
+            log.warn("Failed to spill cached result {}", key, e);
+            return;
+        }
+
+        Iterator<Map.Entry<String, Long>> oldest = spilled.entrySet().iterator();
+        while (spilledBytes > spillMaxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> dropped = oldest.next();
+            oldest.remove();
+            spilledBytes -= dropped.getValue();
+            deleteSpilled(dropped.getKey());
+        }
+    }
+
+    private Entry readSpilled(String key) {
+        Long size = spilled.remove(key);
+        if (size == null) {
+            return null;
+        }
+        spilledBytes -= size;
+        Path path = spillPath(key);
+        try {
+            QueryExecutionResponse response = objectMapper.readValue(path.toFile(), QueryExecutionResponse.class);
+            return new Entry(response, estimateSize(response));
+        } catch (IOException e) {
+            log.warn("Failed to read spilled result {}", key, e);
+            return null;
+        } finally {
+            deleteSpilled(key);
+        }
+    }
+
+    private void deleteSpilled(String key) {
+        try {
+            Files.deleteIfExists(spillPath(key));
+        } catch (IOException e) {
+            log.warn("Failed to delete spilled result {}", key, e);
+        }
+    }
+
+    private void clearSpillDir() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(spillDir), "*.json")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clear query cache spill directory {}", spillDir, e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.pqdag.api.service;
 
 import com.pqdag.api.dto.*;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -8,12 +9,30 @@ import org.springframework.stereotype.Service;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class QueryService {
 
+    private final SshSessionPool sshPool;
+    private final ClusterExecutionPolicy executionPolicy;
+    private final QueryStreamPublisher streamPublisher;
+    private final QueryResultCache resultCache;
+    private final QueryAdmissionScheduler admissionScheduler;
+    private final QueryModelService queryModelService;
+    private final PlanAdvisor planAdvisor;
+    private final QueryCatalog queryCatalog;
+    private final QueryMetrics queryMetrics;
+    private final ClusterOperationExecutor clusterOperations;
+    private final ClusterTopology topology;
+    private final ClusterReadinessProbe readinessProbe;
+    private final ClusterHealthMonitor healthMonitor;
+    private final RunningQueryRegistry runningQueries;
+
     @Value("${workspace.root:/app}")
     private String workspaceRoot;
 
@@ -29,142 +48,101 @@ public class QueryService {
     @Value("${pqdag.installation.path:/home/ubuntu/pqdag}")
     private String pqdagInstallationPath;
 
-    @Value("${pqdag.data.path:/home/ubuntu/mounted_vol/pqdag_data}")
-    private String pqdagDataPath;
-
     @Value("${client.machine.ip:192.168.165.191}")
     private String clientMachineIp;
 
+    @Value("${cluster.host.ip:172.17.0.1}")
+    private String clusterHostIp;
+
+    @Value("${cluster.master.ip:192.168.165.27}")
+    private String defaultMasterIp;
+
+    @Value("${cluster.start-timeout-ms:120000}")
+    private long startTimeoutMs;
+
+    @Value("${cluster.stop-timeout-ms:30000}")
+    private long stopTimeoutMs;
+
+    @Value("${query.client-kill-timeout-ms:5000}")
+    private long clientKillTimeoutMs;
+
+    // 0 = no deadline unless the request sets timeoutMs
+    @Value("${query.timeout-ms:0}")
+    private long defaultTimeoutMs;
+
+    @Value("${query.response.max-output-chars:1000000}")
+    private int maxOutputChars;
+
+    @Value("${query.response.max-results:10000}")
+    private int maxInlineResults;
+
     /**
      * Get list of available datasets
      */
     public List<String> getDatasets() {
-        Path queriesPath = Paths.get(workspaceRoot, "storage", "queries");
-        try {
-            if (Files.exists(queriesPath)) {
-                return Files.list(queriesPath)
-                        .filter(Files::isDirectory)
-                        .map(path -> path.getFileName().toString())
-                        .sorted()
-                        .collect(Collectors.toList());
-            }
-        } catch (IOException e) {
-            log.error("Error listing datasets", e);
-        }
-        return Collections.emptyList();
+        return queryCatalog.getDatasets();
     }
 
     /**
      * Get list of query files for a dataset
      */
     public List<String> getQueryFiles(String dataset) {
-        Path datasetPath = Paths.get(workspaceRoot, "storage", "queries", dataset);
-        try {
-            if (Files.exists(datasetPath)) {
-                return Files.list(datasetPath)
-                        .filter(Files::isRegularFile)
-                        .filter(path -> path.getFileName().toString().endsWith(".in"))
-                        .map(path -> path.getFileName().toString())
-                        .sorted()
-                        .collect(Collectors.toList());
-            }
-        } catch (IOException e) {
-            log.error("Error listing query files for dataset: {}", dataset, e);
-        }
-        return Collections.emptyList();
+        return queryCatalog.getQueryFiles(dataset);
     }
 
     /**
-     * Get query content from client machine
+     * Get query content from the catalog mirror of the client machine's query files
      */
     public String getQueryContent(String dataset, String queryFile) {
-        try {
-            // First ensure SSH keys are copied
-            ProcessBuilder copyPb = new ProcessBuilder(
-                "sh", "-c",
-                "cp -r /root/.ssh /tmp/.ssh 2>/dev/null || true && chmod 700 /tmp/.ssh && chmod 600 /tmp/.ssh/pqdag"
-            );
-            copyPb.start().waitFor();
-
-            // Read query file from client machine
-            String queryFilePath = clientQueriesPath + "/" + dataset + "/" + queryFile;
-            
-            ProcessBuilder pb = new ProcessBuilder(
-                "ssh",
-                "-i", "/tmp/.ssh/pqdag",
-                "-o", "StrictHostKeyChecking=no",
-                "-o", "UserKnownHostsFile=/dev/null",
-                "-o", "LogLevel=ERROR",
-                "ubuntu@" + clientMachineIp,
-                "cat " + queryFilePath
-            );
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            String content = readProcessOutput(process);
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0) {
-                // Filter out SSH warnings
-                return Arrays.stream(content.split("\n"))
-                        .filter(line -> !line.startsWith("Warning:"))
-                        .collect(Collectors.joining("\n"));
-            }
-        } catch (Exception e) {
-            log.error("Error reading query content for {}/{}", dataset, queryFile, e);
+        return queryCatalog.getEntry(dataset, queryFile)
+                .map(QueryCatalog.Entry::content)
+                .orElse(null);
+    }
+
+    /**
+     * Parsed model of a query file (patterns, join graph, shape), or null if the file is missing
+     *
+     * @throws IllegalArgumentException if the query is outside the supported SPARQL subset
+     */
+    public QueryModel getQueryModel(String dataset, String queryFile) {
+        String queryText = getQueryContent(dataset, queryFile);
+        return queryText != null ? queryModelService.analyze(queryText) : null;
+    }
+
+    /**
+     * Plan auto-selection would pick for the query file right now, null if it is left to the default plan
+     */
+    public Integer learnedPlan(String dataset, String queryFile) {
+        String queryText = getQueryContent(dataset, queryFile);
+        if (queryText == null || !planAdvisor.isAutoSelectEnabled()) {
+            return null;
         }
-        return null;
+        return queryModelService.tryAnalyze(queryText)
+                .map(model -> planAdvisor.choosePlan(dataset, model))
+                .orElse(null);
     }
 
     /**
      * Start PQDAG cluster
      */
     public ClusterStatusResponse startCluster() throws Exception {
-        log.info("Starting PQDAG cluster - VERSION 12:13");
-
-        // First ensure SSH keys are copied to writable location
-        try {
-            log.info("Copying SSH keys to /tmp/.ssh");
-            ProcessBuilder copyPb = new ProcessBuilder(
-                "sh", "-c",
-                "cp -r /root/.ssh /tmp/.ssh 2>&1 && chmod 700 /tmp/.ssh && chmod 600 /tmp/.ssh/pqdag 2>&1 && ls -la /tmp/.ssh/pqdag"
-            );
-            copyPb.redirectErrorStream(true);
-            Process copyProc = copyPb.start();
-            String copyOutput = readProcessOutput(copyProc);
-            int copyExit = copyProc.waitFor();
-            log.info("SSH key copy exit code: {}, output: {}", copyExit, copyOutput);
-        } catch (Exception e) {
-            log.error("Failed to copy SSH keys", e);
-            throw e;
-        }
+        log.info("Starting PQDAG cluster");
 
         // Execute the script on the host via SSH using the pqdag key
         String scriptPath = clientScriptsPath + "/start-all";
         String remoteCommand = "cd " + clientScriptsPath + " && python3 " + scriptPath + " " + pqdagInstallationPath;
         
         log.info("Remote command: {}", remoteCommand);
-        log.info("About to execute SSH command");
         
-        ProcessBuilder pb = new ProcessBuilder(
-            "ssh",
-            "-i", "/tmp/.ssh/pqdag",
-            "-o", "StrictHostKeyChecking=no",
-            "-o", "UserKnownHostsFile=/dev/null",
-            "ubuntu@172.17.0.1",
-            remoteCommand
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        log.info("SSH process started, reading output");
-        String output = readProcessOutput(process);
-        
-        int exitCode = process.waitFor();
+        RemoteCommandResult result = sshPool.execute(clusterHostIp, remoteCommand);
+        String output = result.getOutput();
+        int exitCode = result.getExitCode();
         
         log.info("SSH command exit code: {}, output length: {}", exitCode, output.length());
         log.info("Output: {}", output);
         
         if (exitCode != 0) {
+            healthMonitor.invalidate();
             return ClusterStatusResponse.builder()
                     .status("error")
                     .message("Failed to start cluster")
@@ -172,10 +150,23 @@ public class QueryService {
                     .build();
         }
         
+        // The script only launches the JVMs; wait until every node is actually up
+        List<NodeOperationResult> nodes = readinessProbe.awaitUp(startTimeoutMs);
+        healthMonitor.invalidate();
+        if (!allSucceeded(nodes)) {
+            return ClusterStatusResponse.builder()
+                    .status("error")
+                    .message("Cluster did not become ready within " + startTimeoutMs + " ms")
+                    .output(output)
+                    .nodes(nodes)
+                    .build();
+        }
+        
         return ClusterStatusResponse.builder()
                 .status("success")
                 .message("Cluster started successfully")
                 .output(output)
+                .nodes(nodes)
                 .build();
     }
 
@@ -185,41 +176,20 @@ public class QueryService {
     public ClusterStatusResponse stopCluster() throws Exception {
         log.info("Stopping PQDAG cluster");
 
-        // First ensure SSH keys are copied to writable location
-        try {
-            ProcessBuilder copyPb = new ProcessBuilder(
-                "sh", "-c",
-                "cp -r /root/.ssh /tmp/.ssh 2>/dev/null || true && chmod 700 /tmp/.ssh && chmod 600 /tmp/.ssh/pqdag"
-            );
-            copyPb.start().waitFor();
-        } catch (Exception e) {
-            log.warn("Failed to copy SSH keys, they may already exist", e);
-        }
-
         // Execute the script on the host via SSH using the pqdag key
         String scriptPath = clientScriptsPath + "/stop-all";
         String remoteCommand = "cd " + clientScriptsPath + " && python3 " + scriptPath + " " + pqdagInstallationPath;
         
         log.info("Executing remote command via SSH: {}", remoteCommand);
         
-        ProcessBuilder pb = new ProcessBuilder(
-            "ssh",
-            "-i", "/tmp/.ssh/pqdag",
-            "-o", "StrictHostKeyChecking=no",
-            "-o", "UserKnownHostsFile=/dev/null",
-            "ubuntu@172.17.0.1",
-            remoteCommand
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
-        
-        int exitCode = process.waitFor();
+        RemoteCommandResult result = sshPool.execute(clusterHostIp, remoteCommand);
+        String output = result.getOutput();
+        int exitCode = result.getExitCode();
         
         log.info("Command exit code: {}", exitCode);
         
         if (exitCode != 0) {
+            healthMonitor.invalidate();
             return ClusterStatusResponse.builder()
                     .status("error")
                     .message("Failed to stop cluster")
@@ -227,147 +197,295 @@ public class QueryService {
                     .build();
         }
         
+        // Wait until the processes have exited and their ports are free
+        List<NodeOperationResult> nodes = readinessProbe.awaitDown(stopTimeoutMs);
+        healthMonitor.invalidate();
+        if (!allSucceeded(nodes)) {
+            return ClusterStatusResponse.builder()
+                    .status("error")
+                    .message("Cluster did not shut down within " + stopTimeoutMs + " ms")
+                    .output(output)
+                    .nodes(nodes)
+                    .build();
+        }
+        
         return ClusterStatusResponse.builder()
                 .status("success")
                 .message("Cluster stopped successfully")
                 .output(output)
+                .nodes(nodes)
                 .build();
     }
 
     /**
-     * Restart PQDAG cluster
+     * Restart PQDAG cluster once in-flight queries are done
      */
     public ClusterStatusResponse restartCluster() throws Exception {
+        return executionPolicy.restartNow(this::doRestartCluster);
+    }
+
+    private ClusterStatusResponse doRestartCluster() throws Exception {
         log.info("Restarting PQDAG cluster");
         
-        // Stop first
+        // Stop first (returns once every node is down)
         ClusterStatusResponse stopResponse = stopCluster();
         if (!"success".equals(stopResponse.getStatus())) {
             return stopResponse;
         }
         
-        // Wait a bit
-        Thread.sleep(2000);
-        
-        // Start again
+        // Start again (returns once every node is up)
         return startCluster();
     }
 
     /**
-     * Clear all Java processes on master, workers and client machine
+     * Clear all Java processes on master, workers and client machine, in parallel
      */
     public ClusterStatusResponse clearJavaProcesses() throws Exception {
         log.info("Clearing all Java processes on cluster");
-        
-        // First ensure SSH keys are copied
+
+        // Each node kills its own jar and waits until the processes are gone (ports released)
+        Map<String, String> commands = new LinkedHashMap<>();
+        commands.put(clientMachineIp, killAndAwaitExit("client.jar"));
+        String masterIp = topology.getMaster();
+        if (masterIp != null) {
+            commands.putIfAbsent(masterIp, killAndAwaitExit("master.jar"));
+        }
+        for (String worker : topology.getWorkers()) {
+            commands.putIfAbsent(worker, killAndAwaitExit("worker.jar"));
+        }
+
+        log.info("Clearing Java processes on {} nodes", commands.size());
+        List<NodeOperationResult> results = clusterOperations.run("Clear Java processes", commands, exit -> exit == 0);
+        long successCount = results.stream().filter(result -> "success".equals(result.getStatus())).count();
+
+        return ClusterStatusResponse.builder()
+                .status("success")
+                .message("Cleared Java processes on " + successCount + "/" + results.size() + " nodes")
+                .output(summarize(results, "Cleared"))
+                .nodes(results)
+                .build();
+    }
+
+    /**
+     * Kill the processes whose command line matches and wait for them to exit, at most
+     * 10 s (exit code 1 if some are still there). The [x]yz form keeps pkill/pgrep from
+     * matching the shell running this very command.
+     */
+    private String killAndAwaitExit(String processPattern) {
+        String pattern = "'[" + processPattern.charAt(0) + "]" + processPattern.substring(1) + "'";
+        return "pkill -9 -f " + pattern + "; i=0; while pgrep -f " + pattern + " >/dev/null; do"
+                + " [ $i -ge 100 ] && exit 1; i=$((i+1)); sleep 0.1; done";
+    }
+
+    /**
+     * Client call of a query that may be cancelled; once it is, the failure the kill
+     * causes is expected and reported as exit code -1
+     */
+    private int runCancellable(RunningQueryRegistry.Execution execution, Callable<Integer> call) throws Exception {
         try {
-            ProcessBuilder copyPb = new ProcessBuilder(
-                "sh", "-c",
-                "cp -r /root/.ssh /tmp/.ssh 2>/dev/null || true && chmod 700 /tmp/.ssh && chmod 600 /tmp/.ssh/pqdag"
-            );
-            copyPb.start().waitFor();
+            return call.call();
         } catch (Exception e) {
-            log.warn("Failed to copy SSH keys", e);
+            if (execution.getCancelReason() == null) {
+                throw e;
+            }
+            // Any interrupt came from the cancel; the stream summary still has to go out
+            Thread.interrupted();
+            log.debug("Query client call ended by {}: {}", execution.getCancelReason(), e.toString());
+            return -1;
         }
+    }
 
-        // Read master and workers files
-        Path masterFile = Paths.get("/app/storage/scripts/master");
-        Path workersFile = Paths.get("/app/storage/scripts/workers");
-        
-        List<String> nodes = new ArrayList<>();
-        
-        // Add client machine first
-        nodes.add(clientMachineIp);
-        
-        // Add master
-        if (Files.exists(masterFile)) {
-            String masterIp = Files.readString(masterFile).trim();
-            nodes.add(masterIp);
-        }
-        
-        // Add workers
-        if (Files.exists(workersFile)) {
-            List<String> workers = Files.readAllLines(workersFile).stream()
-                    .map(String::trim)
-                    .filter(line -> !line.isEmpty())
-                    .collect(Collectors.toList());
-            nodes.addAll(workers);
+    private void killClientProcess(String queryId, String processMarker) {
+        try {
+            sshPool.execute(clientMachineIp, "pkill -9 -f '[" + processMarker.charAt(0) + "]" + processMarker.substring(1) + "'",
+                    clientKillTimeoutMs);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to kill client of query " + queryId, e);
         }
-        
-        log.info("Clearing Java processes on {} nodes", nodes.size());
-        
+    }
+
+    private static boolean allSucceeded(List<NodeOperationResult> results) {
+        return results.stream().allMatch(result -> "success".equals(result.getStatus()));
+    }
+
+    /**
+     * One line per node for the response output
+     */
+    private String summarize(List<NodeOperationResult> results, String successVerb) {
         StringBuilder output = new StringBuilder();
-        int successCount = 0;
-        
-        // Get master IP for comparison
-        String masterIp = null;
-        if (Files.exists(masterFile)) {
-            masterIp = Files.readString(masterFile).trim();
+        for (NodeOperationResult result : results) {
+            switch (result.getStatus()) {
+                case "success" -> output.append(successVerb).append(" ").append(result.getNode());
+                case "failed" -> output.append("Failed on ").append(result.getNode())
+                        .append(" (exit code ").append(result.getExitCode()).append("): ")
+                        .append(result.getOutput().trim());
+                default -> output.append("Failed on ").append(result.getNode())
+                        .append(" (").append(result.getStatus()).append(" after ")
+                        .append(result.getAttempts()).append(" attempts): ").append(result.getOutput());
+            }
+            output.append("\n");
         }
-        
-        for (String node : nodes) {
+        return output.toString();
+    }
+
+    /**
+     * Execute a SPARQL query, restarting the cluster afterwards only if the
+     * request's execution mode asks for it
+     */
+    public QueryExecutionResponse executeQuery(QueryExecutionRequest request) throws Exception {
+        if (request.getQueryId() == null) {
+            request.setQueryId(UUID.randomUUID().toString());
+        }
+        if (request.getMasterIp() == null) {
+            request.setMasterIp(defaultMasterIp);
+        }
+
+        QueryPhaseTimer timer = queryMetrics.startTimer();
+        String queryText = getQueryContent(request.getDataset(), request.getQueryFile());
+        QueryModel model = queryText != null ? queryModelService.tryAnalyze(queryText).orElse(null) : null;
+
+        boolean planAutoSelected = false;
+        if (request.getPlanNumber() == null && model != null && planAdvisor.isAutoSelectEnabled()) {
+            request.setPlanNumber(planAdvisor.choosePlan(request.getDataset(), model));
+            planAutoSelected = true;
+            log.info("Using learned plan {} for {}", request.getPlanNumber(), request.getQueryFile());
+        }
+
+        String cacheKey = resultCacheKey(request, queryText, model);
+        if (cacheKey != null) {
+            Optional<QueryExecutionResponse> cached = resultCache.get(cacheKey);
+            if (cached.isPresent()) {
+                log.info("Serving {} on {} from result cache", request.getQueryFile(), request.getDataset());
+                QueryExecutionResponse response = replayCached(request, cached.get());
+                response.setPlanAutoSelected(planAutoSelected);
+                timer.endPhase(QueryPhaseTimer.ANALYSIS);
+                queryMetrics.record(timer, "cached", response.getStatus());
+                response.setPhaseTimesMs(timer.getPhaseTimesMs());
+                return response;
+            }
+        }
+        long cacheGeneration = resultCache.currentGeneration();
+        timer.endPhase(QueryPhaseTimer.ANALYSIS);
+
+        // Wait for a slot on this cluster instead of killing whatever else is running
+        try (RunningQueryRegistry.Execution execution = runningQueries.register(request.getQueryId());
+             QueryAdmissionScheduler.Ticket ticket = acquireSlot(request, execution)) {
+            if (ticket == null) {
+                return cancelledResponse(request, execution, timer);
+            }
+            timer.endPhase(QueryPhaseTimer.QUEUE);
+            // The deadline covers cluster wait and execution, not the time spent queued
+            execution.startDeadline(request.getTimeoutMs() != null ? request.getTimeoutMs() : defaultTimeoutMs);
             try {
-                log.info("Clearing Java processes on node: {}", node);
-                
-                // Determine which JAR file to kill based on node type
-                String killCommand;
-                if (node.equals(clientMachineIp)) {
-                    // Client machine: kill client.jar
-                    killCommand = "pkill -9 -f 'client.jar' || true";
-                } else if (node.equals(masterIp)) {
-                    // Master: kill master.jar
-                    killCommand = "pkill -9 -f 'master.jar' || true";
-                } else {
-                    // Workers: kill worker.jar
-                    killCommand = "pkill -9 -f 'worker.jar' || true";
+                executionPolicy.awaitClusterReady();
+            } catch (InterruptedException e) {
+                if (execution.getCancelReason() == null) {
+                    throw e;
                 }
-                
-                log.info("Executing on {}: {}", node, killCommand);
-                
-                ProcessBuilder pb = new ProcessBuilder(
-                    "ssh",
-                    "-i", "/tmp/.ssh/pqdag",
-                    "-o", "StrictHostKeyChecking=no",
-                    "-o", "UserKnownHostsFile=/dev/null",
-                    "-o", "LogLevel=ERROR",
-                    "ubuntu@" + node,
-                    killCommand
-                );
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
-                String nodeOutput = readProcessOutput(process);
-                int exitCode = process.waitFor();
-                
-                if (exitCode == 0 || exitCode == 1) {  // 0 or 1 are ok (1 means no process found)
-                    output.append("Cleared ").append(node).append("\n");
-                    successCount++;
-                } else {
-                    output.append("Warning: ").append(node).append(" returned exit code ").append(exitCode).append(": ").append(nodeOutput).append("\n");
+                return cancelledResponse(request, execution, timer);
+            }
+            timer.endPhase(QueryPhaseTimer.CLUSTER_WAIT);
+            QueryExecutionResponse response = null;
+            try {
+                response = runQuery(request, ticket, timer, execution);
+                response.setPlanAutoSelected(planAutoSelected);
+                if (model != null && "success".equals(response.getStatus())) {
+                    planAdvisor.recordExecution(request.getDataset(), model, response.getPlanNumber(),
+                            response.getExecutionTimeMs(),
+                            mayExplore(request) ? plan -> explorePlan(request, plan) : null);
+                }
+                if (cacheKey != null && "success".equals(response.getStatus())
+                        && !Boolean.TRUE.equals(response.getOutputTruncated())) {
+                    resultCache.put(cacheKey, response.toBuilder().build(), cacheGeneration);
+                }
+                return response;
+            } finally {
+                boolean restartScheduled = executionPolicy.queryFinished(request,
+                        response != null && "success".equals(response.getStatus()), this::doRestartCluster);
+                if (response != null) {
+                    response.setRestartScheduled(restartScheduled);
                 }
-            } catch (Exception e) {
-                log.warn("Failed to clear Java processes on node: {}", node, e);
-                output.append("Failed: ").append(node).append(" - ").append(e.getMessage()).append("\n");
             }
         }
-        
-        log.info("Cleared Java processes on {}/{} nodes", successCount, nodes.size());
-        
-        // Wait for ports to be released
-        log.info("Waiting for ports to be released...");
-        Thread.sleep(3000);
-        
-        return ClusterStatusResponse.builder()
-                .status("success")
-                .message("Cleared Java processes on " + successCount + "/" + nodes.size() + " nodes (waited 3s for ports)")
-                .output(output.toString())
-                .build();
     }
 
     /**
-     * Execute a SPARQL query
+     * Only user queries start explorations: not batch runs, not explorations themselves,
+     * and not in cold mode, where each exploration would cost a cluster restart
      */
-    public QueryExecutionResponse executeQuery(QueryExecutionRequest request) throws Exception {
-        log.info("Executing query: {} on dataset: {}", request.getQueryFile(), request.getDataset());
+    private boolean mayExplore(QueryExecutionRequest request) {
+        return !request.isExploration()
+                && !Boolean.FALSE.equals(request.getExplorePlans())
+                && !executionPolicy.restartsAfterEveryQuery(request);
+    }
+
+    /**
+     * Background run of the same query with another plan, to measure it
+     */
+    private void explorePlan(QueryExecutionRequest original, int planNumber) throws Exception {
+        QueryExecutionRequest request = new QueryExecutionRequest();
+        request.setExploration(true);
+        request.setUserId("plan-explorer");
+        request.setDataset(original.getDataset());
+        request.setQueryFile(original.getQueryFile());
+        request.setPlanNumber(planNumber);
+        request.setMasterIp(original.getMasterIp());
+        request.setExecutionMode(original.getExecutionMode());
+        request.setColdEvery(original.getColdEvery());
+        request.setUseCache(false);
+        executeQuery(request);
+    }
+
+    /**
+     * Admission ticket, or null if the query was cancelled while queued
+     */
+    private QueryAdmissionScheduler.Ticket acquireSlot(QueryExecutionRequest request,
+                                                       RunningQueryRegistry.Execution execution) throws Exception {
+        try {
+            return admissionScheduler.acquire(request.getMasterIp(), request.getUserId(), request.getQueryId());
+        } catch (InterruptedException e) {
+            if (execution.getCancelReason() == null) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Response for a query cancelled or timed out before its client started
+     */
+    private QueryExecutionResponse cancelledResponse(QueryExecutionRequest request,
+                                                     RunningQueryRegistry.Execution execution,
+                                                     QueryPhaseTimer timer) {
+        log.info("Query {} {} before execution", request.getQueryId(), execution.getCancelReason());
+        QueryExecutionResponse response = QueryExecutionResponse.builder()
+                .status(execution.getCancelReason())
+                .message(cancelMessage(execution))
+                .queryId(request.getQueryId())
+                .queryFile(request.getQueryFile())
+                .planNumber(request.getPlanNumber())
+                .build();
+        queryMetrics.record(timer, "none", response.getStatus());
+        response.setPhaseTimesMs(timer.getPhaseTimesMs());
+        streamPublisher.open(request.getQueryId()).complete(QueryStreamFrame.builder()
+                .status(response.getStatus())
+                .message(response.getMessage())
+                .phaseTimesMs(response.getPhaseTimesMs())
+                .build());
+        return response;
+    }
+
+    private static String cancelMessage(RunningQueryRegistry.Execution execution) {
+        return "timeout".equals(execution.getCancelReason())
+                ? "Query timed out after " + execution.getTimeoutMs() + " ms"
+                : "Query cancelled";
+    }
+
+    private QueryExecutionResponse runQuery(QueryExecutionRequest request, QueryAdmissionScheduler.Ticket ticket,
+                                            QueryPhaseTimer timer, RunningQueryRegistry.Execution execution)
+            throws Exception {
+        String queryId = request.getQueryId();
+        log.info("Executing query {}: {} on dataset: {}", queryId, request.getQueryFile(), request.getDataset());
 
         // Build the query file path on the client machine
         // Example: /home/ubuntu/queries/watdiv/C3.in
@@ -375,190 +493,159 @@ public class QueryService {
         
         log.info("Query file path on client: {}", queryFileOnClient);
         
-        // First ensure SSH keys are copied
-        try {
-            ProcessBuilder copyPb = new ProcessBuilder(
-                "sh", "-c",
-                "cp -r /root/.ssh /tmp/.ssh 2>/dev/null || true && chmod 700 /tmp/.ssh && chmod 600 /tmp/.ssh/pqdag"
-            );
-            copyPb.start().waitFor();
-        } catch (Exception e) {
-            log.warn("Failed to copy SSH keys", e);
-        }
-
-        // Kill any existing Java client processes on the client machine to avoid port conflicts
-        try {
-            log.info("Killing existing Java client processes on client machine...");
-            ProcessBuilder killPb = new ProcessBuilder(
-                "ssh",
-                "-i", "/tmp/.ssh/pqdag",
-                "-o", "StrictHostKeyChecking=no",
-                "-o", "UserKnownHostsFile=/dev/null",
-                "-o", "LogLevel=ERROR",
-                "ubuntu@" + clientMachineIp,
-                "pkill -f 'java -jar.*client.jar' || true"
-            );
-            killPb.start().waitFor();
-            Thread.sleep(1000); // Wait for processes to die
-            log.info("Existing Java processes killed");
-        } catch (Exception e) {
-            log.warn("Failed to kill existing Java processes", e);
-        }
-
-        // Execute query using client.jar on the client machine
-        // Example: java -jar /home/ubuntu/client.jar "192.168.165.27" ~/queries/watdiv/C3.in 0
-        long startTime = System.currentTimeMillis();
-        
-        String masterIp = request.getMasterIp() != null ? request.getMasterIp() : "192.168.165.27";
+        String masterIp = request.getMasterIp();
         int planNumber = request.getPlanNumber() != null ? request.getPlanNumber() : 0;
         
-        String remoteCommand = "/opt/jdk-11/bin/java -jar " + clientJarPath + " \"" + masterIp + "\" " + queryFileOnClient + " " + planNumber;
+        // Output is streamed to /topic/query/{queryId}; only a bounded copy is kept for the response
+        QueryOutputCollector collector = new QueryOutputCollector(maxOutputChars, maxInlineResults);
         
-        log.info("Executing query on client machine {}: {}", clientMachineIp, remoteCommand);
-        
-        ProcessBuilder pb = new ProcessBuilder(
-            "ssh",
-            "-i", "/tmp/.ssh/pqdag",
-            "-o", "StrictHostKeyChecking=no",
-            "-o", "UserKnownHostsFile=/dev/null",
-            "-o", "LogLevel=ERROR",
-            "ubuntu@" + clientMachineIp,
-            remoteCommand
-        );
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
-        
-        int exitCode = process.waitFor();
-        long executionTime = System.currentTimeMillis() - startTime;
-        
-        // Filter out SSH warnings
-        String cleanOutput = Arrays.stream(output.split("\n"))
-                .filter(line -> !line.startsWith("Warning:"))
-                .collect(Collectors.joining("\n"));
-        
-        if (exitCode != 0) {
-            return QueryExecutionResponse.builder()
-                    .status("error")
-                    .message("Query execution failed")
-                    .queryFile(request.getQueryFile())
+        try (QueryStreamPublisher.QueryStream stream = streamPublisher.open(queryId)) {
+            Consumer<String> sink = line -> {
+                boolean isResult = isResultLine(line);
+                timer.onOutputLine(line, isResult);
+                collector.accept(line, isResult);
+                stream.accept(line, isResult);
+            };
+            
+            long startTime;
+            int exitCode;
+            
+            // Kill leftover Java client processes to avoid port conflicts, but only when
+            // no other admitted query is running on this cluster
+            if (ticket.isAloneOnCluster()) {
+                try {
+                    log.info("Killing leftover Java client processes on client machine...");
+                    sshPool.execute(clientMachineIp, killAndAwaitExit("java .*-jar.*client.jar"), clientKillTimeoutMs);
+                    log.info("Leftover Java processes killed");
+                } catch (Exception e) {
+                    log.warn("Failed to kill leftover Java processes", e);
+                }
+            }
+
+            // Execute query using client.jar on the client machine
+            // Example: java -jar /home/ubuntu/client.jar "192.168.165.27" ~/queries/watdiv/C3.in 0
+            timer.endPhase(QueryPhaseTimer.PREPARE);
+            startTime = System.currentTimeMillis();
+            
+            // The marker lets a cancel find exactly this JVM; it is ours, not the caller's query ID
+            String processMarker = "-Dpqdag.query=" + UUID.randomUUID();
+            String remoteCommand = "/opt/jdk-11/bin/java " + processMarker + " -jar " + clientJarPath + " \"" + masterIp + "\" " + queryFileOnClient + " " + planNumber;
+            
+            log.info("Executing query on client machine {}: {}", clientMachineIp, remoteCommand);
+            
+            exitCode = runCancellable(execution, () -> {
+                execution.onKill(() -> killClientProcess(queryId, processMarker));
+                return sshPool.executeStreaming(clientMachineIp, remoteCommand, sink);
+            });
+            
+            long executionTime = System.currentTimeMillis() - startTime;
+            timer.finishOutput();
+            
+            QueryExecutionResponse response;
+            if (execution.getCancelReason() != null) {
+                response = QueryExecutionResponse.builder()
+                        .status(execution.getCancelReason())
+                        .message(cancelMessage(execution))
+                        .queryId(queryId)
+                        .queryFile(request.getQueryFile())
+                        .planNumber(planNumber)
+                        .executionTimeMs(executionTime)
+                        .output(collector.getOutput())
+                        .outputTruncated(collector.isTruncated())
+                        .build();
+            } else if (exitCode != 0) {
+                response = QueryExecutionResponse.builder()
+                        .status("error")
+                        .message("Query execution failed")
+                        .queryId(queryId)
+                        .queryFile(request.getQueryFile())
+                        .planNumber(planNumber)
+                        .executionTimeMs(executionTime)
+                        .output(collector.getOutput())
+                        .outputTruncated(collector.isTruncated())
+                        .build();
+            } else {
+                response = QueryExecutionResponse.builder()
+                        .status("success")
+                        .message("Query executed successfully")
+                        .queryId(queryId)
+                        .queryFile(request.getQueryFile())
+                        .planNumber(planNumber)
+                        .executionTimeMs(executionTime)
+                        .resultCount(collector.getResultCount())
+                        .output(collector.getOutput())
+                        .results(collector.getResults())
+                        .outputTruncated(collector.isTruncated())
+                        .build();
+            }
+            
+            queryMetrics.record(timer, "cold", response.getStatus());
+            response.setPhaseTimesMs(timer.getPhaseTimesMs());
+
+            stream.complete(QueryStreamFrame.builder()
+                    .status(response.getStatus())
+                    .message(response.getMessage())
                     .executionTimeMs(executionTime)
-                    .output(cleanOutput)
-                    .build();
+                    .phaseTimesMs(response.getPhaseTimesMs())
+                    .build());
+            return response;
         }
-        
-        // Parse results
-        List<String> results = parseQueryResults(cleanOutput);
-        
-        QueryExecutionResponse response = QueryExecutionResponse.builder()
-                .status("success")
-                .message("Query executed successfully")
-                .queryFile(request.getQueryFile())
-                .executionTimeMs(executionTime)
-                .resultCount(results.size())
-                .output(cleanOutput)
-                .results(results)
-                .build();
-        
-        // Restart cluster after query execution for cold execution next time (async)
-        log.info("Scheduling cluster restart for cold execution...");
-        new Thread(() -> {
-            try {
-                Thread.sleep(2000); // Wait a bit before restarting
-                log.info("Restarting cluster...");
-                restartCluster();
-                log.info("Cluster restarted successfully");
-            } catch (Exception e) {
-                log.warn("Failed to restart cluster after query execution", e);
-            }
-        }).start();
-        
-        return response;
     }
 
     /**
-     * Parse query results from output
+     * Result cache key for a request, or null when the request bypasses the cache
      */
-    private List<String> parseQueryResults(String output) {
-        List<String> results = new ArrayList<>();
-        String[] lines = output.split("\n");
-        
-        for (String line : lines) {
-            // Filter result lines (adjust based on actual output format)
-            if (line.trim().startsWith("?") || line.contains("http://")) {
-                results.add(line.trim());
+    private String resultCacheKey(QueryExecutionRequest request, String queryText, QueryModel model) {
+        if (!resultCache.isEnabled() || Boolean.FALSE.equals(request.getUseCache()) || queryText == null) {
+            return null;
+        }
+        int planNumber = request.getPlanNumber() != null ? request.getPlanNumber() : 0;
+        // Key on the canonical form so formatting and prefix differences share an entry
+        String canonicalText = model != null ? model.getNormalizedText() : queryText;
+        return resultCache.key(request.getDataset(), canonicalText, planNumber);
+    }
+
+    /**
+     * Answer from a cached response, replaying its results on the query's topic
+     */
+    private QueryExecutionResponse replayCached(QueryExecutionRequest request, QueryExecutionResponse cached) {
+        String queryId = request.getQueryId();
+        try (QueryStreamPublisher.QueryStream stream = streamPublisher.open(queryId)) {
+            if (cached.getResults() != null) {
+                cached.getResults().forEach(result -> stream.accept(result, true));
             }
+            stream.complete(QueryStreamFrame.builder()
+                    .status(cached.getStatus())
+                    .message("Served from result cache")
+                    .executionTimeMs(cached.getExecutionTimeMs())
+                    .build());
         }
-        
-        return results;
+        return cached.toBuilder()
+                .queryId(queryId)
+                .cached(true)
+                .restartScheduled(false)
+                .build();
+    }
+
+    /**
+     * Whether an output line is a result row (adjust based on actual output format)
+     */
+    private boolean isResultLine(String line) {
+        return line.trim().startsWith("?") || line.contains("http://");
     }
 
     /**
      * Get list of available PQDAG datasets from pqdag_data directory
      */
     public List<String> getPqdagDatasets() {
-        try {
-            // List directories in pqdag_data on master node via SSH
-            ProcessBuilder pb = new ProcessBuilder(
-                "ssh",
-                "-i", "/tmp/.ssh/pqdag",
-                "-o", "StrictHostKeyChecking=no",
-                "-o", "UserKnownHostsFile=/dev/null",
-                "-o", "LogLevel=ERROR",
-                "ubuntu@172.17.0.1",
-                "ls -1 " + pqdagDataPath
-            );
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0) {
-                return Arrays.stream(output.split("\n"))
-                        .filter(line -> !line.trim().isEmpty())
-                        .filter(line -> !line.startsWith("Warning:"))
-                        .sorted()
-                        .collect(Collectors.toList());
-            }
-        } catch (Exception e) {
-            log.error("Error listing PQDAG datasets", e);
-        }
-        return Collections.emptyList();
+        return healthMonitor.getSnapshot().getDatasets();
     }
 
     /**
      * Get current configured dataset from config.properties
      */
     public String getCurrentDataset() {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "ssh",
-                "-i", "/tmp/.ssh/pqdag",
-                "-o", "StrictHostKeyChecking=no",
-                "-o", "UserKnownHostsFile=/dev/null",
-                "-o", "LogLevel=ERROR",
-                "ubuntu@172.17.0.1",
-                "grep '^DB_DEFAULT=' " + pqdagInstallationPath + "/conf/config.properties | cut -d'=' -f2"
-            );
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            String output = readProcessOutput(process).trim();
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0 && !output.isEmpty()) {
-                // Filter out warning messages
-                String[] lines = output.split("\n");
-                for (String line : lines) {
-                    if (!line.startsWith("Warning:") && !line.trim().isEmpty()) {
-                        return line.trim();
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error getting current dataset", e);
-        }
-        return null;
+        return healthMonitor.getSnapshot().getCurrentDataset();
     }
 
     /**
@@ -568,18 +655,6 @@ public class QueryService {
         log.info("Setting dataset to: {}", dataset);
         
         try {
-            // First ensure SSH keys are copied
-            try {
-                log.info("Copying SSH keys");
-                ProcessBuilder copyPb = new ProcessBuilder(
-                    "sh", "-c",
-                    "cp -r /root/.ssh /tmp/.ssh 2>/dev/null || true && chmod 700 /tmp/.ssh && chmod 600 /tmp/.ssh/pqdag"
-                );
-                copyPb.start().waitFor();
-            } catch (Exception e) {
-                log.warn("Failed to copy SSH keys", e);
-            }
-
             // Update config.properties on master and all workers
             String configPath = pqdagInstallationPath + "/conf/config.properties";
             String sedCommand = "sed -i 's/^DB_DEFAULT=.*/DB_DEFAULT=" + dataset + "/' " + configPath;
@@ -587,71 +662,37 @@ public class QueryService {
             log.info("Config path: {}", configPath);
             log.info("Sed command: {}", sedCommand);
             
-            // Read master and workers files from container's storage path
-            Path masterFile = Paths.get("/app/storage/scripts/master");
-            Path workersFile = Paths.get("/app/storage/scripts/workers");
-            
-            log.info("Master file: {}, exists: {}", masterFile, Files.exists(masterFile));
-            log.info("Workers file: {}, exists: {}", workersFile, Files.exists(workersFile));
-            
             List<String> nodes = new ArrayList<>();
-            if (Files.exists(masterFile)) {
-                String masterIp = Files.readString(masterFile).trim();
-                log.info("Master IP: {}", masterIp);
+            String masterIp = topology.getMaster();
+            if (masterIp != null) {
                 nodes.add(masterIp);
             }
-            if (Files.exists(workersFile)) {
-                List<String> workers = Files.readAllLines(workersFile).stream()
-                        .map(String::trim)
-                        .filter(line -> !line.isEmpty())
-                        .collect(Collectors.toList());
-                log.info("Workers: {}", workers);
-                nodes.addAll(workers);
-            }
+            nodes.addAll(topology.getWorkers());
             
             log.info("Total nodes to update: {}", nodes.size());
             
-            StringBuilder output = new StringBuilder();
-            boolean success = true;
+            // Update config on all nodes at once
+            List<NodeOperationResult> results = clusterOperations.run("Set dataset", nodes, sedCommand, exit -> exit == 0);
+            boolean success = allSucceeded(results);
+            String output = summarize(results, "Updated");
             
-            // Update config on all nodes
-            for (String node : nodes) {
-                log.info("Updating node: {}", node);
-                ProcessBuilder pb = new ProcessBuilder(
-                    "ssh",
-                    "-i", "/tmp/.ssh/pqdag",
-                    "-o", "StrictHostKeyChecking=no",
-                    "-o", "UserKnownHostsFile=/dev/null",
-                    "-o", "LogLevel=ERROR",
-                    "ubuntu@" + node,
-                    sedCommand
-                );
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
-                String nodeOutput = readProcessOutput(process);
-                int exitCode = process.waitFor();
-                
-                log.info("Node {} exit code: {}, output: {}", node, exitCode, nodeOutput);
-                
-                if (exitCode == 0) {
-                    output.append("Updated ").append(node).append("\n");
-                } else {
-                    output.append("Failed to update ").append(node).append(": ").append(nodeOutput).append("\n");
-                    success = false;
-                }
-            }
+            // Cached results belong to the previous DB_DEFAULT
+            resultCache.invalidateAll("dataset changed to " + dataset);
+            healthMonitor.invalidate();
             
             if (success) {
                 return ClusterStatusResponse.builder()
                         .status("success")
                         .message("Dataset changed to: " + dataset)
-                        .output(output.toString())
+                        .output(output)
+                        .nodes(results)
                         .build();
             } else {
                 return ClusterStatusResponse.builder()
                         .status("error")
                         .message("Failed to update dataset on some nodes")
-                        .output(output.toString())
+                        .output(output)
+                        .nodes(results)
                         .build();
             }
             
@@ -663,20 +704,4 @@ public class QueryService {
                     .build();
         }
     }
-
-    /**
-     * Read process output
-     */
-    private String readProcessOutput(Process process) throws IOException {
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-                log.debug("[PROCESS] {}", line);
-            }
-        }
-        return output.toString();
-    }
 }
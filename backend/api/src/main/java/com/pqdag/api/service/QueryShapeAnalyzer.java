@@ -0,0 +1,198 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.QueryModel;
+import com.pqdag.api.dto.TriplePattern;
+
+import java.util.*;
+
+/**
+ * Builds the query model from parsed triple patterns: variables, join graph and shape.
+ *
+ * The shape is read from the query graph, where subjects and objects are nodes
+ * and each pattern is an edge. Variables with the same name are one node; every
+ * constant occurrence is its own leaf, since a shared constant is not a join.
+ * <ul>
+ *   <li>star: one node touches every pattern</li>
+ *   <li>chain: a single path</li>
+ *   <li>snowflake: any other tree (stars joined by paths)</li>
+ *   <li>complex: cycles, or disconnected parts (cartesian products)</li>
+ * </ul>
+ */
+final class QueryShapeAnalyzer {
+
+    private QueryShapeAnalyzer() {
+    }
+
+    /**
+     * @param projection selected variables, or null for SELECT *
+     */
+    static QueryModel analyze(boolean distinct, List<String> projection, Integer limit,
+                              List<TriplePattern> patterns) {
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("Query has no triple patterns");
+        }
+
+        // Variable -> indexes of the patterns using it, in order of first appearance
+        Map<String, List<Integer>> occurrences = new LinkedHashMap<>();
+        int boundTerms = 0;
+        for (int i = 0; i < patterns.size(); i++) {
+            TriplePattern pattern = patterns.get(i);
+            for (String term : new String[]{pattern.getSubject(), pattern.getPredicate(), pattern.getObject()}) {
+                if (isVariable(term)) {
+                    List<Integer> uses = occurrences.computeIfAbsent(term, v -> new ArrayList<>(2));
+                    if (uses.isEmpty() || uses.get(uses.size() - 1) != i) {
+                        uses.add(i);
+                    }
+                }
+            }
+            boundTerms += (isVariable(pattern.getSubject()) ? 0 : 1) + (isVariable(pattern.getObject()) ? 0 : 1);
+        }
+
+        List<String> variables = new ArrayList<>(occurrences.keySet());
+        if (projection != null) {
+            for (String variable : projection) {
+                if (!occurrences.containsKey(variable)) {
+                    throw new IllegalArgumentException("Selected variable " + variable + " is not used in the query");
+                }
+            }
+        }
+
+        Map<String, Integer> joinVariables = new LinkedHashMap<>();
+        Set<List<Integer>> joinEdges = new LinkedHashSet<>();
+        occurrences.forEach((variable, uses) -> {
+            if (uses.size() > 1) {
+                joinVariables.put(variable, uses.size());
+                for (int a = 0; a < uses.size(); a++) {
+                    for (int b = a + 1; b < uses.size(); b++) {
+                        joinEdges.add(List.of(uses.get(a), uses.get(b)));
+                    }
+                }
+            }
+        });
+
+        QueryGraph graph = new QueryGraph(patterns);
+        QueryModel model = QueryModel.builder()
+                .shape(graph.shape())
+                .distinct(distinct)
+                .projection(projection != null ? List.copyOf(projection) : variables)
+                .limit(limit)
+                .triplePatterns(List.copyOf(patterns))
+                .variables(variables)
+                .joinVariables(joinVariables)
+                .joinEdges(new ArrayList<>(joinEdges))
+                .boundTerms(boundTerms)
+                .connectedComponents(graph.components())
+                .build();
+        model.setNormalizedText(normalize(model, projection == null));
+        return model;
+    }
+
+    static boolean isVariable(String term) {
+        return term.charAt(0) == '?';
+    }
+
+    /**
+     * One-line canonical text: prefixes expanded, shorthands and comments removed
+     */
+    private static String normalize(QueryModel model, boolean selectAll) {
+        StringBuilder text = new StringBuilder("SELECT ");
+        if (model.isDistinct()) {
+            text.append("DISTINCT ");
+        }
+        text.append(selectAll ? "*" : String.join(" ", model.getProjection())).append(" WHERE {");
+        for (TriplePattern pattern : model.getTriplePatterns()) {
+            text.append(' ').append(pattern.getSubject())
+                    .append(' ').append(pattern.getPredicate())
+                    .append(' ').append(pattern.getObject()).append(" .");
+        }
+        text.append(" }");
+        if (model.getLimit() != null) {
+            text.append(" LIMIT ").append(model.getLimit());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Undirected multigraph of subject/object nodes with one edge per pattern
+     */
+    private static final class QueryGraph {
+        private final int[] degree;
+        private final int[] parent;
+        private final int edgeCount;
+        private int nodeCount;
+        private int cycles;
+
+        QueryGraph(List<TriplePattern> patterns) {
+            int maxNodes = 2 * patterns.size();
+            degree = new int[maxNodes];
+            parent = new int[maxNodes];
+            for (int i = 0; i < maxNodes; i++) {
+                parent[i] = i;
+            }
+
+            Map<String, Integer> variableNodes = new HashMap<>();
+            for (TriplePattern pattern : patterns) {
+                int s = node(pattern.getSubject(), variableNodes);
+                int o = node(pattern.getObject(), variableNodes);
+                degree[s]++;
+                degree[o]++;
+                if (!union(s, o)) {
+                    cycles++;
+                }
+            }
+            edgeCount = patterns.size();
+        }
+
+        private int node(String term, Map<String, Integer> variableNodes) {
+            if (isVariable(term)) {
+                return variableNodes.computeIfAbsent(term, v -> nodeCount++);
+            }
+            return nodeCount++;
+        }
+
+        int components() {
+            int roots = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                if (find(i) == i) {
+                    roots++;
+                }
+            }
+            return roots;
+        }
+
+        String shape() {
+            if (components() > 1 || cycles > 0) {
+                return "complex";
+            }
+            int maxDegree = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                maxDegree = Math.max(maxDegree, degree[i]);
+            }
+            if (maxDegree == edgeCount) {
+                return "star";
+            }
+            return maxDegree <= 2 ? "chain" : "snowflake";
+        }
+
+        private int find(int node) {
+            while (parent[node] != node) {
+                parent[node] = parent[parent[node]];
+                node = parent[node];
+            }
+            return node;
+        }
+
+        /**
+         * @return false if both nodes were already connected (the edge closes a cycle)
+         */
+        private boolean union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return false;
+            }
+            parent[rootA] = rootB;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.QueryStreamFrame;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Pushes query output to /topic/query/{queryId} as it arrives.
+ *
+ * Lines go through a bounded queue drained by a publisher thread that sends
+ * them in batches. When subscribers fall behind the queue fills up and the
+ * reading thread blocks, which in turn stalls the SSH channel window, so memory
+ * stays bounded whatever the result size. A summary frame closes the stream.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueryStreamPublisher {
+
+    private static final StreamLine END_OF_STREAM = new StreamLine("", false);
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${query.stream.queue-capacity:2000}")
+    private int queueCapacity;
+
+    @Value("${query.stream.batch-size:200}")
+    private int batchSize;
+
+    private final ExecutorService publisherExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "query-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        publisherExecutor.shutdownNow();
+    }
+
+    public QueryStream open(String queryId) {
+        QueryStream stream = new QueryStream(queryId);
+        publisherExecutor.submit(stream::drain);
+        return stream;
+    }
+
+    public static String topic(String queryId) {
+        return "/topic/query/" + queryId;
+    }
+
+    private record StreamLine(String text, boolean result) {
+    }
+
+    /**
+     * Output stream of one query
+     */
+    public class QueryStream implements AutoCloseable {
+
+        private final String queryId;
+        private final BlockingQueue<StreamLine> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private volatile QueryStreamFrame summary;
+        private volatile boolean publisherDone;
+        private long sequence;
+        private int resultCount;
+
+        QueryStream(String queryId) {
+            this.queryId = queryId;
+        }
+
+        /**
+         * Queue a line, blocking while the queue is full
+         */
+        public void accept(String line, boolean isResult) {
+            put(new StreamLine(line, isResult));
+        }
+
+        /**
+         * Send the summary frame once all queued lines are published
+         */
+        public synchronized void complete(QueryStreamFrame summaryFrame) {
+            if (summary != null) {
+                return;
+            }
+            summaryFrame.setType("summary");
+            summaryFrame.setQueryId(queryId);
+            summary = summaryFrame;
+            put(END_OF_STREAM);
+        }
+
+        @Override
+        public void close() {
+            complete(QueryStreamFrame.builder()
+                    .status("error")
+                    .message("Query stream closed before completion")
+                    .build());
+        }
+
+        private void put(StreamLine line) {
+            try {
+                while (!queue.offer(line, 1, TimeUnit.SECONDS)) {
+                    if (publisherDone) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drain() {
+            List<String> output = new ArrayList<>();
+            List<String> results = new ArrayList<>();
+            List<StreamLine> batch = new ArrayList<>(batchSize);
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, batchSize - 1);
+
+                    for (StreamLine line : batch) {
+                        if (line == END_OF_STREAM) {
+                            publishBatch(output, results);
+                            summary.setSequence(++sequence);
+                            summary.setResultCount(resultCount);
+                            send(summary);
+                            return;
+                        }
+                        if (line.result()) {
+                            results.add(line.text().trim());
+                        } else {
+                            output.add(line.text());
+                        }
+                    }
+                    batch.clear();
+                    publishBatch(output, results);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                publisherDone = true;
+            }
+        }
+
+        private void publishBatch(List<String> output, List<String> results) {
+            if (output.isEmpty() && results.isEmpty()) {
+                return;
+            }
+            resultCount += results.size();
+            send(QueryStreamFrame.builder()
+                    .type("batch")
+                    .queryId(queryId)
+                    .sequence(++sequence)
+                    .lines(new ArrayList<>(output))
+                    .results(new ArrayList<>(results))
+                    .resultCount(resultCount)
+                    .build());
+            output.clear();
+            results.clear();
+        }
+
+        private void send(QueryStreamFrame frame) {
+            try {
+                messagingTemplate.convertAndSend(topic(queryId), frame);
+            } catch (MessagingException e) {
+                log.warn("Failed to publish frame {} of query {}: {}", frame.getSequence(), queryId, e.getMessage());
+            }
+        }
+    }
+}
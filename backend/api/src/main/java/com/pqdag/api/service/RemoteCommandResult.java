@@ -0,0 +1,18 @@
+package com.pqdag.api.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Exit code and merged stdout/stderr of a command run over SSH
+ */
+@Data
+@AllArgsConstructor
+public class RemoteCommandResult {
+    private int exitCode;
+    private String output;
+
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+}
@@ -0,0 +1,278 @@
+package com.pqdag.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pqdag.api.dto.PipelineRun;
+import com.pqdag.api.dto.RunComparison;
+import com.pqdag.api.dto.RunTrendPoint;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * History of pipeline runs (fragmentation, allocation, distribution), kept as
+ * one JSON line per run in storage/run_history/runs.jsonl.
+ *
+ * Each run is judged when it is recorded against the median of the last
+ * baseline-runs successful runs of the same type and dataset: throughput for
+ * fragmentation, duration otherwise. A run slower than that baseline by more
+ * than regression-threshold-percent is flagged as a regression.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RunHistoryService {
+
+    public static final String FRAGMENTATION = "fragmentation";
+    public static final String ALLOCATION = "allocation";
+    public static final String DISTRIBUTION = "distribution";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${workspace.root:/app}")
+    private String workspaceRoot;
+
+    @Value("${pipeline.history.baseline-runs:5}")
+    private int baselineRuns;
+
+    // Fewer earlier runs than this give no baseline, so the first runs of a dataset are never flagged
+    @Value("${pipeline.history.min-baseline-runs:3}")
+    private int minBaselineRuns;
+
+    @Value("${pipeline.history.regression-threshold-percent:20}")
+    private double regressionThresholdPercent;
+
+    // Oldest first, as in the file
+    private final List<PipelineRun> runs = new ArrayList<>();
+
+    private Map<String, Object> host;
+
+    @PostConstruct
+    public void init() {
+        host = hostInfo();
+        Path file = historyFile();
+        if (!Files.exists(file)) {
+            return;
+        }
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    runs.add(objectMapper.readValue(line, PipelineRun.class));
+                } catch (IOException e) {
+                    // A line cut short by a crash; the runs around it are still valid
+                    skipped++;
+                }
+            }
+            log.info("Loaded {} pipeline runs from {}{}", runs.size(), file,
+                    skipped > 0 ? " (" + skipped + " unreadable lines skipped)" : "");
+        } catch (IOException e) {
+            log.warn("Failed to load pipeline run history from {}", file, e);
+        }
+    }
+
+    /**
+     * Judge a run against its baseline and append it to the history
+     *
+     * @return the stored run, with id, host and baseline fields filled in
+     */
+    public PipelineRun record(PipelineRun run) {
+        PipelineRun stored;
+        synchronized (this) {
+            PipelineRun.PipelineRunBuilder builder = run.toBuilder()
+                    .id(run.getId() != null ? run.getId() : UUID.randomUUID().toString())
+                    .host(host);
+            judge(run, builder);
+            stored = builder.build();
+            runs.add(stored);
+            append(stored);
+        }
+        if (stored.isRegression()) {
+            log.warn("{} run {} on {} is {}% slower than its baseline ({} {} vs {})", stored.getType(),
+                    stored.getId(), stored.getDataset(), Math.round(stored.getSlowdownPercent()), stored.getMetric(),
+                    Math.round(metricValue(stored)), Math.round(stored.getBaseline()));
+        }
+        return stored;
+    }
+
+    /**
+     * Runs newest first
+     *
+     * @param type        null for all types
+     * @param dataset     null for all datasets
+     * @param regressions true for flagged runs only
+     */
+    public synchronized List<PipelineRun> list(String type, String dataset, boolean regressions, int limit) {
+        List<PipelineRun> result = new ArrayList<>();
+        for (int i = runs.size() - 1; i >= 0 && result.size() < limit; i--) {
+            PipelineRun run = runs.get(i);
+            if ((type == null || type.equals(run.getType()))
+                    && (dataset == null || dataset.equals(run.getDataset()))
+                    && (!regressions || run.isRegression())) {
+                result.add(run);
+            }
+        }
+        return result;
+    }
+
+    public synchronized Optional<PipelineRun> get(String id) {
+        return runs.stream().filter(run -> run.getId().equals(id)).findFirst();
+    }
+
+    /**
+     * Compare runs with the first one
+     *
+     * @throws IllegalArgumentException if fewer than two IDs are given or one is unknown
+     */
+    public synchronized RunComparison compare(List<String> ids) {
+        if (ids.size() < 2) {
+            throw new IllegalArgumentException("At least two run IDs are needed for a comparison");
+        }
+        List<PipelineRun> selected = new ArrayList<>();
+        for (String id : ids) {
+            selected.add(get(id).orElseThrow(() -> new IllegalArgumentException("Unknown run: " + id)));
+        }
+        PipelineRun reference = selected.get(0);
+        List<RunComparison.Entry> entries = new ArrayList<>();
+        for (PipelineRun run : selected.subList(1, selected.size())) {
+            Map<String, Double> phases = new LinkedHashMap<>();
+            if (reference.getPhaseSeconds() != null && run.getPhaseSeconds() != null) {
+                reference.getPhaseSeconds().forEach((phase, seconds) -> {
+                    Double other = run.getPhaseSeconds().get(phase);
+                    if (other != null) {
+                        phases.put(phase, changePercent(seconds, other));
+                    }
+                });
+            }
+            entries.add(RunComparison.Entry.builder()
+                    .run(run)
+                    .durationChangePercent(changePercent((double) reference.getDurationMs(), (double) run.getDurationMs()))
+                    .throughputChangePercent(reference.getThroughput() != null && run.getThroughput() != null
+                            ? changePercent((double) reference.getThroughput(), (double) run.getThroughput())
+                            : null)
+                    .phaseChangePercent(phases)
+                    .build());
+        }
+        return RunComparison.builder()
+                .reference(reference)
+                .runs(entries)
+                .build();
+    }
+
+    /**
+     * Metric of every run of one type and dataset, oldest first
+     */
+    public synchronized List<RunTrendPoint> trend(String type, String dataset) {
+        List<RunTrendPoint> points = new ArrayList<>();
+        for (PipelineRun run : runs) {
+            if (type.equals(run.getType()) && Objects.equals(dataset, run.getDataset())) {
+                points.add(RunTrendPoint.builder()
+                        .runId(run.getId())
+                        .startedAt(run.getStartedAt())
+                        .success(run.isSuccess())
+                        .durationMs(run.getDurationMs())
+                        .throughput(run.getThroughput())
+                        .baseline(run.getBaseline())
+                        .slowdownPercent(run.getSlowdownPercent())
+                        .regression(run.isRegression())
+                        .build());
+            }
+        }
+        return points;
+    }
+
+    private void judge(PipelineRun run, PipelineRun.PipelineRunBuilder builder) {
+        String metric = usesThroughput(run) ? "throughput" : "durationMs";
+        builder.metric(metric);
+        if (!run.isSuccess()) {
+            return;
+        }
+        List<Double> previous = new ArrayList<>();
+        for (int i = runs.size() - 1; i >= 0 && previous.size() < baselineRuns; i--) {
+            PipelineRun other = runs.get(i);
+            if (other.isSuccess() && run.getType().equals(other.getType())
+                    && Objects.equals(run.getDataset(), other.getDataset())
+                    && metric.equals(other.getMetric())) {
+                previous.add(metricValue(other));
+            }
+        }
+        if (previous.size() < Math.max(1, minBaselineRuns)) {
+            return;
+        }
+        Collections.sort(previous);
+        int middle = previous.size() / 2;
+        double baseline = previous.size() % 2 == 1
+                ? previous.get(middle)
+                : (previous.get(middle - 1) + previous.get(middle)) / 2;
+        double value = metric.equals("throughput") ? run.getThroughput() : run.getDurationMs();
+        if (baseline <= 0 || value <= 0) {
+            return;
+        }
+        // Lower throughput or longer duration is slower
+        double slowdown = metric.equals("throughput")
+                ? (baseline / value - 1) * 100
+                : (value / baseline - 1) * 100;
+        builder.baseline(baseline)
+                .baselineRuns(previous.size())
+                .slowdownPercent(Math.round(slowdown * 10) / 10.0)
+                .regression(slowdown > regressionThresholdPercent);
+    }
+
+    private static boolean usesThroughput(PipelineRun run) {
+        return FRAGMENTATION.equals(run.getType()) && run.getThroughput() != null && run.getThroughput() > 0;
+    }
+
+    private static double metricValue(PipelineRun run) {
+        return "throughput".equals(run.getMetric()) ? run.getThroughput() : run.getDurationMs();
+    }
+
+    private static Double changePercent(Double reference, Double value) {
+        if (reference == null || value == null || reference == 0) {
+            return null;
+        }
+        return Math.round((value / reference - 1) * 1000) / 10.0;
+    }
+
+    private void append(PipelineRun run) {
+        Path file = historyFile();
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, objectMapper.writeValueAsString(run) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warn("Failed to append run {} to {}", run.getId(), file, e);
+        }
+    }
+
+    private static Map<String, Object> hostInfo() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        try {
+            info.put("hostname", InetAddress.getLocalHost().getHostName());
+        } catch (IOException e) {
+            info.put("hostname", "unknown");
+        }
+        Runtime runtime = Runtime.getRuntime();
+        info.put("cpus", runtime.availableProcessors());
+        info.put("maxMemoryBytes", runtime.maxMemory());
+        info.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version")
+                + " (" + System.getProperty("os.arch") + ")");
+        info.put("java", System.getProperty("java.version"));
+        return info;
+    }
+
+    private Path historyFile() {
+        return Paths.get(workspaceRoot, "storage", "run_history", "runs.jsonl");
+    }
+}
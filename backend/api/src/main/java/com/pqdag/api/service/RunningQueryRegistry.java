@@ -0,0 +1,209 @@
+package com.pqdag.api.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Queries between admission request and response, so they can be cancelled by
+ * query ID or stopped at their deadline.
+ *
+ * Before the remote client runs, cancelling interrupts the request thread (which
+ * leaves the admission queue or the cluster wait). Once it runs, the kill action
+ * registered by the execution path terminates that one remote process; the
+ * thread then sees the output end, the response reports the cancellation and the
+ * cluster slot is released as usual.
+ */
+@Slf4j
+@Service
+public class RunningQueryRegistry {
+
+    private static final int KILL_ATTEMPTS = 3;
+    private static final long KILL_RETRY_MS = 2000;
+
+    private final Map<String, Execution> executions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "query-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Kill actions make SSH calls; they must not run on the caller's or the deadline thread
+    private final ExecutorService killer = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "query-kill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        deadlines.shutdownNow();
+        killer.shutdownNow();
+    }
+
+    /**
+     * Track a query run by the calling thread; close the execution when the query is done
+     *
+     * @throws QueryRejectedException if a query with the same ID is still running
+     */
+    public Execution register(String queryId) {
+        Execution execution = new Execution(queryId, Thread.currentThread());
+        if (executions.putIfAbsent(queryId, execution) != null) {
+            throw new QueryRejectedException("Query " + queryId + " is already running");
+        }
+        return execution;
+    }
+
+    /**
+     * @return false if no such query is running
+     */
+    public boolean cancel(String queryId) {
+        Execution execution = executions.get(queryId);
+        if (execution == null) {
+            return false;
+        }
+        execution.cancel("cancelled");
+        return true;
+    }
+
+    public List<Map<String, Object>> list() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Execution execution : executions.values()) {
+            synchronized (execution) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("queryId", execution.queryId);
+                entry.put("state", execution.killAction != null ? "running" : "waiting");
+                entry.put("elapsedMs", now - execution.registeredAt);
+                entry.put("deadlineInMs", execution.deadlineAt > 0 ? execution.deadlineAt - now : null);
+                entry.put("cancelReason", execution.cancelReason);
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * One query being handled
+     */
+    public final class Execution implements AutoCloseable {
+        private final String queryId;
+        private final Thread thread;
+        private final long registeredAt = System.currentTimeMillis();
+        private Runnable killAction;
+        private ScheduledFuture<?> deadline;
+        private long timeoutMs;
+        private long deadlineAt;
+        private String cancelReason;
+        private boolean interrupted;
+        private boolean closed;
+
+        private Execution(String queryId, Thread thread) {
+            this.queryId = queryId;
+            this.thread = thread;
+        }
+
+        /**
+         * Cancel the query with reason "timeout" once timeoutMs have passed, if it is still running
+         */
+        public synchronized void startDeadline(long timeoutMs) {
+            if (timeoutMs <= 0 || closed) {
+                return;
+            }
+            this.timeoutMs = timeoutMs;
+            deadlineAt = System.currentTimeMillis() + timeoutMs;
+            deadline = deadlines.schedule(() -> cancel("timeout"), timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * The remote process is about to start; action terminates it
+         *
+         * @throws CancellationException if the query was cancelled already, so it never starts
+         */
+        public synchronized void onKill(Runnable action) {
+            if (cancelReason != null) {
+                throw new CancellationException("Query " + queryId + " " + cancelReason);
+            }
+            killAction = action;
+        }
+
+        /**
+         * "cancelled", "timeout", or null while the query runs normally
+         */
+        public synchronized String getCancelReason() {
+            return cancelReason;
+        }
+
+        public synchronized long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        private void cancel(String reason) {
+            Runnable action;
+            synchronized (this) {
+                if (closed || cancelReason != null) {
+                    return;
+                }
+                cancelReason = reason;
+                action = killAction;
+                if (action == null) {
+                    // Still queued or preparing
+                    interrupted = true;
+                    thread.interrupt();
+                }
+            }
+            log.info("Query {} {}: {}", queryId, reason,
+                    action != null ? "terminating remote client" : "interrupting before execution");
+            if (action != null) {
+                killer.execute(() -> killUntilClosed(action));
+            }
+        }
+
+        /**
+         * The kill may land before the process has fully started; repeat while the query is still open
+         */
+        private void killUntilClosed(Runnable action) {
+            for (int attempt = 1; attempt <= KILL_ATTEMPTS; attempt++) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.warn("Killing query {} failed (attempt {}/{})", queryId, attempt, KILL_ATTEMPTS, e);
+                }
+                synchronized (this) {
+                    try {
+                        if (!closed) {
+                            wait(KILL_RETRY_MS);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+            }
+            log.warn("Query {} still running after {} kill attempts", queryId, KILL_ATTEMPTS);
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                if (interrupted) {
+                    // Do not leak our interrupt into the request thread
+                    Thread.interrupted();
+                }
+            }
+            executions.remove(queryId, this);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.pqdag.api.service;
+
+import com.pqdag.api.dto.QueryModel;
+import com.pqdag.api.dto.TriplePattern;
+
+import java.util.*;
+
+/**
+ * Parser for the SPARQL subset used by the query files: PREFIX declarations,
+ * SELECT [DISTINCT] (variables | *) [WHERE] { basic graph pattern } [LIMIT n].
+ * The graph pattern accepts the "." / ";" / "," shorthands and "a" for rdf:type.
+ *
+ * Single pass over the characters, no regular expressions. Anything outside the
+ * subset (FILTER, OPTIONAL, UNION, ...) is rejected with IllegalArgumentException.
+ */
+public final class SparqlBgpParser {
+
+    private static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+    private final String text;
+    private final Map<String, String> prefixes = new HashMap<>();
+    private int pos;
+
+    private SparqlBgpParser(String text) {
+        this.text = text;
+    }
+
+    public static QueryModel parse(String text) {
+        return new SparqlBgpParser(text).parseQuery();
+    }
+
+    private QueryModel parseQuery() {
+        String keyword = nextWord();
+        while (keyword.equalsIgnoreCase("PREFIX")) {
+            String prefix = nextWord();
+            if (!prefix.endsWith(":")) {
+                throw error("Expected prefix name ending with ':'");
+            }
+            skipWhitespace();
+            prefixes.put(prefix.substring(0, prefix.length() - 1), readIri());
+            keyword = nextWord();
+        }
+        if (!keyword.equalsIgnoreCase("SELECT")) {
+            throw error("Only SELECT queries are supported");
+        }
+
+        boolean distinct = false;
+        List<String> projection = new ArrayList<>();
+        boolean selectAll = false;
+        while (true) {
+            skipWhitespace();
+            char c = peek();
+            if (c == '?' || c == '$') {
+                projection.add(readVariable());
+            } else if (c == '*') {
+                pos++;
+                selectAll = true;
+            } else if (c == '{') {
+                break;
+            } else {
+                String word = nextWord();
+                if (word.equalsIgnoreCase("DISTINCT") || word.equalsIgnoreCase("REDUCED")) {
+                    distinct = distinct || word.equalsIgnoreCase("DISTINCT");
+                } else if (word.equalsIgnoreCase("WHERE")) {
+                    break;
+                } else {
+                    throw error("Unexpected '" + word + "' in SELECT clause");
+                }
+            }
+        }
+        if (!selectAll && projection.isEmpty()) {
+            throw error("SELECT clause has no variables");
+        }
+
+        skipWhitespace();
+        expect('{');
+        List<TriplePattern> patterns = parseGroup();
+
+        Integer limit = null;
+        skipWhitespace();
+        if (pos < text.length()) {
+            String word = nextWord();
+            if (!word.equalsIgnoreCase("LIMIT")) {
+                throw error("Unsupported clause '" + word + "'");
+            }
+            limit = Integer.parseInt(nextWord());
+            skipWhitespace();
+            if (pos < text.length()) {
+                throw error("Unexpected content after LIMIT");
+            }
+        }
+
+        return QueryShapeAnalyzer.analyze(distinct, selectAll ? null : projection, limit, patterns);
+    }
+
+    /**
+     * Triples up to the closing brace
+     */
+    private List<TriplePattern> parseGroup() {
+        List<TriplePattern> patterns = new ArrayList<>();
+        while (true) {
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return patterns;
+            }
+            String subject = readTerm(false);
+            while (true) {
+                String predicate = readTerm(true);
+                while (true) {
+                    patterns.add(new TriplePattern(subject, predicate, readTerm(false)));
+                    skipWhitespace();
+                    if (peek() != ',') {
+                        break;
+                    }
+                    pos++;
+                }
+                if (peek() != ';') {
+                    break;
+                }
+                pos++;
+                skipWhitespace();
+                // A trailing ';' before '.' or '}' is allowed
+                if (peek() == '.' || peek() == '}') {
+                    break;
+                }
+            }
+            skipWhitespace();
+            if (peek() == '.') {
+                pos++;
+            } else if (peek() != '}') {
+                throw error("Expected '.' or '}' after triple pattern");
+            }
+        }
+    }
+
+    private String readTerm(boolean predicatePosition) {
+        skipWhitespace();
+        char c = peek();
+        if (c == '?' || c == '$') {
+            return readVariable();
+        }
+        if (c == '<') {
+            return readIri();
+        }
+        if (c == '"' || c == '\'') {
+            if (predicatePosition) {
+                throw error("Literal in predicate position");
+            }
+            return readLiteral();
+        }
+        String word = nextWord();
+        if (predicatePosition && word.equals("a")) {
+            return RDF_TYPE;
+        }
+        int colon = word.indexOf(':');
+        if (colon >= 0) {
+            String namespace = prefixes.get(word.substring(0, colon));
+            if (namespace == null) {
+                throw error("Undeclared prefix in '" + word + "'");
+            }
+            return namespace.substring(0, namespace.length() - 1) + word.substring(colon + 1) + ">";
+        }
+        if (!predicatePosition && isNumeric(word)) {
+            return word;
+        }
+        throw error("Unsupported term '" + word + "'");
+    }
+
+    private String readVariable() {
+        int start = ++pos;
+        while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+            pos++;
+        }
+        if (pos == start) {
+            throw error("Empty variable name");
+        }
+        // "$x" and "?x" are the same variable
+        return "?" + text.substring(start, pos);
+    }
+
+    private String readIri() {
+        int end = text.indexOf('>', pos);
+        if (peek() != '<' || end < 0) {
+            throw error("Expected IRI");
+        }
+        String iri = text.substring(pos, end + 1);
+        pos = end + 1;
+        return iri;
+    }
+
+    private String readLiteral() {
+        char quote = text.charAt(pos);
+        int start = pos++;
+        while (pos < text.length() && text.charAt(pos) != quote) {
+            if (text.charAt(pos) == '\\') {
+                pos++;
+            }
+            pos++;
+        }
+        if (pos >= text.length()) {
+            throw error("Unterminated literal");
+        }
+        pos++;
+        if (pos < text.length() && text.charAt(pos) == '@') {
+            pos++;
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '-')) {
+                pos++;
+            }
+        } else if (text.startsWith("^^", pos)) {
+            String lexical = text.substring(start, pos);
+            pos += 2;
+            // Datatype may be a prefixed name; store it expanded
+            return lexical + "^^" + readTerm(true);
+        }
+        return text.substring(start, pos);
+    }
+
+    /**
+     * Next run of non-whitespace, non-punctuation characters
+     */
+    private String nextWord() {
+        skipWhitespace();
+        int start = pos;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (Character.isWhitespace(c) || c == '{' || c == '}' || c == ';' || c == ','
+                    || c == '<' || c == '?' || c == '$' || c == '"' || c == '#') {
+                break;
+            }
+            // '.' ends a word unless it sits inside a prefixed name or number
+            if (c == '.' && (pos + 1 >= text.length() || !isNameChar(text.charAt(pos + 1)))) {
+                break;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw error(pos >= text.length() ? "Unexpected end of query" : "Unexpected '" + text.charAt(pos) + "'");
+        }
+        return text.substring(start, pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '#') {
+                while (pos < text.length() && text.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    private static boolean isNumeric(String word) {
+        try {
+            Double.parseDouble(word);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        int line = 1;
+        for (int i = 0; i < Math.min(pos, text.length()); i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new IllegalArgumentException(message + " (line " + line + ")");
+    }
+}
@@ -0,0 +1,372 @@
+package com.pqdag.api.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.keyverifier.KnownHostsServerKeyVerifier;
+import org.apache.sshd.client.keyverifier.RejectAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pool of persistent SSH sessions keyed by host.
+ *
+ * Each host gets a fixed number of sessions that are opened lazily and kept
+ * alive with heartbeats. Commands run as exec channels multiplexed over those
+ * sessions, so a call only pays for a channel open instead of a process fork
+ * and a full handshake. The private key is loaded once at startup.
+ *
+ * Host keys are checked against known_hosts. By default the first key a node
+ * presents is trusted and appended to that file (trust on first use, like
+ * StrictHostKeyChecking=accept-new), so a fresh container fills it on its first
+ * connection to each node; a key that differs from the recorded one is always
+ * rejected. With ssh.strict-host-key-checking=true unknown hosts are rejected
+ * too and known_hosts has to be provisioned beforehand (ssh-keyscan or a
+ * mounted file). Only the local test server is trusted blindly.
+ */
+@Slf4j
+@Service
+public class SshSessionPool {
+
+    @Value("${ssh.user:ubuntu}")
+    private String sshUser;
+
+    @Value("${ssh.port:22}")
+    private int sshPort;
+
+    @Value("${ssh.key-path:/root/.ssh/pqdag}")
+    private String keyPath;
+
+    @Value("${ssh.known-hosts-path:/root/.ssh/known_hosts}")
+    private String knownHostsPath;
+
+    // Reject hosts missing from known_hosts instead of recording their key on first contact
+    @Value("${ssh.strict-host-key-checking:false}")
+    private boolean strictHostKeyChecking;
+
+    @Value("${ssh.pool.sessions-per-host:2}")
+    private int sessionsPerHost;
+
+    @Value("${ssh.pool.max-channels-per-session:8}")
+    private int maxChannelsPerSession;
+
+    @Value("${ssh.pool.connect-timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    // Wait for a free channel when all of a host's sessions are busy; timed commands wait at most their timeout
+    @Value("${ssh.pool.acquire-timeout-ms:60000}")
+    private long acquireTimeoutMs;
+
+    @Value("${ssh.pool.heartbeat-seconds:30}")
+    private long heartbeatSeconds;
+
+    // Test mode: route every host to the embedded sshd started by LocalSshServer
+    @Value("${ssh.local-server.enabled:false}")
+    private boolean localServerEnabled;
+
+    @Value("${ssh.local-server.port:2222}")
+    private int localServerPort;
+
+    private SshClient client;
+
+    // Closes channels of timed commands that run past their deadline
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ssh-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // timeout(1) follows SIGTERM with SIGKILL after this long
+    private static final int KILL_AFTER_SECONDS = 2;
+    // Closing the channel is the fallback when the remote timeout does not end the command
+    private static final long CHANNEL_GRACE_MS = 5000;
+
+    private final Map<String, PooledSession[]> pools = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> roundRobin = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        client = SshClient.setUpDefaultClient();
+        if (localServerEnabled) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+        } else {
+            Path knownHosts = Paths.get(knownHostsPath);
+            if (strictHostKeyChecking) {
+                if (!Files.isReadable(knownHosts)) {
+                    log.warn("known_hosts not found at {}, connections to the cluster nodes will be rejected",
+                            knownHosts);
+                }
+            } else {
+                try {
+                    Files.createDirectories(knownHosts.toAbsolutePath().getParent());
+                } catch (IOException e) {
+                    log.warn("Cannot create {}, first-use host keys will not be recorded: {}",
+                            knownHosts.getParent(), e.getMessage());
+                }
+            }
+            // Unknown keys go to the delegate (accepted ones are appended to known_hosts);
+            // without a ModifiedServerKeyAcceptor a changed key is rejected
+            client.setServerKeyVerifier(new KnownHostsServerKeyVerifier(strictHostKeyChecking
+                    ? RejectAllServerKeyVerifier.INSTANCE
+                    : AcceptAllServerKeyVerifier.INSTANCE, knownHosts));
+        }
+        CoreModuleProperties.HEARTBEAT_INTERVAL.set(client, Duration.ofSeconds(heartbeatSeconds));
+
+        // Provision keys once, instead of copying /root/.ssh to /tmp/.ssh before every call
+        Path key = Paths.get(keyPath);
+        if (Files.isReadable(key)) {
+            try {
+                List<KeyPair> keys = new ArrayList<>();
+                new FileKeyPairProvider(key).loadKeys(null).forEach(keys::add);
+                client.setKeyIdentityProvider(KeyIdentityProvider.wrapKeyPairs(keys));
+                log.info("Loaded {} SSH key(s) from {}", keys.size(), key);
+            } catch (Exception e) {
+                log.error("Failed to load SSH key from {}", key, e);
+            }
+        } else {
+            log.warn("SSH key not found at {}, remote commands will fail to authenticate", key);
+        }
+
+        if (localServerEnabled) {
+            client.addPasswordIdentity("pqdag");
+            log.info("SSH pool in local test mode, all hosts routed to 127.0.0.1:{}", localServerPort);
+        }
+
+        client.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deadlines.shutdownNow();
+        pools.values().forEach(slots -> {
+            for (PooledSession slot : slots) {
+                slot.close();
+            }
+        });
+        if (client != null) {
+            client.stop();
+        }
+    }
+
+    /**
+     * Run a command on a host and collect its merged output
+     */
+    public RemoteCommandResult execute(String host, String command) throws IOException {
+        StringBuilder output = new StringBuilder();
+        int exitCode = executeStreaming(host, command, line -> output.append(line).append("\n"));
+        return new RemoteCommandResult(exitCode, output.toString());
+    }
+
+    /**
+     * Run a command on a host with the given bytes as its stdin (e.g. "cat > file" uploads)
+     */
+    public RemoteCommandResult execute(String host, String command, byte[] input) throws IOException {
+        try (ChannelExec channel = openExec(host, command)) {
+            try (OutputStream stdin = channel.getInvertedIn()) {
+                stdin.write(input);
+            }
+            String output = new String(channel.getInvertedOut().readAllBytes(), StandardCharsets.UTF_8);
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED, ClientChannelEvent.EXIT_STATUS),
+                    TimeUnit.SECONDS.toMillis(5));
+            Integer exitStatus = channel.getExitStatus();
+            return new RemoteCommandResult(exitStatus != null ? exitStatus : -1, output);
+        }
+    }
+
+    /**
+     * Run a command on a host and collect its merged output, killed on the host
+     * if it has not finished within the timeout. The command runs under
+     * timeout(1), so a caller retrying after a timeout never runs next to the
+     * first attempt; the channel is closed a little later as a fallback.
+     *
+     * @throws SocketTimeoutException if the command did not finish in time
+     */
+    public RemoteCommandResult execute(String host, String command, long timeoutMs) throws IOException {
+        long start = System.currentTimeMillis();
+        long timeoutSeconds = Math.max(1, (timeoutMs + 999) / 1000);
+        String bounded = "timeout -k " + KILL_AFTER_SECONDS + " " + timeoutSeconds + " bash -c " + shellQuote(command);
+        StringBuilder output = new StringBuilder();
+        try (ChannelExec channel = openExec(host, bounded, timeoutMs)) {
+            ScheduledFuture<?> deadline = deadlines.schedule(() -> channel.close(true),
+                    timeoutSeconds * 1000 + CHANNEL_GRACE_MS, TimeUnit.MILLISECONDS);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(channel.getInvertedOut(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append("\n");
+                }
+            } catch (IOException e) {
+                if (!deadline.isDone()) {
+                    throw e;
+                }
+            }
+            if (!deadline.cancel(false)) {
+                throw new SocketTimeoutException("Command on " + host + " timed out after " + timeoutMs + " ms");
+            }
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED, ClientChannelEvent.EXIT_STATUS),
+                    TimeUnit.SECONDS.toMillis(5));
+            Integer exitStatus = channel.getExitStatus();
+            // 124: stopped by SIGTERM, 137: needed SIGKILL (only counts once the time is up)
+            if (exitStatus != null && (exitStatus == 124
+                    || exitStatus == 137 && System.currentTimeMillis() - start >= timeoutMs)) {
+                throw new SocketTimeoutException("Command on " + host + " timed out after " + timeoutMs
+                        + " ms and was killed");
+            }
+            return new RemoteCommandResult(exitStatus != null ? exitStatus : -1, output.toString());
+        }
+    }
+
+    private static String shellQuote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Run a command on a host, handing each output line to the consumer as it arrives
+     */
+    public int executeStreaming(String host, String command, Consumer<String> lineConsumer) throws IOException {
+        try (ChannelExec channel = openExec(host, command)) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(channel.getInvertedOut(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineConsumer.accept(line);
+                    log.debug("[SSH {}] {}", host, line);
+                }
+            }
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED, ClientChannelEvent.EXIT_STATUS),
+                    TimeUnit.SECONDS.toMillis(5));
+            Integer exitStatus = channel.getExitStatus();
+            return exitStatus != null ? exitStatus : -1;
+        }
+    }
+
+    /**
+     * Open an exec channel on a pooled session. The caller owns the channel and
+     * must close it; closing it returns the channel slot to the pool.
+     */
+    public ChannelExec openExec(String host, String command) throws IOException {
+        return openExec(host, command, acquireTimeoutMs);
+    }
+
+    /**
+     * @param acquireTimeoutMs how long to wait for a free channel when the host's sessions are busy
+     * @throws SocketTimeoutException if no channel became free in time
+     */
+    public ChannelExec openExec(String host, String command, long acquireTimeoutMs) throws IOException {
+        PooledSession slot = acquire(host, acquireTimeoutMs);
+        ChannelExec channel;
+        try {
+            channel = slot.session(host).createExecChannel(command);
+        } catch (IOException | RuntimeException e) {
+            slot.channels.release();
+            throw e;
+        }
+
+        channel.setRedirectErrorStream(true);
+        channel.addCloseFutureListener(future -> slot.channels.release());
+        try {
+            channel.open().verify(connectTimeoutMs);
+        } catch (IOException | RuntimeException e) {
+            channel.close(true);
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Pick a session slot for the host, preferring one with a free channel
+     */
+    private PooledSession acquire(String host, long timeoutMs) throws IOException {
+        PooledSession[] slots = pools.computeIfAbsent(host, h -> {
+            PooledSession[] created = new PooledSession[Math.max(1, sessionsPerHost)];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new PooledSession(maxChannelsPerSession);
+            }
+            return created;
+        });
+        int start = Math.floorMod(roundRobin.computeIfAbsent(host, h -> new AtomicInteger()).getAndIncrement(),
+                slots.length);
+
+        for (int i = 0; i < slots.length; i++) {
+            PooledSession slot = slots[(start + i) % slots.length];
+            if (slot.channels.tryAcquire()) {
+                return slot;
+            }
+        }
+
+        try {
+            if (!slots[start].channels.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("No free SSH channel to " + host + " within " + timeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an SSH channel to " + host);
+        }
+        return slots[start];
+    }
+
+    /**
+     * One persistent session plus the channel budget multiplexed over it
+     */
+    private final class PooledSession {
+        private final Semaphore channels;
+        private ClientSession session;
+
+        PooledSession(int maxChannels) {
+            this.channels = new Semaphore(Math.max(1, maxChannels));
+        }
+
+        synchronized ClientSession session(String host) throws IOException {
+            if (session != null && session.isOpen()) {
+                return session;
+            }
+
+            String targetHost = localServerEnabled ? "127.0.0.1" : host;
+            int targetPort = localServerEnabled ? localServerPort : sshPort;
+
+            log.info("Opening SSH session to {}@{}:{}", sshUser, targetHost, targetPort);
+            ClientSession created = client.connect(sshUser, targetHost, targetPort)
+                    .verify(connectTimeoutMs)
+                    .getSession();
+            try {
+                created.auth().verify(connectTimeoutMs);
+            } catch (IOException | RuntimeException e) {
+                created.close(true);
+                throw e;
+            }
+            session = created;
+            return session;
+        }
+
+        synchronized void close() {
+            if (session != null) {
+                session.close(true);
+                session = null;
+            }
+        }
+    }
+}
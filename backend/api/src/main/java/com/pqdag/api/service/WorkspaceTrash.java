@@ -0,0 +1,204 @@
+package com.pqdag.api.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Empties workspace directories (rawdata, bindata, outputdata, allocation results)
+ * without making the caller wait for the delete.
+ *
+ * The entries of the directory are renamed into a .trash folder next to it, on
+ * the same file system so each rename is atomic, and a reaper deletes them in
+ * the background, one fork-join task per subdirectory. The directory itself is
+ * never replaced: containers bind-mount these directories and processes may hold
+ * them open, and both stay attached to the original directory. Trash left by a
+ * crash is reaped at startup next to every configured storage directory.
+ */
+@Slf4j
+@Service
+public class WorkspaceTrash {
+
+    static final String TRASH_DIR = ".trash";
+
+    @Value("${workspace.root:/app}")
+    private String workspaceRoot;
+
+    @Value("${app.storage.rawdata-path:}")
+    private String rawdataPath;
+
+    @Value("${app.storage.bindata-path:}")
+    private String bindataPath;
+
+    @Value("${app.storage.outputdata-path:}")
+    private String outputdataPath;
+
+    @Value("${workspace.trash.threads:0}")
+    private int threads;
+
+    private ForkJoinPool deletePool;
+
+    // Runs one trashed tree at a time, each spread over deletePool
+    private final ExecutorService reaper = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "workspace-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        deletePool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        // empty() trashes next to the emptied directory, so look next to each of them
+        Set<Path> trashes = new LinkedHashSet<>();
+        trashes.add(Paths.get(workspaceRoot, "storage", TRASH_DIR).toAbsolutePath().normalize());
+        for (String path : List.of(rawdataPath, bindataPath, outputdataPath)) {
+            if (!path.isBlank()) {
+                trashes.add(Paths.get(path).toAbsolutePath().normalize().resolveSibling(TRASH_DIR));
+            }
+        }
+        for (Path trash : trashes) {
+            if (!Files.isDirectory(trash)) {
+                continue;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(trash)) {
+                for (Path entry : entries) {
+                    reap(entry);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to list leftover trash in {}", trash, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        deletePool.shutdownNow();
+    }
+
+    /**
+     * Leave directory empty, creating it if missing; its old content is deleted in the background
+     */
+    public void empty(Path directory) throws IOException {
+        directory = directory.toAbsolutePath().normalize();
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory);
+            return;
+        }
+        Path target = directory.resolveSibling(TRASH_DIR).resolve(directory.getFileName() + "-"
+                + System.currentTimeMillis() + "-" + sequence.incrementAndGet());
+        emptyInPlace(directory, target);
+    }
+
+    /**
+     * Trashed trees not fully deleted yet
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void emptyInPlace(Path directory, Path target) throws IOException {
+        boolean moved = false;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (!moved) {
+                    Files.createDirectories(target);
+                    moved = true;
+                }
+                try {
+                    Files.move(entry, target.resolve(entry.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    // Not on the same file system as the trash: delete it now
+                    deletePool.invoke(new DeleteTask(entry, new AtomicLong()));
+                }
+            }
+        }
+        if (moved) {
+            reap(target);
+        }
+    }
+
+    private void reap(Path tree) {
+        pending.incrementAndGet();
+        reaper.execute(() -> {
+            long start = System.currentTimeMillis();
+            AtomicLong deleted = new AtomicLong();
+            try {
+                boolean complete = deletePool.invoke(new DeleteTask(tree, deleted));
+                if (complete) {
+                    log.info("Deleted {} ({} entries) in {} ms", tree.getFileName(), deleted.get(),
+                            System.currentTimeMillis() - start);
+                } else {
+                    log.warn("Could not delete all of {}; retried at next startup", tree);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to delete {}", tree, e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Delete a tree: files here, one forked task per subdirectory, then the directory itself
+     */
+    private static final class DeleteTask extends RecursiveTask<Boolean> {
+        private final Path path;
+        private final AtomicLong deleted;
+
+        DeleteTask(Path path, AtomicLong deleted) {
+            this.path = path;
+            this.deleted = deleted;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean complete = true;
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                List<DeleteTask> subdirectories = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            DeleteTask task = new DeleteTask(entry, deleted);
+                            task.fork();
+                            subdirectories.add(task);
+                        } else {
+                            complete &= delete(entry);
+                        }
+                    }
+                } catch (IOException e) {
+                    complete = false;
+                }
+                for (DeleteTask task : subdirectories) {
+                    complete &= task.join();
+                }
+            }
+            return delete(path) && complete;
+        }
+
+        private boolean delete(Path entry) {
+            try {
+                Files.deleteIfExists(entry);
+                deleted.incrementAndGet();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
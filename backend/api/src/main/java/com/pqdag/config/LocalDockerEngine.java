@@ -0,0 +1,377 @@
+package com.pqdag.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.URLDecoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal Docker Engine API on docker.socket-path that stands in for the daemon
+ * in test mode, as LocalSshServer does for the cluster nodes. Containers are
+ * only records; every exec runs locally, whatever container was asked for, and
+ * images report docker.local-engine.entrypoint as their entrypoint.
+ *
+ * Bind mounts keep the daemon's semantics of staying on the directory they were
+ * created with: a holder process is started with each source directory as its
+ * working directory, and exec arguments under a mount target are rewritten to
+ * /proc/<holder>/cwd, which follows that directory even once it was moved away.
+ * The rewritten target is also exported to the exec as MOUNT_<TARGET>.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "docker.local-engine.enabled", havingValue = "true")
+public class LocalDockerEngine {
+
+    @Value("${docker.socket-path:/var/run/docker.sock}")
+    private String socketPath;
+
+    @Value("${docker.local-engine.entrypoint:}")
+    private String[] entrypoint;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Container> containers = new ConcurrentHashMap<>();   // by name
+    private final Map<String, Exec> execs = new ConcurrentHashMap<>();
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "local-docker-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ServerSocketChannel server;
+
+    private static final class Container {
+        final String id = UUID.randomUUID().toString().replace("-", "");
+        final String name;
+        final String image;
+        final JsonNode labels;
+        final Set<Process> processes = ConcurrentHashMap.newKeySet();
+        final Map<String, String> mounts = new LinkedHashMap<>();   // target -> /proc/<holder>/cwd
+        final List<Process> holders = new ArrayList<>();
+        volatile boolean running;
+
+        Container(String name, String image, JsonNode labels) {
+            this.name = name;
+            this.image = image;
+            this.labels = labels;
+        }
+
+        void bind(JsonNode binds) throws IOException {
+            for (JsonNode bind : binds) {
+                String[] parts = bind.asText().split(":");
+                if (parts.length < 2 || !Files.isDirectory(Paths.get(parts[0]))) {
+                    continue;
+                }
+                Process holder = new ProcessBuilder("sleep", "infinity")
+                        .directory(new File(parts[0]))
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                holders.add(holder);
+                mounts.put(parts[1], "/proc/" + holder.pid() + "/cwd");
+            }
+        }
+
+        List<String> resolve(List<String> command) {
+            List<String> resolved = new ArrayList<>();
+            for (String arg : command) {
+                for (Map.Entry<String, String> mount : mounts.entrySet()) {
+                    if (arg.equals(mount.getKey()) || arg.startsWith(mount.getKey() + "/")) {
+                        arg = mount.getValue() + arg.substring(mount.getKey().length());
+                        break;
+                    }
+                }
+                resolved.add(arg);
+            }
+            return resolved;
+        }
+
+        void remove() {
+            kill();
+            holders.forEach(Process::destroyForcibly);
+        }
+
+        void kill() {
+            running = false;
+            for (Process process : processes) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static final class Exec {
+        final String id = UUID.randomUUID().toString().replace("-", "");
+        final Container container;
+        final List<String> command;
+        volatile boolean started;
+        volatile Integer exitCode;
+
+        Exec(Container container, List<String> command) {
+            this.container = container;
+            this.command = command;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Path path = Paths.get(socketPath);
+        Files.deleteIfExists(path);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        connections.execute(this::accept);
+        log.info("Local Docker Engine stand-in listening on {}", path);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        server.close();
+        containers.values().forEach(Container::remove);
+        connections.shutdownNow();
+        Files.deleteIfExists(Paths.get(socketPath));
+    }
+
+    private void accept() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                connections.execute(() -> handle(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Local Docker Engine stand-in failed to accept a connection", e);
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            String requestLine = readLine(in);
+            if (requestLine == null) {
+                return;
+            }
+            int contentLength = 0;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring(15).trim());
+                }
+            }
+            byte[] body = in.readNBytes(contentLength);
+            String[] parts = requestLine.split(" ");
+            String target = parts[1].replaceFirst("^/v[0-9.]+", "");
+            int question = target.indexOf('?');
+            String path = question >= 0 ? target.substring(0, question) : target;
+            String query = question >= 0 ? target.substring(question + 1) : "";
+            route(parts[0], path, query, body, out);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Local Docker Engine stand-in request failed", e);
+        }
+    }
+
+    private void route(String method, String path, String query, byte[] body, OutputStream out) throws IOException {
+        if (path.equals("/_ping")) {
+            respond(out, 200, "OK");
+        } else if (method.equals("GET") && path.startsWith("/images/") && path.endsWith("/json")) {
+            String image = path.substring("/images/".length(), path.length() - "/json".length());
+            Map<String, Object> config = new HashMap<>();
+            config.put("Entrypoint", entrypoint.length > 0 ? List.of(entrypoint) : null);
+            respond(out, 200, Map.of("Id", "sha256:local-" + image, "Config", config));
+        } else if (method.equals("POST") && path.equals("/containers/create")) {
+            createContainer(query, objectMapper.readTree(body), out);
+        } else if (path.startsWith("/containers/")) {
+            String[] segments = path.substring("/containers/".length()).split("/");
+            Container container = find(segments[0]);
+            String action = segments.length > 1 ? segments[1] : "";
+            if (method.equals("POST") && action.equals("exec")) {
+                // Like the SSH stand-in, any container name works: unknown ones run locally too
+                Container target = container != null ? container : new Container(segments[0], "local", null);
+                if (container == null) {
+                    target.running = true;
+                }
+                createExec(target, objectMapper.readTree(body), out);
+            } else if (container == null) {
+                respond(out, 404, Map.of("message", "No such container: " + segments[0]));
+            } else {
+                containerAction(method, action, container, out);
+            }
+        } else if (path.startsWith("/exec/")) {
+            String[] segments = path.substring("/exec/".length()).split("/");
+            Exec exec = execs.get(segments[0]);
+            if (exec == null) {
+                respond(out, 404, Map.of("message", "No such exec instance: " + segments[0]));
+            } else if (method.equals("POST") && segments.length > 1 && segments[1].equals("start")) {
+                startExec(exec, out);
+            } else {
+                Map<String, Object> state = new HashMap<>();
+                state.put("ID", exec.id);
+                state.put("Running", exec.started && exec.exitCode == null);
+                state.put("ExitCode", exec.exitCode);
+                respond(out, 200, state);
+            }
+        } else {
+            respond(out, 404, Map.of("message", "page not found"));
+        }
+    }
+
+    private void createContainer(String query, JsonNode config, OutputStream out) throws IOException {
+        String name = null;
+        for (String param : query.split("&")) {
+            if (param.startsWith("name=")) {
+                name = URLDecoder.decode(param.substring(5), StandardCharsets.UTF_8);
+            }
+        }
+        if (name == null) {
+            name = UUID.randomUUID().toString();
+        }
+        Container container = new Container(name, config.path("Image").asText(), config.get("Labels"));
+        if (containers.putIfAbsent(name, container) != null) {
+            respond(out, 409, Map.of("message", "Conflict. The container name \"/" + name + "\" is already in use"));
+            return;
+        }
+        container.bind(config.path("HostConfig").path("Binds"));
+        respond(out, 201, Map.of("Id", container.id));
+    }
+
+    private void containerAction(String method, String action, Container container, OutputStream out) throws IOException {
+        if (method.equals("GET") && action.equals("json")) {
+            Map<String, Object> config = new HashMap<>();
+            config.put("Image", container.image);
+            config.put("Labels", container.labels);
+            respond(out, 200, Map.of("Id", container.id, "Name", "/" + container.name,
+                    "Config", config, "State", Map.of("Running", container.running)));
+        } else if (method.equals("POST") && action.equals("start")) {
+            boolean wasRunning = container.running;
+            container.running = true;
+            respond(out, wasRunning ? 304 : 204, null);
+        } else if (method.equals("POST") && action.equals("kill")) {
+            if (!container.running) {
+                respond(out, 409, Map.of("message", "Container " + container.id + " is not running"));
+                return;
+            }
+            container.kill();
+            respond(out, 204, null);
+        } else if (method.equals("DELETE") && action.isEmpty()) {
+            container.remove();
+            containers.remove(container.name);
+            respond(out, 204, null);
+        } else {
+            respond(out, 404, Map.of("message", "page not found"));
+        }
+    }
+
+    private void createExec(Container container, JsonNode config, OutputStream out) throws IOException {
+        if (!container.running) {
+            respond(out, 409, Map.of("message", "Container " + container.id + " is not running"));
+            return;
+        }
+        List<String> command = new ArrayList<>();
+        config.path("Cmd").forEach(part -> command.add(part.asText()));
+        Exec exec = new Exec(container, command);
+        execs.put(exec.id, exec);
+        respond(out, 201, Map.of("Id", exec.id));
+    }
+
+    private void startExec(Exec exec, OutputStream out) throws IOException {
+        out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/vnd.docker.multiplexed-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        exec.started = true;
+        Process process;
+        try {
+            ProcessBuilder builder = new ProcessBuilder(exec.container.resolve(exec.command)).redirectErrorStream(true);
+            exec.container.mounts.forEach((target, source) -> builder.environment()
+                    .put("MOUNT_" + target.replaceAll("[^A-Za-z0-9]", "").toUpperCase(Locale.ROOT), source));
+            process = builder.start();
+        } catch (IOException e) {
+            writeFrame(out, 2, (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8), -1);
+            exec.exitCode = 127;
+            return;
+        }
+        exec.container.processes.add(process);
+        try (InputStream output = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = output.read(buffer)) != -1) {
+                writeFrame(out, 1, buffer, n);
+            }
+        } catch (IOException e) {
+            // Client went away; the process keeps running, as a real exec does
+            log.debug("Exec {} stream closed: {}", exec.id, e.toString());
+        }
+        try {
+            exec.exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exec.container.processes.remove(process);
+        }
+    }
+
+    private static void writeFrame(OutputStream out, int stream, byte[] data, int length) throws IOException {
+        int size = length >= 0 ? length : data.length;
+        out.write(new byte[]{(byte) stream, 0, 0, 0,
+                (byte) (size >>> 24), (byte) (size >>> 16), (byte) (size >>> 8), (byte) size});
+        out.write(data, 0, size);
+        out.flush();
+    }
+
+    private Container find(String ref) {
+        Container byName = containers.get(ref);
+        if (byName != null) {
+            return byName;
+        }
+        return containers.values().stream().filter(c -> c.id.equals(ref)).findFirst().orElse(null);
+    }
+
+    private void respond(OutputStream out, int status, Object body) throws IOException {
+        byte[] payload = body == null ? new byte[0]
+                : body instanceof String text ? text.getBytes(StandardCharsets.UTF_8)
+                : objectMapper.writeValueAsBytes(body);
+        String head = "HTTP/1.1 " + status + " " + (status < 300 ? "OK" : status == 304 ? "Not Modified" : "Error") + "\r\n"
+                + "Content-Type: " + (body instanceof String ? "text/plain" : "application/json") + "\r\n"
+                + "Content-Length: " + payload.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(payload);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.US_ASCII);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+}
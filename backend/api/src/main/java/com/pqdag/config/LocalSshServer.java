@@ -0,0 +1,52 @@
+package com.pqdag.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Embedded sshd that stands in for the cluster nodes in test mode.
+ * Every exec request runs locally through /bin/sh, whatever host was asked for.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ssh.local-server.enabled", havingValue = "true")
+public class LocalSshServer {
+
+    @Value("${ssh.local-server.port:2222}")
+    private int port;
+
+    private SshServer server;
+
+    @PostConstruct
+    public void start() throws IOException {
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(port);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(
+                Paths.get(System.getProperty("java.io.tmpdir"), "pqdag-local-sshd.ser")));
+        server.setPasswordAuthenticator((username, password, session) -> true);
+        server.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+        server.setCommandFactory((channel, command) ->
+                new ProcessShellFactory(command, "/bin/sh", "-c", command).createShell(channel));
+        server.start();
+        log.info("Local SSH stand-in listening on 127.0.0.1:{}", port);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (server != null) {
+            server.stop();
+        }
+    }
+}
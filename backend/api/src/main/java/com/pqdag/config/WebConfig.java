@@ -17,7 +17,7 @@ public class WebConfig implements WebMvcConfigurer {
                     "http://192.168.165.27",      // Master node direct
                     "http://192.168.165.27:80"    // Master node with port
                 )
-                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
                 .allowCredentials(true);
     }
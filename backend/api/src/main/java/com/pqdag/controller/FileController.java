@@ -1,7 +1,13 @@
 package com.pqdag.controller;
 
+import com.pqdag.model.RdfFileProfile;
 import com.pqdag.model.UploadResponse;
+import com.pqdag.model.UploadSession;
+import com.pqdag.service.ChunkedUploadService;
 import com.pqdag.service.FileStorageService;
+import com.pqdag.service.RdfProfileService;
+import com.pqdag.service.UploadConflictException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -11,6 +17,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/files")
@@ -19,6 +26,12 @@ public class FileController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private RdfProfileService profileService;
+
     /**
      * Upload RDF files to rawdata directory
      */
@@ -49,6 +62,80 @@ public class FileController {
         }
     }
 
+    /**
+     * Start a resumable upload (fileName and size), or resume the unfinished one for the same file
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<Object> createUpload(@RequestBody UploadSession request) {
+        try {
+            UploadSession session = chunkedUploadService.create(request.getFileName(), request.getSize());
+            return ResponseEntity.status(HttpStatus.CREATED).body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errorBody("Failed to start upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Offset to resume an upload from
+     */
+    @GetMapping("/uploads/{id}")
+    public ResponseEntity<Object> getUpload(@PathVariable String id) {
+        try {
+            return chunkedUploadService.get(id)
+                    .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorBody("Unknown upload " + id)));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errorBody("Failed to read upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Append the raw request body at the offset given in the Upload-Offset header.
+     * Answers 409 with the current offset when the chunk does not continue the upload.
+     */
+    @PatchMapping("/uploads/{id}")
+    public ResponseEntity<Object> appendChunk(@PathVariable String id,
+                                              @RequestHeader("Upload-Offset") long offset,
+                                              HttpServletRequest request) {
+        try {
+            return chunkedUploadService.append(id, offset, request.getInputStream())
+                    .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorBody("Unknown upload " + id)));
+        } catch (UploadConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getSession());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errorBody("Failed to write chunk: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Abandon an upload
+     */
+    @DeleteMapping("/uploads/{id}")
+    public ResponseEntity<Object> cancelUpload(@PathVariable String id) {
+        try {
+            if (!chunkedUploadService.cancel(id)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorBody("Unknown upload " + id));
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Upload cancelled");
+            return ResponseEntity.ok(response);
+        } catch (UploadConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorBody(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errorBody("Failed to cancel upload: " + e.getMessage()));
+        }
+    }
+
     /**
      * List files in rawdata directory
      */
@@ -73,6 +160,45 @@ public class FileController {
         }
     }
 
+    /**
+     * Profiles of the files in rawdata; unchanged files come from the cache unless refresh is set
+     */
+    @GetMapping("/profiles")
+    public ResponseEntity<Map<String, Object>> getProfiles(@RequestParam(defaultValue = "false") boolean refresh) {
+        try {
+            List<RdfFileProfile> profiles = profileService.profileRawdata(refresh);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("profiles", profiles);
+            response.put("totalTriples", profiles.stream().mapToLong(RdfFileProfile::getTriples).sum());
+            response.put("invalidLines", profiles.stream().mapToLong(RdfFileProfile::getInvalidLines).sum());
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errorBody("Failed to profile files: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Profile of one file in rawdata
+     */
+    @GetMapping("/profiles/{fileName:.+}")
+    public ResponseEntity<Object> getProfile(@PathVariable String fileName,
+                                             @RequestParam(defaultValue = "false") boolean refresh) {
+        try {
+            Optional<RdfFileProfile> profile = profileService.profile(fileName, refresh);
+            if (profile.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorBody("No such file in rawdata: " + fileName));
+            }
+            return ResponseEntity.ok(profile.get());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errorBody("Failed to profile " + fileName + ": " + e.getMessage()));
+        }
+    }
+
     /**
      * Clear rawdata directory
      */
@@ -93,4 +219,11 @@ public class FileController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
+
+    private static Map<String, Object> errorBody(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return response;
+    }
 }
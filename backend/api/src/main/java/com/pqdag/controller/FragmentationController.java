@@ -1,13 +1,24 @@
 package com.pqdag.controller;
 
+import com.pqdag.api.dto.JobInfo;
+import com.pqdag.api.service.JobConflictException;
+import com.pqdag.api.service.JobFailedException;
+import com.pqdag.api.service.JobService;
 import com.pqdag.model.FragmentationRequest;
 import com.pqdag.model.FragmentationResult;
+import com.pqdag.model.FragmentationEvent;
+import com.pqdag.service.FragmentationProgressService;
 import com.pqdag.service.FragmentationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/fragmentation")
 public class FragmentationController {
@@ -15,6 +26,12 @@ public class FragmentationController {
     @Autowired
     private FragmentationService fragmentationService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private FragmentationProgressService progressService;
+
     /**
      * Start fragmentation process
      */
@@ -23,13 +40,20 @@ public class FragmentationController {
             @RequestBody(required = false) FragmentationRequest request) {
         try {
             boolean cleanAfter = request != null ? request.isCleanAfter() : true;
-            FragmentationResult result = fragmentationService.executeFragmentation(cleanAfter);
+            FragmentationResult result = jobService.runAndWait("fragmentation", JobService.RESOURCE_PIPELINE,
+                    "Fragmentation", ctx -> fragmentationService.executeFragmentation(cleanAfter, ctx));
             
             if (result.isSuccess()) {
                 return ResponseEntity.ok(result);
             } else {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
             }
+        } catch (JobConflictException e) {
+            FragmentationResult conflictResult = new FragmentationResult();
+            conflictResult.setSuccess(false);
+            conflictResult.setMessage(e.getActiveJob().getDescription() + " is running (job "
+                    + e.getActiveJob().getId() + ")");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(conflictResult);
         } catch (Exception e) {
             FragmentationResult errorResult = new FragmentationResult();
             errorResult.setSuccess(false);
@@ -38,4 +62,49 @@ public class FragmentationController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResult);
         }
     }
+
+    /**
+     * Start fragmentation as a background job; follow it under /api/jobs/{jobId}
+     */
+    @PostMapping("/start/async")
+    public ResponseEntity<JobInfo> startFragmentationJob(
+            @RequestBody(required = false) FragmentationRequest request) {
+        boolean cleanAfter = request != null ? request.isCleanAfter() : true;
+        try {
+            JobInfo job = jobService.submit("fragmentation", JobService.RESOURCE_PIPELINE, "Fragmentation", ctx -> {
+                FragmentationResult result = fragmentationService.executeFragmentation(cleanAfter, ctx);
+                if (!result.isSuccess()) {
+                    throw new JobFailedException(result.getMessage(), result);
+                }
+                return result;
+            });
+            return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job);
+        } catch (JobConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getActiveJob());
+        }
+    }
+
+    /**
+     * Current phase and elapsed time of running encoders; live events are on /topic/fragmentation
+     */
+    @GetMapping("/runs")
+    public ResponseEntity<List<FragmentationEvent>> getActiveRuns() {
+        return ResponseEntity.ok(progressService.getActiveRuns());
+    }
+
+    /**
+     * Stop a running encoder, e.g. one reported as stalled
+     */
+    @PostMapping("/runs/{runId}/abort")
+    public ResponseEntity<Map<String, Object>> abortRun(@PathVariable String runId) {
+        Map<String, Object> response = new HashMap<>();
+        if (!progressService.abort(runId, "aborted by operator")) {
+            response.put("success", false);
+            response.put("message", "No running encoder with ID " + runId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        response.put("success", true);
+        response.put("message", "Encoder run " + runId + " is being stopped");
+        return ResponseEntity.ok(response);
+    }
 }
@@ -0,0 +1,28 @@
+package com.pqdag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a fragmentation run, published on /topic/fragmentation and
+ * /topic/fragmentation/{runId}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FragmentationEvent {
+    private String runId;
+    private long sequence;
+    private String type;            // started, phase-started, phase-finished, triples, stalled,
+                                    // resumed, aborting, then finished, failed or aborted
+    private String phase;           // encoding, dictionaries, sorting, fragmentation, reencoding
+    private Double phaseSeconds;    // duration reported by the encoder, on phase-finished
+    private long elapsedMs;         // since the encoder started
+    private long idleMs;            // since the last output line
+    private Long triples;
+    private int phasesDone;
+    private int phaseCount;
+    private String message;
+    private long timestamp;
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,4 +24,7 @@ public class FragmentationResult {
     private Double sortingTime;
     private Double fragmentationTime;
     private Double reencodingTime;
+
+    // Profiles of the rawdata files that were encoded
+    private List<RdfFileProfile> inputProfiles;
 }
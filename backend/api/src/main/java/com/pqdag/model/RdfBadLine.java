@@ -0,0 +1,14 @@
+package com.pqdag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RdfBadLine {
+    private long lineNumber;   // 1-based
+    private String reason;
+    private String text;       // the line, cut at 200 characters
+}
@@ -0,0 +1,37 @@
+package com.pqdag.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class RdfFileProfile {
+    private String fileName;
+    private long sizeBytes;
+    private long lastModified;          // the profile is reused while size and modification time match
+    private String format;              // "n-triples", or "turtle" (lines counted, not validated)
+    private boolean validated;
+
+    private long lines;
+    private long triples;
+    private long blankLines;
+    private long commentLines;
+    private long invalidLines;
+    private List<RdfBadLine> badLines;  // first lines that failed to parse
+
+    private long distinctSubjects;      // estimated (HyperLogLog, about 1% error)
+    private long distinctObjects;       // estimated
+    private long iriObjects;
+    private long literalObjects;
+    private long blankNodeObjects;
+    private int distinctPredicates;
+    private Map<String, Long> predicates;  // triples per predicate, most frequent first
+    private boolean predicatesTruncated;   // more distinct predicates than were tracked
+
+    private int splits;
+    private long durationMs;
+    private long profiledAt;
+}
@@ -0,0 +1,20 @@
+package com.pqdag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    private String id;
+    private String fileName;
+    private long size;
+    private long offset;             // bytes received so far; the next chunk must start here
+    private boolean complete;        // the plain file is in rawdata
+    private String status;           // receiving, decompressing, complete or error
+    private String compression;      // gzip, bzip2, zstd; null for plain files
+    private Long decompressedBytes;  // plain bytes written so far, for compressed uploads
+    private String error;
+}
@@ -0,0 +1,492 @@
+package com.pqdag.service;
+
+import com.pqdag.model.UploadSession;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads into the rawdata directory, one chunk per request.
+ *
+ * A session is created with the file name and total size. Each chunk names the
+ * offset it starts at and must continue exactly where the previous one ended;
+ * its body is streamed from the request straight into the partial file through
+ * a FileChannel, so nothing is spooled or copied. The partial file lives in
+ * storage/uploads (next to rawdata, so fragmentation never sees it) and its
+ * size is the offset: an interrupted chunk keeps what was received and a
+ * session survives a restart. Once the last byte arrives the file is renamed
+ * into rawdata.
+ *
+ * Compressed dumps (.gz, .bz2, .zst) are decompressed while they arrive: a
+ * thread per upload follows the partial file as it grows and writes plain
+ * N-Triples, so concurrent uploads decompress on separate cores and the
+ * plain file is ready shortly after the last chunk.
+ */
+@Slf4j
+@Service
+public class ChunkedUploadService {
+
+    public static final String STATUS_RECEIVING = "receiving";
+    public static final String STATUS_DECOMPRESSING = "decompressing";
+    public static final String STATUS_COMPLETE = "complete";
+    public static final String STATUS_ERROR = "error";
+
+    private static final long TRANSFER_BLOCK = 8L * 1024 * 1024;
+    private static final int FOLLOW_BUFFER = 1 << 20;
+
+    @Value("${app.storage.rawdata-path}")
+    private String rawdataPath;
+
+    @Value("${app.storage.uploads-path}")
+    private String uploadsPath;
+
+    @Value("${app.upload.session-expiry-hours:48}")
+    private long sessionExpiryHours;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    // One thread per compressed upload; they mostly wait for the next chunk
+    private final ExecutorService decompressors = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "upload-decompress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final class Session {
+        final String id;
+        final String fileName;
+        final long size;
+        final RdfCompression compression;
+        final ReentrantLock writeLock = new ReentrantLock();
+        // Guarded by the session's monitor
+        String status = STATUS_RECEIVING;
+        String error;
+        long decompressedBytes;
+        long finishedAt;
+        boolean received;
+        boolean cancelled;
+
+        Session(String id, String fileName, long size) {
+            this.id = id;
+            this.fileName = fileName;
+            this.size = size;
+            this.compression = RdfCompression.of(fileName);
+        }
+    }
+
+    /**
+     * Pick up sessions left in the uploads directory by a previous run
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        Path dir = uploadsDir();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path metadata : files.filter(p -> p.toString().endsWith(".properties")).toList()) {
+                Properties properties = new Properties();
+                try (Reader reader = Files.newBufferedReader(metadata)) {
+                    properties.load(reader);
+                    String id = properties.getProperty("id");
+                    Session session = new Session(id, properties.getProperty("fileName"),
+                            Long.parseLong(properties.getProperty("size")));
+                    sessions.put(id, session);
+                    if (session.compression != RdfCompression.NONE) {
+                        // Decompression state is not kept; start over from the first byte
+                        decompressors.execute(() -> decompress(session));
+                    }
+                    if (Files.size(partPath(id)) == session.size) {
+                        received(session);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Unreadable leftovers are removed with the next expiry sweep
+                    log.warn("Cannot restore upload session from {}: {}", metadata, e.toString());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        decompressors.shutdownNow();
+    }
+
+    /**
+     * Start an upload, or resume the unfinished one for the same file name and size
+     */
+    public UploadSession create(String fileName, long size) throws IOException {
+        validateFileName(fileName);
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid file size: " + size);
+        }
+        purgeExpired();
+        synchronized (sessions) {
+            for (Session session : sessions.values()) {
+                if (session.fileName.equals(fileName) && session.size == size && STATUS_RECEIVING.equals(status(session))) {
+                    return toView(session);
+                }
+            }
+            Session session = new Session(UUID.randomUUID().toString(), fileName, size);
+            Files.createDirectories(uploadsDir());
+            Files.createFile(partPath(session.id));
+            Properties properties = new Properties();
+            properties.setProperty("id", session.id);
+            properties.setProperty("fileName", fileName);
+            properties.setProperty("size", Long.toString(size));
+            try (Writer writer = Files.newBufferedWriter(metadataPath(session.id))) {
+                properties.store(writer, null);
+            }
+            sessions.put(session.id, session);
+            if (session.compression != RdfCompression.NONE) {
+                decompressors.execute(() -> decompress(session));
+            }
+            if (size == 0) {
+                received(session);
+            }
+            return toView(session);
+        }
+    }
+
+    public Optional<UploadSession> get(String id) throws IOException {
+        Session session = find(id);
+        return session != null ? Optional.of(toView(session)) : Optional.empty();
+    }
+
+    /**
+     * Write one chunk read from body, starting at offset
+     *
+     * @return the session after the chunk; status tells whether the file is in rawdata yet
+     * @throws UploadConflictException if offset is not the current offset or another chunk is being written
+     */
+    public Optional<UploadSession> append(String id, long offset, InputStream body) throws IOException {
+        Session session = find(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (!session.writeLock.tryLock()) {
+            throw new UploadConflictException("Another chunk of upload " + id + " is still being written", toView(session));
+        }
+        try {
+            if (!STATUS_RECEIVING.equals(status(session))) {
+                throw new UploadConflictException("Upload " + id + " has received all its bytes", toView(session));
+            }
+            Path part = partPath(id);
+            long current = Files.size(part);
+            if (offset != current) {
+                throw new UploadConflictException("Chunk starts at " + offset + " but upload " + id
+                        + " is at " + current, toView(session));
+            }
+            long position = current;
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE);
+                 ReadableByteChannel source = Channels.newChannel(body)) {
+                long transferred;
+                while (position < session.size
+                        && (transferred = channel.transferFrom(source, position,
+                        Math.min(TRANSFER_BLOCK, session.size - position))) > 0) {
+                    position += transferred;
+                    synchronized (session) {
+                        // Wake the decompressor
+                        session.notifyAll();
+                    }
+                }
+                if (position == session.size && body.read() != -1) {
+                    throw new IllegalArgumentException("Chunk extends past the declared size of " + session.size + " bytes");
+                }
+            }
+            if (position == session.size) {
+                received(session);
+            }
+            return Optional.of(toView(session));
+        } finally {
+            session.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Abandon an upload and delete what was received
+     *
+     * @return false if no such upload exists
+     * @throws UploadConflictException if a chunk is being written
+     */
+    public boolean cancel(String id) throws IOException {
+        Session session = sessions.get(id);
+        if (session == null) {
+            return false;
+        }
+        if (!session.writeLock.tryLock()) {
+            throw new UploadConflictException("A chunk of upload " + id + " is still being written", toView(session));
+        }
+        try {
+            boolean decompressing;
+            synchronized (session) {
+                sessions.remove(id);
+                if (STATUS_COMPLETE.equals(session.status) || STATUS_ERROR.equals(session.status)) {
+                    // Nothing left on disk but the result in rawdata
+                    return true;
+                }
+                session.cancelled = true;
+                session.notifyAll();
+                decompressing = session.compression != RdfCompression.NONE;
+            }
+            // A decompressor cleans up after itself once it sees the cancel
+            if (!decompressing) {
+                deleteSessionFiles(id);
+            }
+        } finally {
+            session.writeLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * All bytes are in: a plain file moves to rawdata, a compressed one waits for its decompressor
+     */
+    private void received(Session session) throws IOException {
+        synchronized (session) {
+            session.received = true;
+            session.notifyAll();
+            if (session.compression != RdfCompression.NONE) {
+                if (STATUS_RECEIVING.equals(session.status)) {
+                    session.status = STATUS_DECOMPRESSING;
+                }
+                return;
+            }
+        }
+        moveToRawdata(partPath(session.id), session.fileName);
+        Files.deleteIfExists(metadataPath(session.id));
+        finished(session, STATUS_COMPLETE, null);
+    }
+
+    /**
+     * Follow the partial file of a compressed upload and write the plain file next to it
+     */
+    private void decompress(Session session) {
+        Path output = outputPath(session.id);
+        try {
+            try (InputStream in = new BufferedInputStream(new GrowingFileInputStream(session), FOLLOW_BUFFER);
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), FOLLOW_BUFFER)) {
+                session.compression.copy(in, out, bytes -> {
+                    synchronized (session) {
+                        session.decompressedBytes = bytes;
+                    }
+                });
+            }
+            moveToRawdata(output, session.compression.plainName(session.fileName));
+            deleteSessionFiles(session.id);
+            finished(session, STATUS_COMPLETE, null);
+        } catch (Exception e) {
+            if (!isCancelled(session)) {
+                finished(session, STATUS_ERROR,
+                        "Decompression failed: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+            try {
+                Files.deleteIfExists(output);
+                // A corrupt stream cannot be resumed; the upload has to start over
+                deleteSessionFiles(session.id);
+            } catch (IOException cleanup) {
+                // Removed with the next expiry sweep
+                log.warn("Cannot clean up failed upload {}: {}", session.id, cleanup.getMessage());
+            }
+        }
+    }
+
+    private static void finished(Session session, String status, String error) {
+        synchronized (session) {
+            session.status = status;
+            session.error = error;
+            session.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static boolean isCancelled(Session session) {
+        synchronized (session) {
+            return session.cancelled;
+        }
+    }
+
+    private void moveToRawdata(Path source, String fileName) throws IOException {
+        Path target = Paths.get(rawdataPath).toAbsolutePath().normalize().resolve(fileName);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Uploads directory configured on another file system: this one is a copy
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forget finished sessions, and drop ones that received nothing for session-expiry-hours
+     */
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - sessionExpiryHours * 3_600_000L;
+        for (Session session : sessions.values()) {
+            String status;
+            long finishedAt;
+            synchronized (session) {
+                status = session.status;
+                finishedAt = session.finishedAt;
+            }
+            try {
+                if (STATUS_COMPLETE.equals(status) || STATUS_ERROR.equals(status)) {
+                    if (finishedAt < cutoff) {
+                        sessions.remove(session.id);
+                    }
+                } else if (STATUS_RECEIVING.equals(status) && !session.writeLock.isLocked()) {
+                    Path part = partPath(session.id);
+                    if (!Files.exists(part) || Files.getLastModifiedTime(part).toMillis() < cutoff) {
+                        cancel(session.id);
+                    }
+                }
+            } catch (IOException | UploadConflictException e) {
+                // Retried with the next sweep
+                log.warn("Cannot expire upload {}: {}", session.id, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Session by id; a receiving one whose partial file was deleted underneath us is dropped
+     */
+    private Session find(String id) throws IOException {
+        Session session = sessions.get(id);
+        if (session != null && STATUS_RECEIVING.equals(status(session)) && !Files.exists(partPath(id))) {
+            cancel(id);
+            return null;
+        }
+        return session;
+    }
+
+    private void deleteSessionFiles(String id) throws IOException {
+        Files.deleteIfExists(partPath(id));
+        Files.deleteIfExists(metadataPath(id));
+    }
+
+    private static String status(Session session) {
+        synchronized (session) {
+            return session.status;
+        }
+    }
+
+    private UploadSession toView(Session session) throws IOException {
+        synchronized (session) {
+            long offset = session.received || !STATUS_RECEIVING.equals(session.status)
+                    ? session.size
+                    : Files.size(partPath(session.id));
+            boolean compressed = session.compression != RdfCompression.NONE;
+            return new UploadSession(session.id, session.fileName, session.size, offset,
+                    STATUS_COMPLETE.equals(session.status), session.status,
+                    compressed ? session.compression.name().toLowerCase() : null,
+                    compressed ? session.decompressedBytes : null,
+                    session.error);
+        }
+    }
+
+    private static void validateFileName(String fileName) {
+        RdfCompression.of(fileName);
+        if (fileName.contains("/") || fileName.contains("\\") || fileName.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+    }
+
+    private Path uploadsDir() {
+        return Paths.get(uploadsPath).toAbsolutePath().normalize();
+    }
+
+    private Path partPath(String id) {
+        return uploadsDir().resolve(id + ".part");
+    }
+
+    private Path metadataPath(String id) {
+        return uploadsDir().resolve(id + ".properties");
+    }
+
+    private Path outputPath(String id) {
+        return uploadsDir().resolve(id + ".out");
+    }
+
+    /**
+     * Reads a partial file while chunks are still being appended to it: at the
+     * current end it waits for the next chunk instead of reporting end of file
+     */
+    private final class GrowingFileInputStream extends InputStream {
+        private final Session session;
+        private final FileChannel channel;
+        private long position;
+
+        GrowingFileInputStream(Session session) throws IOException {
+            this.session = session;
+            this.channel = FileChannel.open(partPath(session.id), StandardOpenOption.READ);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+                if (read > 0) {
+                    position += read;
+                    return read;
+                }
+                synchronized (session) {
+                    if (session.cancelled) {
+                        throw new IOException("Upload " + session.id + " cancelled");
+                    }
+                    if (session.received) {
+                        if (position >= channel.size()) {
+                            return -1;
+                        }
+                    } else {
+                        try {
+                            session.wait(1000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Decompression of upload " + session.id + " interrupted");
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package com.pqdag.service;
 
+import com.pqdag.api.service.WorkspaceTrash;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 public class FileStorageService {
@@ -25,8 +36,27 @@ public class FileStorageService {
     @Value("${app.storage.outputdata-path}")
     private String outputdataPath;
 
+    @Value("${app.storage.uploads-path}")
+    private String uploadsPath;
+
+    @Autowired
+    private WorkspaceTrash workspaceTrash;
+
+    private final ExecutorService decompressPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "upload-decompress");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    @PreDestroy
+    public void shutdown() {
+        decompressPool.shutdownNow();
+    }
+
     /**
-     * Upload files to rawdata directory
+     * Upload files to rawdata directory.
+     * Compressed files (.gz, .bz2, .zst) are decompressed in parallel, one file per core.
      */
     public List<String> uploadFiles(MultipartFile[] files) throws IOException {
         List<String> uploadedFiles = new ArrayList<>();
@@ -37,6 +67,7 @@ public class FileStorageService {
             Files.createDirectories(rawdataDir);
         }
 
+        List<Future<?>> decompressions = new ArrayList<>();
         for (MultipartFile file : files) {
             if (file.isEmpty()) {
                 continue;
@@ -44,19 +75,60 @@ public class FileStorageService {
 
             // Validate file extension
             String fileName = file.getOriginalFilename();
-            if (fileName == null || (!fileName.endsWith(".nt") && !fileName.endsWith(".ttl"))) {
-                throw new IOException("Invalid file format. Only .nt and .ttl files are allowed: " + fileName);
+            RdfCompression compression;
+            try {
+                compression = RdfCompression.of(fileName);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
             }
 
             // Save file
-            Path targetPath = rawdataDir.resolve(fileName);
-            Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-            uploadedFiles.add(fileName);
+            String plainName = compression.plainName(fileName);
+            Path targetPath = rawdataDir.resolve(plainName);
+            if (compression == RdfCompression.NONE) {
+                Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                decompressions.add(decompressPool.submit(() -> decompressInto(file, compression, targetPath)));
+            }
+            uploadedFiles.add(plainName);
+        }
+
+        for (Future<?> decompression : decompressions) {
+            try {
+                decompression.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing uploads");
+            } catch (ExecutionException e) {
+                throw new IOException("Decompression failed: " + e.getCause().getMessage(), e.getCause());
+            }
         }
 
         return uploadedFiles;
     }
 
+    /**
+     * Decompress into the uploads directory and rename, so rawdata never holds a half-written file
+     */
+    private Void decompressInto(MultipartFile file, RdfCompression compression, Path targetPath) throws IOException {
+        Path uploadsDir = Paths.get(uploadsPath).toAbsolutePath().normalize();
+        Files.createDirectories(uploadsDir);
+        Path temp = uploadsDir.resolve(UUID.randomUUID() + ".decompressing");
+        try (InputStream in = file.getInputStream();
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 20)) {
+            compression.copy(in, out, bytes -> { });
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException(file.getOriginalFilename() + ": " + e.getMessage(), e);
+        }
+        try {
+            Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return null;
+    }
+
     /**
      * Get total size of files in rawdata directory
      */
@@ -96,43 +168,16 @@ public class FileStorageService {
     }
 
     /**
-     * Clear rawdata directory
+     * Clear rawdata directory; files are deleted in the background
      */
     public void clearRawdata() throws IOException {
-        Path rawdataDir = Paths.get(rawdataPath).toAbsolutePath().normalize();
-        if (!Files.exists(rawdataDir)) {
-            return;
-        }
-
-        Files.walk(rawdataDir)
-                .filter(Files::isRegularFile)
-                .forEach(p -> {
-                    try {
-                        Files.delete(p);
-                    } catch (IOException e) {
-                        // Ignore
-                    }
-                });
+        workspaceTrash.empty(Paths.get(rawdataPath));
     }
 
     /**
-     * Clear bindata directory (temporary files and subdirectories)
+     * Clear bindata directory (temporary files and subdirectories); deleted in the background
      */
     public void clearBindata() throws IOException {
-        Path bindataDir = Paths.get(bindataPath).toAbsolutePath().normalize();
-        if (!Files.exists(bindataDir)) {
-            return;
-        }
-
-        Files.walk(bindataDir)
-                .sorted(Comparator.reverseOrder()) // Delete files before directories
-                .filter(p -> !p.equals(bindataDir)) // Keep the root directory
-                .forEach(p -> {
-                    try {
-                        Files.delete(p);
-                    } catch (IOException e) {
-                        // Ignore
-                    }
-                });
+        workspaceTrash.empty(Paths.get(bindataPath));
     }
 }
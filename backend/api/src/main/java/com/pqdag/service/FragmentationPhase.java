@@ -0,0 +1,75 @@
+package com.pqdag.service;
+
+import com.pqdag.model.FragmentationResult;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Phases of the encoder run, in the order it completes them. Each one ends with
+ * a "Done with ... in N sec" line giving its duration.
+ */
+public enum FragmentationPhase {
+    // Example: "Done with data encoding in 0.120111 sec"
+    ENCODING("encoding", "Done with data encoding in\\s*([0-9.]+)\\s*sec",
+            FragmentationResult::setEncodingTime, FragmentationResult::getEncodingTime),
+
+    // Example: "Done with dumping dictionaries in 0.00635933 sec"
+    DICTIONARIES("dictionaries", "Done with dumping dictionaries in\\s*([0-9.]+)\\s*sec",
+            FragmentationResult::setDictionariesTime, FragmentationResult::getDictionariesTime),
+
+    // Example: "Done with Sorting in 0.0997743 sec"
+    SORTING("sorting", "Done with Sorting in\\s*([0-9.]+)\\s*sec",
+            FragmentationResult::setSortingTime, FragmentationResult::getSortingTime),
+
+    // Example: "Done with Fragmentation in 0.517501 sec"
+    FRAGMENTATION("fragmentation", "Done with Fragmentation in\\s*([0-9.]+)\\s*sec",
+            FragmentationResult::setFragmentationTime, FragmentationResult::getFragmentationTime),
+
+    // Example: "Done with Fragments re-encoding in 0.655355 sec"
+    REENCODING("reencoding", "Done with Fragments re-encoding in\\s*([0-9.]+)\\s*sec",
+            FragmentationResult::setReencodingTime, FragmentationResult::getReencodingTime);
+
+    private final String label;
+    private final Pattern donePattern;
+    private final BiConsumer<FragmentationResult, Double> setter;
+    private final Function<FragmentationResult, Double> getter;
+
+    FragmentationPhase(String label, String donePattern,
+                       BiConsumer<FragmentationResult, Double> setter, Function<FragmentationResult, Double> getter) {
+        this.label = label;
+        this.donePattern = Pattern.compile(donePattern);
+        this.setter = setter;
+        this.getter = getter;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Phase duration in seconds if line reports the end of this phase, else null
+     */
+    public Double parseDone(String line) {
+        Matcher m = donePattern.matcher(line);
+        return m.find() ? Double.valueOf(m.group(1)) : null;
+    }
+
+    public void setTiming(FragmentationResult result, double seconds) {
+        setter.accept(result, seconds);
+    }
+
+    public Double getTiming(FragmentationResult result) {
+        return getter.apply(result);
+    }
+
+    /**
+     * Phase the encoder moves on to after this one, or null after the last
+     */
+    public FragmentationPhase next() {
+        FragmentationPhase[] phases = values();
+        return ordinal() + 1 < phases.length ? phases[ordinal() + 1] : null;
+    }
+}
@@ -0,0 +1,268 @@
+package com.pqdag.service;
+
+import com.pqdag.api.service.JobContext;
+import com.pqdag.model.FragmentationEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live progress of encoder runs.
+ *
+ * The encoder output is parsed line by line while it runs; every phase start and
+ * end, the triple count and the final outcome are published as events on
+ * /topic/fragmentation (all runs) and /topic/fragmentation/{runId}. A watchdog
+ * reports a run whose output went quiet for stall-warning-minutes and, if
+ * stall-abort-minutes is set, aborts it.
+ */
+@Service
+public class FragmentationProgressService {
+
+    private static final String TOPIC = "/topic/fragmentation";
+    private static final int PHASE_COUNT = FragmentationPhase.values().length;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${app.fragmentation.stall-warning-minutes:10}")
+    private long stallWarningMinutes;
+
+    @Value("${app.fragmentation.stall-abort-minutes:0}")
+    private long stallAbortMinutes;
+
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fragmentation-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        watchdog.scheduleWithFixedDelay(this::checkStalls, 15, 15, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    public static String topic(String runId) {
+        return TOPIC + "/" + runId;
+    }
+
+    /**
+     * Start tracking an encoder run; close the run when the encoder has exited
+     */
+    public Run start(JobContext job) {
+        Run run = new Run(UUID.randomUUID().toString(), job);
+        runs.put(run.runId, run);
+        run.publish("started", FragmentationPhase.ENCODING, null, "Encoder started");
+        return run;
+    }
+
+    /**
+     * Latest state of every running encoder
+     */
+    public List<FragmentationEvent> getActiveRuns() {
+        List<FragmentationEvent> active = new ArrayList<>();
+        for (Run run : runs.values()) {
+            active.add(run.snapshot());
+        }
+        return active;
+    }
+
+    /**
+     * @return false if no such run is active
+     */
+    public boolean abort(String runId, String reason) {
+        Run run = runs.get(runId);
+        return run != null && run.abort(reason);
+    }
+
+    private void checkStalls() {
+        long now = System.currentTimeMillis();
+        for (Run run : runs.values()) {
+            long idleMs = now - run.lastOutputAt();
+            if (stallAbortMinutes > 0 && idleMs >= TimeUnit.MINUTES.toMillis(stallAbortMinutes)) {
+                run.abort("no encoder output for " + TimeUnit.MILLISECONDS.toMinutes(idleMs) + " minutes");
+            } else if (stallWarningMinutes > 0 && idleMs >= TimeUnit.MINUTES.toMillis(stallWarningMinutes)) {
+                run.reportStall(idleMs);
+            }
+        }
+    }
+
+    /**
+     * One encoder run
+     */
+    public final class Run implements AutoCloseable {
+        private final String runId;
+        private final JobContext job;
+        private final long startedAt = System.currentTimeMillis();
+        private long lastOutputAt = startedAt;
+        private long sequence;
+        private FragmentationPhase phase = FragmentationPhase.ENCODING;   // null once all phases are done
+        private int phasesDone;
+        private Long triples;
+        private boolean stallReported;
+        private Runnable abortAction;
+        private String abortReason;
+        private boolean closed;
+
+        private Run(String runId, JobContext job) {
+            this.runId = runId;
+            this.job = job;
+        }
+
+        public String getRunId() {
+            return runId;
+        }
+
+        /**
+         * Action stopping the encoder when the run is aborted
+         */
+        public synchronized void onAbort(Runnable action) {
+            abortAction = action;
+        }
+
+        /**
+         * Reason the run was aborted, or null
+         */
+        public synchronized String getAbortReason() {
+            return abortReason;
+        }
+
+        /**
+         * The encoder printed a line
+         */
+        public void output() {
+            boolean resumed;
+            synchronized (this) {
+                lastOutputAt = System.currentTimeMillis();
+                resumed = stallReported;
+                stallReported = false;
+            }
+            if (resumed) {
+                publish("resumed", currentPhase(), null, "Encoder output resumed");
+            }
+        }
+
+        public void phaseFinished(FragmentationPhase finished, double seconds) {
+            FragmentationPhase next;
+            int done;
+            synchronized (this) {
+                phasesDone = Math.max(phasesDone, finished.ordinal() + 1);
+                done = phasesDone;
+                next = finished.next();
+                phase = next;
+            }
+            publish("phase-finished", finished, seconds, null);
+            if (next != null) {
+                publish("phase-started", next, null, null);
+                job.progress(next.getLabel(), 0.05 + 0.9 * done / PHASE_COUNT);
+            } else {
+                job.progress("finishing", 0.95);
+            }
+        }
+
+        public void triples(long count) {
+            synchronized (this) {
+                triples = count;
+            }
+            publish("triples", currentPhase(), null, null);
+        }
+
+        /**
+         * Publish the outcome and stop tracking the run
+         */
+        public void finish(boolean success, String message) {
+            String type;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                type = abortReason != null ? "aborted" : success ? "finished" : "failed";
+            }
+            runs.remove(runId, this);
+            publish(type, currentPhase(), null, message);
+        }
+
+        @Override
+        public void close() {
+            finish(false, "Encoder run ended unexpectedly");
+        }
+
+        private boolean abort(String reason) {
+            Runnable action;
+            synchronized (this) {
+                if (closed || abortReason != null) {
+                    return false;
+                }
+                abortReason = reason;
+                action = abortAction;
+            }
+            publish("aborting", currentPhase(), null, reason);
+            if (action != null) {
+                action.run();
+            }
+            return true;
+        }
+
+        private void reportStall(long idleMs) {
+            synchronized (this) {
+                if (stallReported || closed) {
+                    return;
+                }
+                stallReported = true;
+            }
+            FragmentationPhase current = currentPhase();
+            publish("stalled", current, null, "No encoder output for " + TimeUnit.MILLISECONDS.toMinutes(idleMs)
+                    + " minutes" + (current != null ? " during " + current.getLabel() : ""));
+        }
+
+        private synchronized long lastOutputAt() {
+            return lastOutputAt;
+        }
+
+        private synchronized FragmentationPhase currentPhase() {
+            return phase;
+        }
+
+        private synchronized FragmentationEvent snapshot() {
+            return event("progress", phase, null, abortReason);
+        }
+
+        private synchronized FragmentationEvent event(String type, FragmentationPhase eventPhase, Double seconds, String message) {
+            long now = System.currentTimeMillis();
+            return new FragmentationEvent(runId, sequence, type,
+                    eventPhase != null ? eventPhase.getLabel() : null, seconds,
+                    now - startedAt, now - lastOutputAt, triples, phasesDone, PHASE_COUNT, message, now);
+        }
+
+        private void publish(String type, FragmentationPhase eventPhase, Double seconds, String message) {
+            FragmentationEvent event;
+            synchronized (this) {
+                sequence++;
+                event = event(type, eventPhase, seconds, message);
+            }
+            try {
+                messagingTemplate.convertAndSend(TOPIC, event);
+                messagingTemplate.convertAndSend(topic(runId), event);
+            } catch (MessagingException e) {
+                // Progress is best effort; the run itself goes on
+            }
+        }
+    }
+}
@@ -1,6 +1,16 @@
 package com.pqdag.service;
 
+import com.pqdag.api.dto.PipelineRun;
+import com.pqdag.api.service.ContainerWorkerPool;
+import com.pqdag.api.service.FragmentCatalog;
+import com.pqdag.api.service.JobContext;
+import com.pqdag.api.service.ProcessOutputLog;
+import com.pqdag.api.service.ProcessOutputStore;
+import com.pqdag.api.service.RunHistoryService;
+import com.pqdag.api.service.WorkspaceTrash;
 import com.pqdag.model.FragmentationResult;
+import com.pqdag.model.RdfBadLine;
+import com.pqdag.model.RdfFileProfile;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -13,14 +23,24 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FragmentationService {
 
+    // Patterns to match actual output format (phase timings are in FragmentationPhase)
+    // Example: "Total number of triples: 110828 records"
+    private static final Pattern TRIPLES_PATTERN = Pattern.compile("Total number of triples:\\s*(\\d+)\\s*records");
+
+    // Example: "Run Finished in 1.47381 sec"
+    private static final Pattern TOTAL_PATTERN = Pattern.compile("Run Finished in\\s*([0-9.]+)\\s*sec");
+
     @Value("${app.storage.rawdata-path}")
     private String rawdataPath;
 
@@ -39,95 +59,149 @@ public class FragmentationService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Value("${app.fragmentation.validate-input:true}")
+    private boolean validateInput;
+
+    @Autowired
+    private ProcessOutputStore outputStore;
+
+    @Autowired
+    private RdfProfileService profileService;
+
+    @Autowired
+    private FragmentationProgressService progressService;
+
+    @Autowired
+    private RunHistoryService runHistoryService;
+
+    @Autowired
+    private WorkspaceTrash workspaceTrash;
+
+    @Autowired
+    private FragmentCatalog fragmentCatalog;
+
+    @Autowired
+    private ContainerWorkerPool workerPool;
+
     /**
      * Execute fragmentation using Docker
      */
     public FragmentationResult executeFragmentation(boolean cleanAfter) throws IOException, InterruptedException {
+        return executeFragmentation(cleanAfter, JobContext.NONE);
+    }
+
+    /**
+     * Execute fragmentation, reporting the Docker output to a job
+     */
+    public FragmentationResult executeFragmentation(boolean cleanAfter, JobContext job)
+            throws IOException, InterruptedException {
         // Get absolute paths for operations inside API container
         Path rawdataDir = Paths.get(rawdataPath).toAbsolutePath().normalize();
         Path bindataDir = Paths.get(bindataPath).toAbsolutePath().normalize();
         Path outputdataDir = Paths.get(outputdataPath).toAbsolutePath().normalize();
 
+        // Reject malformed input before the previous fragments are deleted
+        List<RdfFileProfile> inputProfiles = null;
+        if (validateInput) {
+            job.progress("validation", 0.0);
+            inputProfiles = profileService.profileRawdata(false);
+            FragmentationResult invalid = checkInput(inputProfiles);
+            if (invalid != null) {
+                return invalid;
+            }
+            profileService.recordFragmentationInput(inputProfiles);
+        }
+
         // Clean bindata and outputdata before execution
-        cleanDirectory(bindataDir);
-        cleanDirectory(outputdataDir);
+        job.progress("cleaning", 0.02);
+        workspaceTrash.empty(bindataDir);
+        workspaceTrash.empty(outputdataDir);
         
         // Use host paths for Docker volume mounts (when running inside container)
         String hostRawdataPath = hostStoragePath + "/rawdata";
         String hostBindataPath = hostStoragePath + "/bindata";
         String hostOutputdataPath = hostStoragePath + "/outputdata";
 
-        // Build Docker command
-        List<String> command = new ArrayList<>();
-        command.add("docker");
-        command.add("run");
-        command.add("--rm");
-        // Run with current user's UID:GID to avoid permission issues
-        command.add("--user");
-        String userId = System.getProperty("user.name");
-        try {
-            // Get current user's UID:GID on Linux
-            ProcessBuilder idBuilder = new ProcessBuilder("id", "-u");
-            Process idProcess = idBuilder.start();
-            String uid = new BufferedReader(new InputStreamReader(idProcess.getInputStream()))
-                    .readLine().trim();
-            
-            idBuilder = new ProcessBuilder("id", "-g");
-            idProcess = idBuilder.start();
-            String gid = new BufferedReader(new InputStreamReader(idProcess.getInputStream()))
-                    .readLine().trim();
-            
-            command.add(uid + ":" + gid);
-        } catch (Exception e) {
-            // Fallback to current user if id command fails (e.g., on Windows)
-            command.add(userId);
-        }
-        command.add("-v");
-        command.add(hostRawdataPath + ":/rawdata");
-        command.add("-v");
-        command.add(hostBindataPath + ":/bindata");
-        command.add("-v");
-        command.add(hostOutputdataPath + ":/outputdata");
-        command.add(dockerImageName);
-        command.add("/rawdata/");
-        command.add("/bindata/data.nt");
-
-        // Execute Docker command
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-
-        // Capture output
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-                System.out.println("[DOCKER] " + line); // Log to console
+        // Encoder container, warm when the Docker Engine API is reachable; run as our UID:GID to avoid permission issues
+        ContainerWorkerPool.WorkerSpec encoder = new ContainerWorkerPool.WorkerSpec(
+                "pqdag-fragmentation", dockerImageName, ContainerWorkerPool.hostUser(),
+                List.of(hostRawdataPath + ":/rawdata", hostBindataPath + ":/bindata", hostOutputdataPath + ":/outputdata"),
+                List.of(rawdataDir, bindataDir, outputdataDir));
+
+        job.progress(FragmentationPhase.ENCODING.getLabel(), 0.05);
+        FragmentationResult result = new FragmentationResult();
+        String dockerOutput;
+        int exitCode;
+        String abortReason;
+        String runId;
+        long startedAt = System.currentTimeMillis();
+        try (FragmentationProgressService.Run run = progressService.start(job)) {
+            runId = run.getRunId();
+            Process process = workerPool.run(encoder, List.of("/rawdata/", "/bindata/data.nt"));
+            // An interrupt does not unblock readLine; aborting kills the container instead
+            Runnable stop = process::destroy;
+            run.onAbort(stop);
+            job.onCancel(stop);
+
+            // Capture output: metrics and phase progress are parsed as lines arrive, the
+            // full log goes to storage/process_logs and only its tail is kept for the response
+            try (ProcessOutputLog output = outputStore.open("fragmentation");
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line);
+                    run.output();
+                    parseDockerLine(line, result, run);
+                    job.log(line);
+                }
+                dockerOutput = output.isTruncated()
+                        ? "[last lines of output log " + output.getId() + "]\n" + output.tailText()
+                        : output.tailText();
             }
-        }
 
-        int exitCode = process.waitFor();
+            exitCode = process.waitFor();
+            abortReason = run.getAbortReason();
+            run.finish(exitCode == 0 && abortReason == null,
+                    abortReason != null ? "Aborted: " + abortReason : "Encoder exited with code " + exitCode);
+        }
 
-        if (exitCode != 0) {
-            return new FragmentationResult(
+        if (abortReason != null || exitCode != 0) {
+            FragmentationResult failed = new FragmentationResult(
                     false,
-                    "Docker execution failed with exit code: " + exitCode,
+                    abortReason != null
+                            ? "Fragmentation aborted: " + abortReason
+                            : "Docker execution failed with exit code: " + exitCode,
                     0, 0, 0.0, 0,
-                    output.toString(),
-                    null, null, null, null, null
+                    dockerOutput,
+                    null, null, null, null, null,
+                    inputProfiles
             );
+            recordRun(runId, startedAt, failed, cleanAfter, rawdataDir, inputProfiles);
+            return failed;
+        }
+
+        result.setSuccess(true);
+        result.setMessage("Fragmentation completed successfully");
+        result.setDockerOutput(dockerOutput);
+        result.setInputProfiles(inputProfiles);
+
+        // Older encoder builds do not print the triple count
+        if (result.getTotalTriples() == 0 && inputProfiles != null) {
+            result.setTotalTriples(inputProfiles.stream().mapToLong(RdfFileProfile::getTriples).sum());
         }
 
-        // Parse output
-        FragmentationResult result = parseDockerOutput(output.toString());
+        // Calculate throughput
+        if (result.getTotalTriples() > 0 && result.getExecutionTimeSeconds() > 0) {
+            result.setThroughput((long) (result.getTotalTriples() / result.getExecutionTimeSeconds()));
+        }
 
-        // Count fragments
-        int fragmentCount = countFragments(outputdataDir);
-        result.setFragmentCount(fragmentCount);
+        // Index the new fragments; allocation and the GUI read them from the catalog
+        result.setFragmentCount(fragmentCatalog.refresh().size());
+        recordRun(runId, startedAt, result, cleanAfter, rawdataDir, inputProfiles);
 
         // Clean after execution if requested
         if (cleanAfter) {
+            job.progress("cleanup", 0.95);
             fileStorageService.clearRawdata();
             fileStorageService.clearBindata();
         }
@@ -136,115 +210,105 @@ public class FragmentationService {
     }
 
     /**
-     * Parse Docker output to extract metrics
+     * Add the run to the benchmark history, named after its input files
      */
-    private FragmentationResult parseDockerOutput(String output) {
-        FragmentationResult result = new FragmentationResult();
-        result.setSuccess(true);
-        result.setMessage("Fragmentation completed successfully");
-        result.setDockerOutput(output);
-
-        // Patterns to match actual output format
-        // Example: "Total number of triples: 110828 records"
-        Pattern triplesPattern = Pattern.compile("Total number of triples:\\s*(\\d+)\\s*records");
-        
-        // Example: "Done with data encoding in 0.120111 sec"
-        Pattern encodingPattern = Pattern.compile("Done with data encoding in\\s*([0-9.]+)\\s*sec");
-        
-        // Example: "Done with dumping dictionaries in 0.00635933 sec"
-        Pattern dictionariesPattern = Pattern.compile("Done with dumping dictionaries in\\s*([0-9.]+)\\s*sec");
-        
-        // Example: "Done with Sorting in 0.0997743 sec"
-        Pattern sortingPattern = Pattern.compile("Done with Sorting in\\s*([0-9.]+)\\s*sec");
-        
-        // Example: "Done with Fragmentation in 0.517501 sec"
-        Pattern fragmentationPattern = Pattern.compile("Done with Fragmentation in\\s*([0-9.]+)\\s*sec");
-        
-        // Example: "Done with Fragments re-encoding in 0.655355 sec"
-        Pattern reencodingPattern = Pattern.compile("Done with Fragments re-encoding in\\s*([0-9.]+)\\s*sec");
-        
-        // Example: "Run Finished in 1.47381 sec"
-        Pattern totalPattern = Pattern.compile("Run Finished in\\s*([0-9.]+)\\s*sec");
-
-        Matcher m;
-
-        // Extract total triples
-        m = triplesPattern.matcher(output);
-        if (m.find()) {
-            result.setTotalTriples(Long.parseLong(m.group(1)));
-        }
-
-        // Extract timings
-        m = encodingPattern.matcher(output);
-        if (m.find()) {
-            result.setEncodingTime(Double.parseDouble(m.group(1)));
-        }
-
-        m = dictionariesPattern.matcher(output);
-        if (m.find()) {
-            result.setDictionariesTime(Double.parseDouble(m.group(1)));
-        }
-
-        m = sortingPattern.matcher(output);
-        if (m.find()) {
-            result.setSortingTime(Double.parseDouble(m.group(1)));
-        }
-
-        m = fragmentationPattern.matcher(output);
-        if (m.find()) {
-            result.setFragmentationTime(Double.parseDouble(m.group(1)));
+    private void recordRun(String runId, long startedAt, FragmentationResult result, boolean cleanAfter,
+                           Path rawdataDir, List<RdfFileProfile> inputProfiles) throws IOException {
+        List<String> files = new ArrayList<>();
+        long inputBytes = 0;
+        if (inputProfiles != null) {
+            for (RdfFileProfile profile : inputProfiles) {
+                files.add(profile.getFileName());
+                inputBytes += profile.getSizeBytes();
+            }
+        } else {
+            try (Stream<Path> list = Files.list(rawdataDir)) {
+                for (Path file : list.filter(Files::isRegularFile).sorted().toList()) {
+                    files.add(file.getFileName().toString());
+                    inputBytes += Files.size(file);
+                }
+            }
         }
 
-        m = reencodingPattern.matcher(output);
-        if (m.find()) {
-            result.setReencodingTime(Double.parseDouble(m.group(1)));
+        Map<String, Double> phaseSeconds = new LinkedHashMap<>();
+        for (FragmentationPhase phase : FragmentationPhase.values()) {
+            Double seconds = phase.getTiming(result);
+            if (seconds != null) {
+                phaseSeconds.put(phase.getLabel(), seconds);
+            }
         }
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("dockerImage", dockerImageName);
+        config.put("cleanAfter", cleanAfter);
+        config.put("validateInput", validateInput);
+
+        runHistoryService.record(PipelineRun.builder()
+                .id(runId)
+                .type(RunHistoryService.FRAGMENTATION)
+                .dataset(String.join(",", files))
+                .success(result.isSuccess())
+                .message(result.getMessage())
+                .startedAt(startedAt)
+                .durationMs(System.currentTimeMillis() - startedAt)
+                .triples(result.getTotalTriples() > 0 ? result.getTotalTriples() : null)
+                .inputBytes(inputBytes)
+                .throughput(result.getThroughput() > 0 ? result.getThroughput() : null)
+                .phaseSeconds(phaseSeconds)
+                .config(config)
+                .build());
+    }
 
-        m = totalPattern.matcher(output);
-        if (m.find()) {
-            result.setExecutionTimeSeconds(Double.parseDouble(m.group(1)));
+    /**
+     * Failed result naming the first malformed lines, or null if every file parsed
+     */
+    private FragmentationResult checkInput(List<RdfFileProfile> profiles) {
+        List<RdfFileProfile> invalid = profiles.stream()
+                .filter(p -> p.getInvalidLines() > 0)
+                .toList();
+        if (invalid.isEmpty()) {
+            return null;
         }
-
-        // Calculate throughput
-        if (result.getTotalTriples() > 0 && result.getExecutionTimeSeconds() > 0) {
-            result.setThroughput((long) (result.getTotalTriples() / result.getExecutionTimeSeconds()));
+        StringBuilder message = new StringBuilder("Invalid N-Triples input, fragmentation not started: ");
+        message.append(invalid.stream()
+                .map(p -> p.getFileName() + " (" + p.getInvalidLines() + " invalid lines)")
+                .collect(Collectors.joining(", ")));
+        RdfFileProfile first = invalid.get(0);
+        for (RdfBadLine bad : first.getBadLines().subList(0, Math.min(3, first.getBadLines().size()))) {
+            message.append("\n").append(first.getFileName()).append(':').append(bad.getLineNumber())
+                    .append(": ").append(bad.getReason());
         }
-
+        FragmentationResult result = new FragmentationResult();
+        result.setSuccess(false);
+        result.setMessage(message.toString());
+        result.setInputProfiles(profiles);
         return result;
     }
 
     /**
-     * Count fragment files in output directory
+     * Extract metrics from one line of Docker output and report phase progress
      */
-    private int countFragments(Path outputDir) throws IOException {
-        if (!Files.exists(outputDir)) {
-            return 0;
-        }
+    private void parseDockerLine(String line, FragmentationResult result, FragmentationProgressService.Run run) {
+        Matcher m;
 
-        return (int) Files.walk(outputDir)
-                .filter(Files::isRegularFile)
-                .filter(p -> p.toString().endsWith(".data"))
-                .count();
-    }
+        // Extract total triples
+        m = TRIPLES_PATTERN.matcher(line);
+        if (m.find()) {
+            result.setTotalTriples(Long.parseLong(m.group(1)));
+            run.triples(result.getTotalTriples());
+        }
 
-    /**
-     * Clean a directory (remove all files and subdirectories)
-     */
-    private void cleanDirectory(Path directory) throws IOException {
-        if (!Files.exists(directory)) {
-            Files.createDirectories(directory);
-            return;
+        // Extract timings
+        for (FragmentationPhase phase : FragmentationPhase.values()) {
+            Double seconds = phase.parseDone(line);
+            if (seconds != null) {
+                phase.setTiming(result, seconds);
+                run.phaseFinished(phase, seconds);
+            }
         }
 
-        Files.walk(directory)
-                .sorted(Comparator.reverseOrder()) // Delete files before directories
-                .filter(p -> !p.equals(directory)) // Keep the root directory
-                .forEach(p -> {
-                    try {
-                        Files.delete(p);
-                    } catch (IOException e) {
-                        System.err.println("Failed to delete: " + p);
-                    }
-                });
+        m = TOTAL_PATTERN.matcher(line);
+        if (m.find()) {
+            result.setExecutionTimeSeconds(Double.parseDouble(m.group(1)));
+        }
     }
 }
@@ -0,0 +1,84 @@
+package com.pqdag.service;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of an RDF dump, recognized by file name (watdiv.nt.gz, lubm.ttl.zst, ...)
+ */
+public enum RdfCompression {
+    NONE(""),
+    GZIP(".gz"),
+    BZIP2(".bz2"),
+    ZSTD(".zst");
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final String suffix;
+
+    RdfCompression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Compression of an .nt or .ttl file name, optionally followed by .gz, .bz2 or .zst
+     *
+     * @throws IllegalArgumentException for any other name
+     */
+    public static RdfCompression of(String fileName) {
+        if (fileName != null) {
+            for (RdfCompression compression : values()) {
+                String name = fileName.substring(0, Math.max(0, fileName.length() - compression.suffix.length()));
+                if (fileName.endsWith(compression.suffix) && (name.endsWith(".nt") || name.endsWith(".ttl"))) {
+                    return compression;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid file format. Only .nt and .ttl files are allowed, "
+                + "optionally compressed as .gz, .bz2 or .zst: " + fileName);
+    }
+
+    /**
+     * Name of the decompressed file in rawdata
+     */
+    public String plainName(String fileName) {
+        return fileName.substring(0, fileName.length() - suffix.length());
+    }
+
+    /**
+     * Stream decompressing in; concatenated members (pigz, pbzip2, zstd -T) are read through
+     */
+    public InputStream open(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+            case BZIP2 -> new BZip2CompressorInputStream(in, true);
+            case ZSTD -> new ZstdCompressorInputStream(in);
+        };
+    }
+
+    /**
+     * Decompress in into out, calling progress with the running byte count every buffer
+     *
+     * @return decompressed bytes written
+     */
+    public long copy(InputStream in, OutputStream out, LongConsumer progress) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        try (InputStream decompressed = open(in)) {
+            int read;
+            while ((read = decompressed.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+                progress.accept(total);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,620 @@
+package com.pqdag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pqdag.model.RdfBadLine;
+import com.pqdag.model.RdfFileProfile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Single-pass profile and syntax check of the N-Triples files in rawdata.
+ *
+ * A file is cut into splits of split-size-mb (at most 1 GB) that end on a line
+ * boundary; each split is memory-mapped and scanned on its own core, and the
+ * partial results are merged. The pass validates every line, counts triples per
+ * predicate and estimates distinct subjects and objects. Profiles are cached by
+ * file name, size and modification time in storage/rawdata_profiles, so they are
+ * computed once per file and stay available after rawdata is cleaned.
+ */
+@Slf4j
+@Service
+public class RdfProfileService {
+
+    private static final int MAX_BAD_LINES = 100;
+    private static final int MAX_PREDICATES = 10_000;
+    private static final int MAX_LINE_TEXT = 200;
+    // A split is one MappedByteBuffer, indexed by int; the line boundary search may add up to the rest
+    private static final long MAX_SPLIT_BYTES = 1L << 30;
+
+    @Value("${app.storage.rawdata-path}")
+    private String rawdataPath;
+
+    @Value("${app.storage.profiles-path}")
+    private String profilesPath;
+
+    @Value("${app.profile.split-size-mb:64}")
+    private int splitSizeMb;
+
+    @Value("${app.profile.threads:0}")
+    private int threads;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private ProfileStore store = new ProfileStore();
+    private final Map<String, Object> fileLocks = new ConcurrentHashMap<>();
+    private ExecutorService pool;
+
+    /**
+     * Contents of profiles.json
+     */
+    @Data
+    public static class ProfileStore {
+        private Map<String, RdfFileProfile> profiles = new TreeMap<>();
+        private List<String> fragmentationInput = new ArrayList<>();   // files of the last fragmentation run
+    }
+
+    @PostConstruct
+    public void init() {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        pool = Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(r, "rdf-profile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Path file = storeFile();
+        if (Files.exists(file)) {
+            try {
+                store = objectMapper.readValue(file.toFile(), ProfileStore.class);
+            } catch (IOException e) {
+                // Profiles are recomputed on demand
+                log.warn("Cannot read profiles from {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Profiles of all .nt and .ttl files in rawdata, computing the missing or outdated ones
+     */
+    public List<RdfFileProfile> profileRawdata(boolean refresh) throws IOException {
+        Path rawdataDir = Paths.get(rawdataPath).toAbsolutePath().normalize();
+        if (!Files.isDirectory(rawdataDir)) {
+            return new ArrayList<>();
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(rawdataDir)) {
+            files = list.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".nt") || p.toString().endsWith(".ttl"))
+                    .sorted()
+                    .toList();
+        }
+        List<RdfFileProfile> profiles = new ArrayList<>();
+        for (Path file : files) {
+            profiles.add(profile(file, refresh));
+        }
+        return profiles;
+    }
+
+    /**
+     * Profile of one rawdata file, from the cache unless the file changed or refresh is set
+     */
+    public Optional<RdfFileProfile> profile(String fileName, boolean refresh) throws IOException {
+        Path rawdataDir = Paths.get(rawdataPath).toAbsolutePath().normalize();
+        Path file = rawdataDir.resolve(fileName).normalize();
+        if (!file.getParent().equals(rawdataDir) || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(profile(file, refresh));
+    }
+
+    /**
+     * Every cached profile, including files no longer in rawdata
+     */
+    public synchronized List<RdfFileProfile> getCachedProfiles() {
+        return new ArrayList<>(store.getProfiles().values());
+    }
+
+    /**
+     * Remember which files the last fragmentation encoded, for allocation statistics
+     */
+    public synchronized void recordFragmentationInput(List<RdfFileProfile> profiles) {
+        store.setFragmentationInput(profiles.stream().map(RdfFileProfile::getFileName).toList());
+        save();
+    }
+
+    /**
+     * Cached profiles of the files the last fragmentation encoded
+     */
+    public synchronized List<RdfFileProfile> getFragmentationInput() {
+        return store.getFragmentationInput().stream()
+                .map(store.getProfiles()::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private RdfFileProfile profile(Path file, boolean refresh) throws IOException {
+        String fileName = file.getFileName().toString();
+        synchronized (fileLocks.computeIfAbsent(fileName, name -> new Object())) {
+            long size = Files.size(file);
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            RdfFileProfile cached;
+            synchronized (this) {
+                cached = store.getProfiles().get(fileName);
+            }
+            if (!refresh && cached != null && cached.getSizeBytes() == size && cached.getLastModified() == lastModified) {
+                return cached;
+            }
+            RdfFileProfile profile = compute(file, size, lastModified);
+            synchronized (this) {
+                store.getProfiles().put(fileName, profile);
+                save();
+            }
+            return profile;
+        }
+    }
+
+    private RdfFileProfile compute(Path file, long size, long lastModified) throws IOException {
+        long start = System.currentTimeMillis();
+        String fileName = file.getFileName().toString();
+        boolean turtle = fileName.endsWith(".ttl");
+
+        SplitResult total = new SplitResult();
+        int splitCount;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> splits = splits(channel, size, fileName);
+            splitCount = splits.size();
+            List<Future<SplitResult>> futures = new ArrayList<>();
+            for (long[] split : splits) {
+                futures.add(pool.submit(() -> new SplitScanner(channel, split[0], split[1], turtle).scan()));
+            }
+            for (Future<SplitResult> future : futures) {
+                try {
+                    total.merge(future.get());
+                } catch (InterruptedException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Profiling of " + fileName + " interrupted");
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw new IOException("Profiling of " + fileName + " failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+
+        RdfFileProfile profile = new RdfFileProfile();
+        profile.setFileName(fileName);
+        profile.setSizeBytes(size);
+        profile.setLastModified(lastModified);
+        profile.setFormat(turtle ? "turtle" : "n-triples");
+        profile.setValidated(!turtle);
+        profile.setLines(total.lines);
+        profile.setTriples(total.triples);
+        profile.setBlankLines(total.blankLines);
+        profile.setCommentLines(total.commentLines);
+        profile.setInvalidLines(total.invalidLines);
+        profile.setBadLines(total.badLines);
+        profile.setDistinctSubjects(total.subjects.estimate());
+        profile.setDistinctObjects(total.objects.estimate());
+        profile.setIriObjects(total.iriObjects);
+        profile.setLiteralObjects(total.literalObjects);
+        profile.setBlankNodeObjects(total.blankNodeObjects);
+        profile.setDistinctPredicates(total.predicates.size());
+        Map<String, Long> predicates = new LinkedHashMap<>();
+        total.predicates.values().stream()
+                .sorted(Comparator.comparingLong((PredicateCount count) -> count.triples).reversed())
+                .forEach(count -> predicates.put(count.iri, count.triples));
+        profile.setPredicates(predicates);
+        profile.setPredicatesTruncated(total.predicatesTruncated);
+        profile.setSplits(splitCount);
+        profile.setDurationMs(System.currentTimeMillis() - start);
+        profile.setProfiledAt(System.currentTimeMillis());
+        return profile;
+    }
+
+    /**
+     * [start, end) ranges of about split-size-mb, each ending right after a newline
+     *
+     * @throws IOException if a line is too long for a split to end within 2 GB
+     */
+    private List<long[]> splits(FileChannel channel, long size, String fileName) throws IOException {
+        long splitSize = Math.min(Math.max(1, splitSizeMb) * 1024L * 1024L, MAX_SPLIT_BYTES);
+        List<long[]> splits = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        long start = 0;
+        while (start < size) {
+            long end = start + splitSize;
+            if (end >= size) {
+                end = size;
+            } else {
+                long limit = Math.min(size, start + Integer.MAX_VALUE);
+                end = nextLineStart(channel, end, limit, probe);
+                if (end == limit && limit < size) {
+                    throw new IOException("Line of " + fileName + " near byte " + (start + splitSize)
+                            + " is longer than a split can map (2 GB)");
+                }
+            }
+            splits.add(new long[]{start, end});
+            start = end;
+        }
+        return splits;
+    }
+
+    /**
+     * Position after the next newline, or limit if there is none before it
+     */
+    private static long nextLineStart(FileChannel channel, long from, long limit, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < limit) {
+            probe.clear();
+            probe.limit((int) Math.min(probe.capacity(), limit - position));
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return limit;
+    }
+
+    private synchronized void save() {
+        Path file = storeFile();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), store);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Kept in memory; written again with the next profile
+            log.warn("Cannot write profiles to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path storeFile() {
+        return Paths.get(profilesPath).toAbsolutePath().normalize().resolve("profiles.json");
+    }
+
+    private static final class PredicateCount {
+        final String iri;
+        long triples;
+
+        PredicateCount(String iri) {
+            this.iri = iri;
+        }
+    }
+
+    /**
+     * Counts of one split; bad line numbers are relative to the split until merged
+     */
+    private static final class SplitResult {
+        long lines;
+        long triples;
+        long blankLines;
+        long commentLines;
+        long invalidLines;
+        long iriObjects;
+        long literalObjects;
+        long blankNodeObjects;
+        final List<RdfBadLine> badLines = new ArrayList<>();
+        final HyperLogLog subjects = new HyperLogLog();
+        final HyperLogLog objects = new HyperLogLog();
+        // Keyed by IRI hash, so a predicate is decoded to a String only the first time it is seen
+        final Map<Long, PredicateCount> predicates = new HashMap<>();
+        boolean predicatesTruncated;
+
+        void merge(SplitResult split) {
+            for (RdfBadLine bad : split.badLines) {
+                if (badLines.size() < MAX_BAD_LINES) {
+                    badLines.add(new RdfBadLine(lines + bad.getLineNumber(), bad.getReason(), bad.getText()));
+                }
+            }
+            lines += split.lines;
+            triples += split.triples;
+            blankLines += split.blankLines;
+            commentLines += split.commentLines;
+            invalidLines += split.invalidLines;
+            iriObjects += split.iriObjects;
+            literalObjects += split.literalObjects;
+            blankNodeObjects += split.blankNodeObjects;
+            subjects.merge(split.subjects);
+            objects.merge(split.objects);
+            predicatesTruncated |= split.predicatesTruncated;
+            for (Map.Entry<Long, PredicateCount> entry : split.predicates.entrySet()) {
+                PredicateCount count = predicates.get(entry.getKey());
+                if (count == null && predicates.size() >= MAX_PREDICATES) {
+                    predicatesTruncated = true;
+                    continue;
+                }
+                if (count == null) {
+                    count = new PredicateCount(entry.getValue().iri);
+                    predicates.put(entry.getKey(), count);
+                }
+                count.triples += entry.getValue().triples;
+            }
+        }
+    }
+
+    /**
+     * Byte-level N-Triples parser over one mapped split
+     */
+    private static final class SplitScanner {
+        private final MappedByteBuffer buffer;
+        private final boolean turtle;
+        private final SplitResult result = new SplitResult();
+        private int p;
+        private int lineEnd;
+        private String error;
+
+        SplitScanner(FileChannel channel, long start, long end, boolean turtle) throws IOException {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            this.turtle = turtle;
+        }
+
+        SplitResult scan() {
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                int newline = lineStart;
+                while (newline < limit && buffer.get(newline) != '\n') {
+                    newline++;
+                }
+                lineEnd = newline > lineStart && buffer.get(newline - 1) == '\r' ? newline - 1 : newline;
+                result.lines++;
+                line(lineStart);
+                lineStart = newline + 1;
+            }
+            return result;
+        }
+
+        private void line(int lineStart) {
+            p = lineStart;
+            skipWhitespace();
+            if (p == lineEnd) {
+                result.blankLines++;
+                return;
+            }
+            if (buffer.get(p) == '#') {
+                result.commentLines++;
+                return;
+            }
+            if (turtle) {
+                return;
+            }
+            error = null;
+            if (triple()) {
+                result.triples++;
+            } else {
+                result.invalidLines++;
+                if (result.badLines.size() < MAX_BAD_LINES) {
+                    result.badLines.add(new RdfBadLine(result.lines, error + " at column " + (p - lineStart + 1),
+                            text(lineStart)));
+                }
+            }
+        }
+
+        private boolean triple() {
+            int subjectStart = p;
+            if (peek() == '<') {
+                if (!iri()) {
+                    return false;
+                }
+            } else if (peek() == '_') {
+                if (!blankNode()) {
+                    return false;
+                }
+            } else {
+                return fail("subject must be an IRI or a blank node");
+            }
+            result.subjects.add(HyperLogLog.hash(buffer, subjectStart, p));
+
+            if (!requireWhitespace()) {
+                return false;
+            }
+            int predicateStart = p;
+            if (peek() != '<') {
+                return fail("predicate must be an IRI");
+            }
+            if (!iri()) {
+                return false;
+            }
+            countPredicate(predicateStart + 1, p - 1);
+
+            if (!requireWhitespace()) {
+                return false;
+            }
+            int objectStart = p;
+            int c = peek();
+            if (c == '<') {
+                if (!iri()) {
+                    return false;
+                }
+                result.iriObjects++;
+            } else if (c == '_') {
+                if (!blankNode()) {
+                    return false;
+                }
+                result.blankNodeObjects++;
+            } else if (c == '"') {
+                if (!literal()) {
+                    return false;
+                }
+                result.literalObjects++;
+            } else {
+                return fail("object must be an IRI, a blank node or a literal");
+            }
+            result.objects.add(HyperLogLog.hash(buffer, objectStart, p));
+
+            skipWhitespace();
+            if (peek() != '.') {
+                return fail("expected '.' at the end of the triple");
+            }
+            p++;
+            skipWhitespace();
+            if (p < lineEnd && buffer.get(p) != '#') {
+                return fail("unexpected content after '.'");
+            }
+            return true;
+        }
+
+        private boolean iri() {
+            p++;
+            while (p < lineEnd) {
+                int c = buffer.get(p);
+                if (c == '>') {
+                    p++;
+                    return true;
+                }
+                if (c == ' ' || c == '\t' || c == '<' || c == '"' || c == '{' || c == '}' || c == '|' || c == '^' || c == '`') {
+                    return fail("invalid character '" + (char) c + "' in IRI");
+                }
+                if (c == '\\') {
+                    int escape = p + 1 < lineEnd ? buffer.get(p + 1) : -1;
+                    if (escape != 'u' && escape != 'U') {
+                        return fail("invalid escape in IRI");
+                    }
+                }
+                p++;
+            }
+            return fail("unterminated IRI");
+        }
+
+        private boolean blankNode() {
+            if (p + 1 >= lineEnd || buffer.get(p + 1) != ':') {
+                return fail("blank node must start with '_:'");
+            }
+            p += 2;
+            int labelStart = p;
+            while (p < lineEnd) {
+                int c = buffer.get(p);
+                if (c == ' ' || c == '\t' || c == '<' || c == '"') {
+                    break;
+                }
+                p++;
+            }
+            // A label cannot end with '.'; that dot ends the triple
+            while (p > labelStart && buffer.get(p - 1) == '.') {
+                p--;
+            }
+            return p > labelStart || fail("empty blank node label");
+        }
+
+        private boolean literal() {
+            p++;
+            boolean closed = false;
+            while (p < lineEnd) {
+                int c = buffer.get(p);
+                if (c == '\\') {
+                    p += 2;
+                    continue;
+                }
+                p++;
+                if (c == '"') {
+                    closed = true;
+                    break;
+                }
+            }
+            if (!closed) {
+                return fail("unterminated literal");
+            }
+            if (peek() == '@') {
+                p++;
+                int tagStart = p;
+                while (p < lineEnd) {
+                    int c = buffer.get(p);
+                    if (!(Character.isLetterOrDigit(c) || c == '-')) {
+                        break;
+                    }
+                    p++;
+                }
+                return p > tagStart || fail("empty language tag");
+            }
+            if (peek() == '^') {
+                if (p + 2 >= lineEnd || buffer.get(p + 1) != '^' || buffer.get(p + 2) != '<') {
+                    return fail("datatype must be '^^<IRI>'");
+                }
+                p += 2;
+                return iri();
+            }
+            return true;
+        }
+
+        private void countPredicate(int from, int to) {
+            long hash = HyperLogLog.hash(buffer, from, to);
+            PredicateCount count = result.predicates.get(hash);
+            if (count == null) {
+                if (result.predicates.size() >= MAX_PREDICATES) {
+                    result.predicatesTruncated = true;
+                    return;
+                }
+                byte[] bytes = new byte[to - from];
+                buffer.get(from, bytes);
+                count = new PredicateCount(new String(bytes, StandardCharsets.UTF_8));
+                result.predicates.put(hash, count);
+            }
+            count.triples++;
+        }
+
+        private boolean requireWhitespace() {
+            int before = p;
+            skipWhitespace();
+            return p > before || fail("expected whitespace");
+        }
+
+        private void skipWhitespace() {
+            while (p < lineEnd) {
+                int c = buffer.get(p);
+                if (c != ' ' && c != '\t') {
+                    return;
+                }
+                p++;
+            }
+        }
+
+        private int peek() {
+            return p < lineEnd ? buffer.get(p) : -1;
+        }
+
+        private boolean fail(String message) {
+            error = message;
+            return false;
+        }
+
+        private String text(int lineStart) {
+            int length = Math.min(lineEnd - lineStart, MAX_LINE_TEXT);
+            byte[] bytes = new byte[length];
+            buffer.get(lineStart, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
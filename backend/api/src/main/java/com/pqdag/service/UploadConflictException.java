@@ -0,0 +1,20 @@
+package com.pqdag.service;
+
+import com.pqdag.model.UploadSession;
+
+/**
+ * Thrown when a chunk does not start at the upload's current offset, or another chunk is still being written
+ */
+public class UploadConflictException extends RuntimeException {
+
+    private final transient UploadSession session;
+
+    public UploadConflictException(String message, UploadSession session) {
+        super(message);
+        this.session = session;
+    }
+
+    public UploadSession getSession() {
+        return session;
+    }
+}
@@ -53,14 +53,15 @@ export class FileUploadComponent {
       if (this.isValidFile(file)) {
         this.selectedFiles.push(file);
       } else {
-        this.errorMessage = `Invalid file: ${file.name}. Only .nt and .ttl files are allowed.`;
+        this.errorMessage = `Invalid file: ${file.name}. Only .nt and .ttl files (optionally .gz, .bz2 or .zst compressed) are allowed.`;
       }
     }
   }
 
   isValidFile(file: File): boolean {
     const validExtensions = ['.nt', '.ttl'];
-    return validExtensions.some(ext => file.name.toLowerCase().endsWith(ext));
+    const name = file.name.toLowerCase().replace(/\.(gz|bz2|zst)$/, '');
+    return validExtensions.some(ext => name.endsWith(ext));
   }
 
   removeFile(index: number) {
@@ -92,7 +93,7 @@ export class FileUploadComponent {
       },
       error: (error) => {
         this.uploadProgress = false;
-        this.errorMessage = error.error?.message || 'Upload failed. Please try again.';
+        this.errorMessage = error.error?.message || error.message || 'Upload failed. Please try again.';
       }
     });
   }
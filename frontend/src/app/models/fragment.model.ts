@@ -0,0 +1,30 @@
+export interface FragmentCatalogSummary {
+  directory: string;
+  fragmentCount: number;
+  totalTriples: number;
+  dataBytes: number;
+  schemaBytes: number;
+  dicBytes: number;
+  predicateCount: number;
+  subjectFragments: number;
+  objectFragments: number;
+  indexedAt: number;
+  refreshMs: number;
+  rescannedFragments: number;
+}
+
+export interface FragmentInfo {
+  id: number;
+  dataBytes: number;
+  schemaBytes: number;
+  dicBytes: number;
+  triples: number;
+  direction: number;      // 1 = subject-based, -1 = object-based, 0 = unknown
+  predicates: number[];
+}
+
+export interface PredicateUsage {
+  id: number;
+  iri?: string;
+  fragments: number;
+}
@@ -15,6 +15,63 @@ export interface FragmentationResult {
   sortingTime: number | null;
   fragmentationTime: number | null;
   reencodingTime: number | null;
+  inputProfiles?: RdfFileProfile[];
+}
+
+export interface RdfBadLine {
+  lineNumber: number;
+  reason: string;
+  text: string;
+}
+
+export interface RdfFileProfile {
+  fileName: string;
+  sizeBytes: number;
+  lastModified: number;
+  format: 'n-triples' | 'turtle';
+  validated: boolean;  // false for Turtle: lines are counted, not parsed
+  lines: number;
+  triples: number;
+  blankLines: number;
+  commentLines: number;
+  invalidLines: number;
+  badLines: RdfBadLine[];  // first 100
+  distinctSubjects: number;  // estimates, about 1% error
+  distinctObjects: number;
+  iriObjects: number;
+  literalObjects: number;
+  blankNodeObjects: number;
+  distinctPredicates: number;
+  predicates: { [iri: string]: number };  // triples per predicate, most used first
+  predicatesTruncated: boolean;
+  splits: number;
+  durationMs: number;
+  profiledAt: number;
+}
+
+export interface RdfProfilesResponse {
+  success: boolean;
+  message?: string;
+  profiles: RdfFileProfile[];
+  totalTriples: number;
+  invalidLines: number;
+}
+
+// Events published on /topic/fragmentation and /topic/fragmentation/{runId} while the encoder runs
+export interface FragmentationEvent {
+  runId: string;
+  sequence: number;
+  type: 'started' | 'phase-started' | 'phase-finished' | 'triples' | 'stalled' | 'resumed'
+    | 'aborting' | 'finished' | 'failed' | 'aborted' | 'progress';
+  phase: 'encoding' | 'dictionaries' | 'sorting' | 'fragmentation' | 'reencoding' | null;
+  phaseSeconds: number | null;  // encoder-reported duration, on phase-finished
+  elapsedMs: number;
+  idleMs: number;  // since the last output line
+  triples: number | null;
+  phasesDone: number;
+  phaseCount: number;
+  message: string | null;
+  timestamp: number;
 }
 
 export interface UploadResponse {
@@ -24,3 +81,15 @@ export interface UploadResponse {
   totalSize: number;
   fileCount: number;
 }
+
+export interface UploadSession {
+  id: string;
+  fileName: string;
+  size: number;
+  offset: number;  // bytes received; the next chunk starts here
+  complete: boolean;
+  status: 'receiving' | 'decompressing' | 'complete' | 'error';
+  compression?: 'gzip' | 'bzip2' | 'zstd';
+  decompressedBytes?: number;
+  error?: string;
+}
@@ -0,0 +1,44 @@
+export type PipelineRunType = 'fragmentation' | 'allocation' | 'distribution';
+
+// One recorded pipeline run, judged against the median of earlier runs on the same dataset
+export interface PipelineRun {
+  id: string;
+  type: PipelineRunType;
+  dataset: string;
+  success: boolean;
+  message?: string;
+  startedAt: number;
+  durationMs: number;
+  triples?: number;
+  inputBytes?: number;
+  throughput?: number;  // triples per second
+  phaseSeconds?: { [phase: string]: number };
+  config?: { [key: string]: any };
+  host?: { [key: string]: any };
+  metric: 'throughput' | 'durationMs';
+  baseline?: number;
+  baselineRuns?: number;
+  slowdownPercent?: number;  // positive when slower than the baseline
+  regression: boolean;
+}
+
+export interface RunComparison {
+  reference: PipelineRun;
+  runs: {
+    run: PipelineRun;
+    durationChangePercent?: number;
+    throughputChangePercent?: number;
+    phaseChangePercent: { [phase: string]: number };
+  }[];
+}
+
+export interface RunTrendPoint {
+  runId: string;
+  startedAt: number;
+  success: boolean;
+  durationMs: number;
+  throughput?: number;
+  baseline?: number;
+  slowdownPercent?: number;
+  regression: boolean;
+}
@@ -0,0 +1,37 @@
+export interface JobInfo {
+  id: string;
+  type: string;
+  resource?: string;
+  description: string;
+  status: 'queued' | 'running' | 'success' | 'error' | 'cancelled';
+  stage?: string;
+  progress?: number;
+  createdAt: number;
+  startedAt?: number;
+  finishedAt?: number;
+  durationMs?: number;
+  error?: string;
+  result?: any;
+  logLines: number;
+  logFrom?: number;
+  log?: string[];
+}
+
+export interface JobEvent {
+  jobId: string;
+  type: 'log' | 'status';
+  lineNumber?: number;
+  line?: string;
+  job?: JobInfo;
+}
+
+export interface ProcessLogView {
+  id: string;
+  createdAt: number;
+  closed: boolean;
+  lineCount: number;
+  firstAvailableLine: number;
+  diskBytes: number;
+  from?: number;
+  lines?: string[];
+}
@@ -1,24 +1,164 @@
 export interface QueryExecutionRequest {
+  queryId?: string;
+  userId?: string;
   dataset: string;
   queryFile: string;
   masterIp?: string;
   planNumber?: number;
+  executionMode?: 'cold' | 'warm' | 'cold-every-n';
+  coldEvery?: number;
+  useCache?: boolean;
+  timeoutMs?: number;  // server default when omitted, 0 = no deadline
 }
 
 export interface QueryExecutionResponse {
-  status: string;
+  status: string;  // success, error, rejected, cancelled or timeout
   message: string;
+  queryId?: string;
   queryFile?: string;
   executionTimeMs?: number;
   resultCount?: number;
   output?: string;
   results?: string[];
+  outputTruncated?: boolean;
+  restartScheduled?: boolean;
+  cached?: boolean;
+  planNumber?: number;
+  planAutoSelected?: boolean;
+  phaseTimesMs?: { [phase: string]: number };
+}
+
+// Frames published on /topic/query/{queryId} while a query runs
+export interface QueryStreamFrame {
+  type: 'queued' | 'batch' | 'summary';
+  queryId: string;
+  sequence?: number;
+  queuePosition?: number;
+  lines?: string[];
+  results?: string[];
+  resultCount?: number;
+  status?: string;
+  message?: string;
+  executionTimeMs?: number;
+  phaseTimesMs?: { [phase: string]: number };
+}
+
+export interface BatchExecutionRequest {
+  dataset: string;
+  queryFiles?: string[];
+  repetitions?: number;
+  warmup?: number;
+  pipelineDepth?: number;
+  planNumber?: number;
+  masterIp?: string;
+  executionMode?: string;
+  coldEvery?: number;
+  userId?: string;
+}
+
+export interface BatchQueryReport {
+  queryFile: string;
+  planNumber?: number;
+  executions: number;
+  failures: number;
+  resultCount?: number;
+  minMs?: number;
+  p50Ms?: number;
+  p95Ms?: number;
+  p99Ms?: number;
+  maxMs?: number;
+  meanMs?: number;
+  errors?: string[];
+}
+
+export interface BatchExecutionResponse {
+  status: string;
+  message: string;
+  batchId?: string;
+  dataset?: string;
+  totalExecutions?: number;
+  failures?: number;
+  wallTimeMs?: number;
+  queries?: BatchQueryReport[];
+}
+
+export interface TriplePattern {
+  subject: string;
+  predicate: string;
+  object: string;
+}
+
+// Parsed query file, from GET /api/query/model/{dataset}/{queryFile}
+export interface QueryModel {
+  shape: 'star' | 'chain' | 'snowflake' | 'complex';
+  distinct: boolean;
+  projection: string[];
+  limit?: number;
+  triplePatterns: TriplePattern[];
+  variables: string[];
+  joinVariables: { [variable: string]: number };
+  joinEdges: number[][];
+  boundTerms: number;
+  connectedComponents: number;
+  normalizedText: string;
+}
+
+export interface PlanStats {
+  samples: number;
+  meanMs: number;
+  bestMs: number;
+  lastMs: number;
+  lastRunAt: number;
+}
+
+// Learned plan choice, from GET /api/query/plans
+export interface PlanChoice {
+  dataset: string;
+  shape: string;
+  bestPlan?: number;
+  converged: boolean;
+  plans: { [planNumber: number]: PlanStats };
+}
+
+export interface NodeOperationResult {
+  node: string;
+  status: 'success' | 'failed' | 'timeout' | 'error';
+  exitCode?: number;
+  output?: string;
+  attempts?: number;
+  durationMs?: number;
 }
 
 export interface ClusterStatusResponse {
   status: string;
   message: string;
   output?: string;
+  nodes?: NodeOperationResult[];
+}
+
+export interface NodeHealth {
+  node: string;
+  role: 'master' | 'worker';
+  reachable: boolean;
+  alive: boolean;
+  load1?: number;
+  memTotalKb?: number;
+  memAvailableKb?: number;
+  error?: string;
+}
+
+export interface ClusterHealthSnapshot {
+  status: 'healthy' | 'degraded' | 'down' | 'unknown';
+  collectedAt: number;
+  collectionMs: number;
+  currentDataset?: string;
+  datasets: string[];
+  masterAlive: boolean;
+  workersAlive: number;
+  workersTotal: number;
+  nodes: NodeHealth[];
+  changes: string[];
+  stale: boolean;
 }
 
 export interface DatasetInfo {
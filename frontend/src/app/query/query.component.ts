@@ -39,7 +39,7 @@ export class QueryComponent implements OnInit {
   // Advanced options
   showAdvanced: boolean = false;
   masterIp: string = '192.168.165.27';
-  planNumber: number = 0;
+  planNumber: number | null = null;  // null = let the backend pick the learned best plan
   
   // Messages
   message: string = '';
@@ -273,7 +273,7 @@ export class QueryComponent implements OnInit {
       dataset: this.selectedQueryDataset,
       queryFile: this.selectedQueryFile,
       masterIp: this.masterIp,
-      planNumber: this.planNumber
+      planNumber: this.planNumber ?? undefined
     };
 
     this.queryLoading = true;
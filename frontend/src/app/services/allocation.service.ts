@@ -15,12 +15,18 @@ export interface AllocationStatistics {
   executionTime: number;
   dbStatFile: string;
   graphFile: string;
+  // From the profiles of the last fragmentation input
+  inputTriples?: number;
+  inputPredicates?: number;
+  inputFiles?: string[];
 }
 
 export interface MachineAllocation {
   machineId: number;
   fragmentCount: number;
   workerIp: string;
+  dataBytes?: number;
+  triples?: number;
 }
 
 export interface AllocationResponse {
@@ -29,6 +35,7 @@ export interface AllocationResponse {
   statistics: AllocationStatistics;
   distribution: MachineAllocation[];
   affectationFile: string;
+  jobId?: string;
 }
 
 export interface DistributionRequest {
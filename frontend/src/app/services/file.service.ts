@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
-import { UploadResponse } from '../models/fragmentation.model';
+import { HttpClient, HttpErrorResponse } from '@angular/common/http';
+import { Observable, firstValueFrom, from, map, switchMap } from 'rxjs';
+import { RdfFileProfile, RdfProfilesResponse, UploadResponse, UploadSession } from '../models/fragmentation.model';
 import { API_CONFIG } from '../config/api.config';
 
 @Injectable({
@@ -10,17 +10,73 @@ import { API_CONFIG } from '../config/api.config';
 export class FileService {
   private apiUrl = API_CONFIG.apiUrl;
 
+  private static readonly CHUNK_SIZE = 8 * 1024 * 1024;
+  private static readonly MAX_RETRIES = 5;
+
   constructor(private http: HttpClient) { }
 
   /**
-   * Upload RDF files to the server
+   * Upload RDF files to the server in resumable chunks; no size limit.
+   * .gz, .bz2 and .zst files are stored decompressed.
    */
   uploadFiles(files: FileList): Observable<UploadResponse> {
-    const formData = new FormData();
-    for (let i = 0; i < files.length; i++) {
-      formData.append('files', files[i], files[i].name);
+    const list = Array.from(files);
+    return from(this.uploadAll(list)).pipe(
+      switchMap(() => this.listFiles()),
+      map(listing => ({
+        ...listing,
+        message: 'Files uploaded successfully',
+        fileNames: list.map(file => file.name),
+        fileCount: list.length
+      }))
+    );
+  }
+
+  private async uploadAll(files: File[]): Promise<void> {
+    for (const file of files) {
+      await this.uploadFile(file);
+    }
+  }
+
+  /**
+   * Send a file chunk by chunk; after a failure, continue from the offset the server reports
+   */
+  private async uploadFile(file: File): Promise<void> {
+    const url = `${this.apiUrl}/files/uploads`;
+    // Returns the unfinished session for the same name and size, so a new attempt resumes
+    let session = await firstValueFrom(
+      this.http.post<UploadSession>(url, { fileName: file.name, size: file.size }));
+    let failures = 0;
+    while (session.offset < session.size) {
+      const chunk = file.slice(session.offset, session.offset + FileService.CHUNK_SIZE);
+      try {
+        session = await firstValueFrom(this.http.patch<UploadSession>(`${url}/${session.id}`, chunk, {
+          headers: {
+            'Upload-Offset': String(session.offset),
+            'Content-Type': 'application/offset+octet-stream'
+          }
+        }));
+        failures = 0;
+      } catch (error) {
+        if (error instanceof HttpErrorResponse && error.status === 409) {
+          session = error.error as UploadSession;
+          continue;
+        }
+        if (++failures > FileService.MAX_RETRIES) {
+          throw error;
+        }
+        await new Promise(resolve => setTimeout(resolve, 1000 * failures));
+        session = await firstValueFrom(this.http.get<UploadSession>(`${url}/${session.id}`));
+      }
+    }
+    // Compressed files are decompressed as they arrive; wait for the last part
+    while (session.status === 'decompressing' || session.status === 'receiving') {
+      await new Promise(resolve => setTimeout(resolve, 1000));
+      session = await firstValueFrom(this.http.get<UploadSession>(`${url}/${session.id}`));
+    }
+    if (session.status === 'error') {
+      throw new Error(session.error || `Upload of ${file.name} failed`);
     }
-    return this.http.post<UploadResponse>(`${this.apiUrl}/files/upload`, formData);
   }
 
   /**
@@ -30,6 +86,18 @@ export class FileService {
     return this.http.get<UploadResponse>(`${this.apiUrl}/files/list`);
   }
 
+  /**
+   * Profiles of the uploaded files (triples, invalid lines, predicates); cached server-side
+   */
+  getProfiles(refresh = false): Observable<RdfProfilesResponse> {
+    return this.http.get<RdfProfilesResponse>(`${this.apiUrl}/files/profiles`, { params: { refresh } });
+  }
+
+  getProfile(fileName: string, refresh = false): Observable<RdfFileProfile> {
+    return this.http.get<RdfFileProfile>(
+      `${this.apiUrl}/files/profiles/${encodeURIComponent(fileName)}`, { params: { refresh } });
+  }
+
   /**
    * Clear all uploaded files
    */
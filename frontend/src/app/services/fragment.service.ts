@@ -0,0 +1,41 @@
+import { Injectable } from '@angular/core';
+import { HttpClient, HttpParams } from '@angular/common/http';
+import { Observable } from 'rxjs';
+import { FragmentCatalogSummary, FragmentInfo, PredicateUsage } from '../models/fragment.model';
+import { API_CONFIG } from '../config/api.config';
+
+@Injectable({
+  providedIn: 'root'
+})
+export class FragmentService {
+  private apiUrl = `${API_CONFIG.apiUrl}/fragments`;
+
+  constructor(private http: HttpClient) { }
+
+  getSummary(): Observable<FragmentCatalogSummary> {
+    return this.http.get<FragmentCatalogSummary>(this.apiUrl);
+  }
+
+  /**
+   * Fragments in ID order, optionally only those containing a predicate
+   */
+  getFragments(offset = 0, limit = 100, predicate?: number): Observable<FragmentInfo[]> {
+    let params = new HttpParams().set('offset', offset).set('limit', limit);
+    if (predicate !== undefined) {
+      params = params.set('predicate', predicate);
+    }
+    return this.http.get<FragmentInfo[]>(`${this.apiUrl}/list`, { params });
+  }
+
+  getFragment(id: number): Observable<FragmentInfo> {
+    return this.http.get<FragmentInfo>(`${this.apiUrl}/${id}`);
+  }
+
+  getPredicates(): Observable<PredicateUsage[]> {
+    return this.http.get<PredicateUsage[]>(`${this.apiUrl}/predicates`);
+  }
+
+  refresh(): Observable<FragmentCatalogSummary> {
+    return this.http.post<FragmentCatalogSummary>(`${this.apiUrl}/refresh`, {});
+  }
+}
@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable } from 'rxjs';
-import { FragmentationRequest, FragmentationResult } from '../models/fragmentation.model';
+import { FragmentationEvent, FragmentationRequest, FragmentationResult } from '../models/fragmentation.model';
 import { API_CONFIG } from '../config/api.config';
 
 @Injectable({
@@ -21,4 +21,17 @@ export class FragmentationService {
       request || { cleanAfter: false }
     );
   }
+
+  /**
+   * Running encoders with their current phase
+   */
+  getActiveRuns(): Observable<FragmentationEvent[]> {
+    return this.http.get<FragmentationEvent[]>(`${this.apiUrl}/fragmentation/runs`);
+  }
+
+  abortRun(runId: string): Observable<{ success: boolean; message: string }> {
+    return this.http.post<{ success: boolean; message: string }>(
+      `${this.apiUrl}/fragmentation/runs/${runId}/abort`, {}
+    );
+  }
 }
@@ -0,0 +1,39 @@
+import { Injectable } from '@angular/core';
+import { HttpClient, HttpParams } from '@angular/common/http';
+import { Observable } from 'rxjs';
+import { PipelineRun, PipelineRunType, RunComparison, RunTrendPoint } from '../models/history.model';
+import { API_CONFIG } from '../config/api.config';
+
+@Injectable({
+  providedIn: 'root'
+})
+export class HistoryService {
+  private apiUrl = `${API_CONFIG.apiUrl}/history`;
+
+  constructor(private http: HttpClient) { }
+
+  /**
+   * Recorded runs, newest first
+   */
+  getRuns(type?: PipelineRunType, dataset?: string, regressionsOnly = false): Observable<PipelineRun[]> {
+    let params = new HttpParams().set('regressions', regressionsOnly);
+    if (type) {
+      params = params.set('type', type);
+    }
+    if (dataset) {
+      params = params.set('dataset', dataset);
+    }
+    return this.http.get<PipelineRun[]>(`${this.apiUrl}/runs`, { params });
+  }
+
+  /**
+   * Compare runs with the first ID
+   */
+  compareRuns(ids: string[]): Observable<RunComparison> {
+    return this.http.get<RunComparison>(`${this.apiUrl}/compare`, { params: { ids: ids.join(',') } });
+  }
+
+  getTrend(type: PipelineRunType, dataset: string): Observable<RunTrendPoint[]> {
+    return this.http.get<RunTrendPoint[]>(`${this.apiUrl}/trend`, { params: { type, dataset } });
+  }
+}
@@ -64,4 +64,8 @@ export class QueryService {
   executeQuery(request: QueryExecutionRequest): Observable<QueryExecutionResponse> {
     return this.http.post<QueryExecutionResponse>(`${this.apiUrl}/execute`, request);
   }
+
+  cancelQuery(queryId: string): Observable<{ status: string; message: string }> {
+    return this.http.post<{ status: string; message: string }>(`${this.apiUrl}/cancel/${encodeURIComponent(queryId)}`, {});
+  }
 }
@@ -0,0 +1,90 @@
+#!/bin/bash
+# test-fragmentation-warm-worker.sh
+# Regression: back-to-back fragmentations in the warm encoder container must
+# write to the live outputdata, also after outputdata was replaced.
+# Runs the API against the local Docker Engine stand-in with a fake encoder, on
+# a throwaway workspace: the storage/ folder of the repository is never touched.
+
+set -e
+
+ROOT="$(cd "$(dirname "$0")" && pwd)"
+API_URL="http://localhost:8080"
+WORK_DIR=$(mktemp -d)
+WORKSPACE="${WORK_DIR}/workspace"
+STORAGE="${WORKSPACE}/storage"
+SOCKET="${WORK_DIR}/docker.sock"
+mkdir -p "${STORAGE}/rawdata" "${STORAGE}/bindata" "${STORAGE}/outputdata"
+API_PID=""
+
+cleanup() {
+    [ -n "$API_PID" ] && kill "$API_PID" 2>/dev/null || true
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+echo "========================================="
+echo "WARM ENCODER WORKER REGRESSION TEST"
+echo "========================================="
+
+# Fake encoder: writes one fragment to the outputdata mount of the worker
+cat > "${WORK_DIR}/encoder.sh" <<'EOF'
+#!/bin/sh
+echo "Reading $1"
+echo "Total number of triples: 2 records"
+echo "Done with data encoding in 0.01 sec"
+echo "Done with dumping dictionaries in 0.01 sec"
+echo "Done with Sorting in 0.01 sec"
+echo "Done with Fragmentation in 0.01 sec"
+echo "Done with Fragments re-encoding in 0.01 sec"
+printf '1 2 3 4 5 6\n1 2 3 4 5 7\n' > "$MOUNT_OUTPUTDATA/1.data"
+printf '1\n3:0\n' > "$MOUNT_OUTPUTDATA/1.schema"
+echo x > "$MOUNT_OUTPUTDATA/1.dic"
+echo "Run Finished in 0.1 sec"
+EOF
+chmod +x "${WORK_DIR}/encoder.sh"
+
+if curl -sf "${API_URL}/api/health" > /dev/null; then
+    echo "❌ ERROR: an API is already running on ${API_URL}; stop it first"
+    exit 1
+fi
+
+echo "🔨 Building the API..."
+(cd "${ROOT}/backend/api" && mvn -B -q package -DskipTests)
+JAR=$(ls "${ROOT}"/backend/api/target/*.jar | grep -v original | head -1)
+
+(cd "${ROOT}/backend/api" && exec java -jar "$JAR" \
+    --workspace.root="${WORKSPACE}" \
+    --app.storage.base-path="${STORAGE}" \
+    --docker.local-engine.enabled=true \
+    --docker.socket-path="${SOCKET}" \
+    --docker.local-engine.entrypoint="${WORK_DIR}/encoder.sh" \
+    --HOST_STORAGE_PATH="${STORAGE}" > "${WORK_DIR}/api.log" 2>&1) &
+API_PID=$!
+
+for i in $(seq 1 60); do
+    curl -sf "${API_URL}/api/health" > /dev/null && break
+    sleep 1
+done
+
+fragment() {
+    printf '<http://a> <http://p> <http://b> .\n' > "${STORAGE}/rawdata/warm-worker-test.nt"
+    curl -sf -X POST "${API_URL}/api/fragmentation/start" \
+        -H 'Content-Type: application/json' -d '{"cleanAfter":false}' > /dev/null
+    COUNT=$(curl -sf "${API_URL}/api/fragments" | python3 -c "import json,sys; print(json.load(sys.stdin)['fragmentCount'])")
+    if [ "$COUNT" != "1" ]; then
+        echo "❌ $1: outputdata has ${COUNT} fragments, expected 1"
+        exit 1
+    fi
+    echo "✅ $1: fragment written to outputdata"
+}
+
+fragment "Run 1"
+fragment "Run 2"
+
+# A bind mount stays on the directory it was created with; the worker must be recreated
+mv "${STORAGE}/outputdata" "${WORK_DIR}/outputdata.old"
+mkdir "${STORAGE}/outputdata"
+fragment "Run 3 (outputdata replaced)"
+
+echo ""
+echo "✅ All runs wrote to the live outputdata"